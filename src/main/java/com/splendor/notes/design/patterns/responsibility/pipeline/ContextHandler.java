@@ -2,6 +2,9 @@ package com.splendor.notes.design.patterns.responsibility.pipeline;
 
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.PipelineContext;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author splendor.s
  * @create 2022/11/28 下午2:24
@@ -13,5 +16,28 @@ public interface ContextHandler<T extends PipelineContext, R> {
      * @return dealRes R 处理结果
      */
     R handle(T context);
+
+    /**
+     * 批量处理：默认逐条调用handle；持有词库自动机、编译后正则等共享资源的处理器可覆盖，整批只获取一次
+     *
+     * @param contexts 处理时的上下文数据
+     * @return 与contexts一一对应的处理结果
+     */
+    default List<R> handleBatch(List<T> contexts) {
+        List<R> results = new ArrayList<>(contexts.size());
+        for (T context : contexts) {
+            results.add(handle(context));
+        }
+        return results;
+    }
+
+    /**
+     * 处理器依赖的词库、规则、名单等数据的版本，版本变化后已缓存的处理结果失效；不依赖外部数据的处理器返回0
+     *
+     * @return 版本号
+     */
+    default long version() {
+        return 0L;
+    }
 }
 
@@ -0,0 +1,129 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline;
+
+import com.google.common.collect.Lists;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentCleanResContext;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitiveWord;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitveHitContext;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.collections.CollectionUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/26 上午10:20
+ * @description 敏感词校验并行执行：各校验器互不依赖，同时提交到有界线程池，耗时取决于最慢的校验器而不是全部之和
+ * 命中词按路由表顺序合并，与串行执行的结果顺序一致；超过单次请求截止时间仍未完成、执行异常或因线程池已满未能提交的校验器记入缺失编码，返回已完成部分的结果
+ */
+@Log4j2
+public class ParallelValidator {
+
+    private final ThreadPoolExecutor executor;
+
+    private final long deadlineNanos;
+
+    /**
+     * @param threads 校验线程数
+     * @param queueSize 等待队列长度，队列满时拒绝提交，该校验器按未完成处理，不在请求线程中执行以免超出截止时间
+     * @param deadlineMillis 单次请求等待全部校验完成的最长时间
+     */
+    public ParallelValidator(int threads, int queueSize, long deadlineMillis) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "sensitive-validate-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    /**
+     * 并行执行全部校验器并合并结果
+     *
+     * @param validators 编码 -> 敏感词校验处理器，按路由表顺序排列
+     * @param context 数据清洗结果
+     * @return 词库命中情况，missedValidateCodes非空表示结果不完整
+     */
+    public SensitveHitContext validate(Map<Integer, ContextHandler> validators, ContentCleanResContext context) {
+        long deadline = System.nanoTime() + deadlineNanos;
+        List<Integer> codes = Lists.newArrayListWithCapacity(validators.size());
+        List<Future<SensitveHitContext>> futures = Lists.newArrayListWithCapacity(validators.size());
+        for (Map.Entry<Integer, ContextHandler> entry : validators.entrySet()) {
+            ContextHandler handler = entry.getValue();
+            codes.add(entry.getKey());
+            Future<SensitveHitContext> future;
+            try {
+                future = executor.submit(() -> (SensitveHitContext) handler.handle(context));
+            } catch (RejectedExecutionException e) {
+                future = null;
+            }
+            futures.add(future);
+        }
+
+        List<SensitiveWord> hitWords = Lists.newArrayList();
+        List<Integer> missedCodes = Lists.newArrayList();
+        boolean interrupted = false;
+        /*按路由表顺序取结果，保证命中词顺序与串行执行一致*/
+        for (int i = 0; i < futures.size(); i++) {
+            Future<SensitveHitContext> future = futures.get(i);
+            if (Objects.isNull(future)) {
+                /*线程池已满未能提交，与超时一样按未完成处理*/
+                missedCodes.add(codes.get(i));
+                log.warn("sensitive validate rejected, validateCode={}, poolSize={}, queueSize={}",
+                        codes.get(i), executor.getPoolSize(), executor.getQueue().size());
+                continue;
+            }
+            if (interrupted) {
+                future.cancel(true);
+                missedCodes.add(codes.get(i));
+                continue;
+            }
+            try {
+                SensitveHitContext result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (Objects.nonNull(result) && CollectionUtils.isNotEmpty(result.getHitWords())) {
+                    hitWords.addAll(result.getHitWords());
+                }
+            } catch (TimeoutException e) {
+                /*正则等纯计算的校验不响应中断，取消只能阻止尚未开始的校验，已开始的在后台跑完后结果丢弃*/
+                future.cancel(true);
+                missedCodes.add(codes.get(i));
+                log.warn("sensitive validate timeout, validateCode={}, deadlineMillis={}",
+                        codes.get(i), TimeUnit.NANOSECONDS.toMillis(deadlineNanos));
+            } catch (ExecutionException e) {
+                missedCodes.add(codes.get(i));
+                log.error("sensitive validate error, validateCode={}", codes.get(i), e.getCause());
+            } catch (InterruptedException e) {
+                interrupted = true;
+                future.cancel(true);
+                missedCodes.add(codes.get(i));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return SensitveHitContext.builder()
+                .hasHit(CollectionUtils.isNotEmpty(hitWords))
+                .content(context.getContent())
+                .cleanContent(context.getCleanContent())
+                .contentAttr(context.getContentAttr())
+                .hitWords(hitWords)
+                .missedValidateCodes(missedCodes)
+                .build();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,106 +1,190 @@
 package com.splendor.notes.design.patterns.responsibility.pipeline;
 
-import com.google.common.collect.Maps;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveClean;
 import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveEffect;
 import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveValidate;
-import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 /**
  * @author splendor.s
  * @create 2022/11/28 下午2:32
  * @description 管道路由表整合配置
+ * 启动时从Spring容器中收集带清洗、校验、生效注解的处理器单例，按order、编码排序后生成不可变路由表；
+ * reload时整体生成新路由表再替换引用，正在执行的请求继续使用替换前的路由表
  */
-public class PipelineRouteConfig {
-    private static Map<Integer, Class> contentCleanProcessor = Maps.newHashMap();
-    private static Map<Integer, Class> sensitiveValidateProcessor = Maps.newHashMap();
-    private static Map<Integer, Class> sensitiveEffectProcessor = Maps.newHashMap();
-    private static final Logger LOGGER = LoggerFactory.getLogger(SensitivePipelineExecutor.class);
-
-
-    static {
-        /*1.数据清洗能力集合*/
-        Reflections contentCleanRef = new Reflections("com.splendor.notes.design.patterns.responsibility.pipeline.combination.clean");
-        Set<Class<?>> contentCleanClassSet = contentCleanRef.getTypesAnnotatedWith(SensitiveClean.class);
-        for (Class<?> cl : contentCleanClassSet) {
-            Annotation[] annotations = cl.getAnnotations();
-            for (Annotation a : annotations) {
-                if (a instanceof SensitiveClean) {
-                    SensitiveClean sensitiveClean = (SensitiveClean) a;
-                    contentCleanProcessor.put(sensitiveClean.cleanCode(), cl);
-                }
-            }
+@Component
+public class PipelineRouteConfig implements ApplicationContextAware {
+
+    /**
+     * 停用的处理器编码，逗号分隔，修改后调用reload生效
+     */
+    private static final String DISABLED_CODES = "sensitive.pipeline.disabled.codes";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelineRouteConfig.class);
+
+    private ApplicationContext applicationContext;
+
+    private volatile Routes routes = new Routes(ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @PostConstruct
+    public void init() {
+        checkUnregisteredHandlers();
+        reload();
+    }
+
+    /**
+     * 重新收集处理器并整体替换路由表
+     */
+    public synchronized void reload() {
+        Set<Integer> disabledCodes = getDisabledCodes();
+        Routes newRoutes = new Routes(
+                /*1.数据清洗能力集合*/
+                collect(SensitiveClean.class, SensitiveClean::cleanCode, SensitiveClean::order, disabledCodes),
+                /*2.敏感词校验能力集合*/
+                collect(SensitiveValidate.class, SensitiveValidate::validateCode, SensitiveValidate::order, disabledCodes),
+                /*3.敏感词生效能力集合*/
+                collect(SensitiveEffect.class, SensitiveEffect::effectCode, SensitiveEffect::order, disabledCodes));
+        routes = newRoutes;
+        LOGGER.info("PipelineRouteConfig reload, clean={}, validate={}, effect={}, disabled={}",
+                newRoutes.contentCleanProcessor.keySet(), newRoutes.sensitiveValidateProcessor.keySet(),
+                newRoutes.sensitiveEffectProcessor.keySet(), disabledCodes);
+    }
+
+    public ContextHandler getInstance(int code) {
+        Routes current = routes;
+        if (current.contentCleanProcessor.containsKey(code)) {
+            return current.contentCleanProcessor.get(code);
+        }
+        if (current.sensitiveValidateProcessor.containsKey(code)) {
+            return current.sensitiveValidateProcessor.get(code);
         }
-        /*2.敏感词校验能力集合*/
-        Reflections sensitiveValidateRef = new Reflections("com.splendor.notes.design.patterns.responsibility.pipeline.combination.validate");
-        Set<Class<?>> sensitiveValidateClassSet = sensitiveValidateRef.getTypesAnnotatedWith(SensitiveValidate.class);
-        for (Class<?> cl : sensitiveValidateClassSet) {
-            Annotation[] annotations = cl.getAnnotations();
-            for (Annotation a : annotations) {
-                if (a instanceof SensitiveValidate) {
-                    SensitiveValidate sensitiveValidate = (SensitiveValidate) a;
-                    sensitiveValidateProcessor.put(sensitiveValidate.validateCode(), cl);
-                }
+        return current.sensitiveEffectProcessor.get(code);
+    }
+
+    /**
+     * @return 编码 -> 数据清洗处理器，按执行顺序排列
+     */
+    public Map<Integer, ContextHandler> getContentCleanProcessor() {
+        return routes.contentCleanProcessor;
+    }
+
+    /**
+     * @return 编码 -> 敏感词校验处理器，按执行顺序排列
+     */
+    public Map<Integer, ContextHandler> getSensitiveValidateProcessor() {
+        return routes.sensitiveValidateProcessor;
+    }
+
+    /**
+     * @return 编码 -> 敏感词生效处理器，按执行顺序排列
+     */
+    public Map<Integer, ContextHandler> getSensitiveEffectProcessor() {
+        return routes.sensitiveEffectProcessor;
+    }
+
+    private <A extends Annotation> ImmutableMap<Integer, ContextHandler> collect(Class<A> annotationType, ToIntFunction<A> code,
+                                                                               ToIntFunction<A> order, Set<Integer> disabledCodes) {
+        Map<ContextHandler, A> annotations = new IdentityHashMap<>();
+        for (Object bean : applicationContext.getBeansWithAnnotation(annotationType).values()) {
+            A annotation = AnnotationUtils.findAnnotation(AopUtils.getTargetClass(bean), annotationType);
+            if (annotation == null || disabledCodes.contains(code.applyAsInt(annotation))) {
+                continue;
+            }
+            if (!(bean instanceof ContextHandler)) {
+                throw new IllegalStateException(bean.getClass().getName() + " is annotated with @"
+                        + annotationType.getSimpleName() + " but is not a ContextHandler");
             }
+            annotations.put((ContextHandler) bean, annotation);
         }
-        /*3.敏感词生效能力集合*/
-        Reflections sensitiveEffectRef = new Reflections("com.splendor.notes.design.patterns.responsibility.pipeline.combination.effect");
-        Set<Class<?>> sensitiveEffectClassSet = sensitiveEffectRef.getTypesAnnotatedWith(SensitiveEffect.class);
-        for (Class<?> cl : sensitiveEffectClassSet) {
-            Annotation[] annotations = cl.getAnnotations();
-            for (Annotation a : annotations) {
-                if (a instanceof SensitiveEffect) {
-                    SensitiveEffect sensitiveEffect = (SensitiveEffect) a;
-                    sensitiveEffectProcessor.put(sensitiveEffect.effectCode(), cl);
-                }
+        List<ContextHandler> handlers = Lists.newArrayList(annotations.keySet());
+        handlers.sort(Comparator.comparingInt((ContextHandler h) -> order.applyAsInt(annotations.get(h)))
+                .thenComparingInt(h -> code.applyAsInt(annotations.get(h))));
+        Map<Integer, ContextHandler> ordered = new LinkedHashMap<>();
+        for (ContextHandler handler : handlers) {
+            int handlerCode = code.applyAsInt(annotations.get(handler));
+            ContextHandler previous = ordered.put(handlerCode, handler);
+            if (previous != null) {
+                throw new IllegalStateException("duplicate @" + annotationType.getSimpleName() + " code " + handlerCode + ": "
+                        + previous.getClass().getName() + ", " + handler.getClass().getName());
             }
         }
+        return ImmutableMap.copyOf(ordered);
     }
 
-    public static ContextHandler getInstance(int code) {
-        if (contentCleanProcessor.containsKey(code)) {
-            try {
-                Constructor constructor = contentCleanProcessor.get(code).getConstructor();
-                return (ContextHandler) constructor.newInstance();
-            } catch (Exception ex) {
-                LOGGER.error("ContextHandler contentCleanProcessor getInstance error, exception:", ex);
+    /**
+     * 路由表只收集Spring Bean，类路径上带处理器注解却未注册为Bean的类会被静默跳过，启动时直接失败
+     * 类路径在运行期不变，只在启动时扫描一次，reload不再重复扫描
+     */
+    private void checkUnregisteredHandlers() {
+        ClassPathScanningCandidateComponentProvider scanner =
+                new ClassPathScanningCandidateComponentProvider(false, applicationContext.getEnvironment());
+        scanner.setResourceLoader(applicationContext);
+        Set<String> registered = new HashSet<>();
+        for (Class<? extends Annotation> annotationType : Arrays.asList(SensitiveClean.class, SensitiveValidate.class, SensitiveEffect.class)) {
+            scanner.addIncludeFilter(new AnnotationTypeFilter(annotationType));
+            for (Object bean : applicationContext.getBeansWithAnnotation(annotationType).values()) {
+                registered.add(AopUtils.getTargetClass(bean).getName());
             }
         }
-        if (sensitiveValidateProcessor.containsKey(code)) {
-            try {
-                Constructor constructor = sensitiveValidateProcessor.get(code).getConstructor();
-                return (ContextHandler) constructor.newInstance();
-            } catch (Exception ex) {
-                LOGGER.error("ContextHandler sensitiveValidateProcessor getInstance error, exception:", ex);
+        List<String> unregistered = new ArrayList<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(PipelineRouteConfig.class.getPackage().getName())) {
+            if (!registered.contains(candidate.getBeanClassName())) {
+                unregistered.add(candidate.getBeanClassName());
             }
         }
-        if (sensitiveEffectProcessor.containsKey(code)) {
-            try {
-                Constructor constructor = sensitiveEffectProcessor.get(code).getConstructor();
-                return (ContextHandler) constructor.newInstance();
-            } catch (Exception ex) {
-                LOGGER.error("ContextHandler sensitiveEffectProcessor getInstance error, exception:", ex);
-            }
+        if (!unregistered.isEmpty()) {
+            throw new IllegalStateException("pipeline handlers annotated with @SensitiveClean/@SensitiveValidate/@SensitiveEffect "
+                    + "are not Spring beans: " + unregistered);
         }
-        return null;
     }
 
-    public static Map<Integer, Class> getContentCleanProcessor() {
-        return contentCleanProcessor;
+    private Set<Integer> getDisabledCodes() {
+        Set<Integer> disabledCodes = new HashSet<>();
+        String value = applicationContext.getEnvironment().getProperty(DISABLED_CODES, "");
+        for (String code : Splitter.on(',').trimResults().omitEmptyStrings().split(value)) {
+            disabledCodes.add(Integer.parseInt(code));
+        }
+        return disabledCodes;
     }
 
-    public static Map<Integer, Class> getSensitiveValidateProcessor() {
-        return sensitiveValidateProcessor;
-    }
+    /**
+     * 一次reload生成的路由表，三个阶段一起替换
+     */
+    private static class Routes {
+        private final ImmutableMap<Integer, ContextHandler> contentCleanProcessor;
+        private final ImmutableMap<Integer, ContextHandler> sensitiveValidateProcessor;
+        private final ImmutableMap<Integer, ContextHandler> sensitiveEffectProcessor;
 
-    public static Map<Integer, Class> getSensitiveEffectProcessor() {
-        return sensitiveEffectProcessor;
+        private Routes(ImmutableMap<Integer, ContextHandler> contentCleanProcessor,
+                       ImmutableMap<Integer, ContextHandler> sensitiveValidateProcessor,
+                       ImmutableMap<Integer, ContextHandler> sensitiveEffectProcessor) {
+            this.contentCleanProcessor = contentCleanProcessor;
+            this.sensitiveValidateProcessor = sensitiveValidateProcessor;
+            this.sensitiveEffectProcessor = sensitiveEffectProcessor;
+        }
     }
 
 }
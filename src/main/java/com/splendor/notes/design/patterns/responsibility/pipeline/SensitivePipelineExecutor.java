@@ -7,10 +7,15 @@ import com.splendor.notes.design.patterns.responsibility.pipeline.model.*;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.collections.CollectionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
 
 /**
@@ -26,28 +31,83 @@ public class SensitivePipelineExecutor {
     private CommonHeadHandler commonHeadHandler;
     @Autowired
     private CommonTailHandler commonTailHandler;
+    @Autowired
+    private PipelineRouteConfig pipelineRouteConfig;
+    @Autowired
+    private SensitiveResultCache sensitiveResultCache;
+
+    /**
+     * 敏感词校验是否并行执行
+     */
+    @Value("${sensitive.validate.parallel:false}")
+    private boolean parallelValidate;
+    /**
+     * 并行校验线程数
+     */
+    @Value("${sensitive.validate.parallel.threads:4}")
+    private int parallelValidateThreads;
+    /**
+     * 并行校验等待队列长度
+     */
+    @Value("${sensitive.validate.parallel.queue.size:1024}")
+    private int parallelValidateQueueSize;
+    /**
+     * 单次请求等待校验结果的最长时间
+     */
+    @Value("${sensitive.validate.parallel.deadline.millis:200}")
+    private long parallelValidateDeadlineMillis;
+
+    private ParallelValidator parallelValidator;
+
+    /**
+     * 批量处理的并行度，0表示取CPU核数
+     */
+    @Value("${sensitive.batch.parallelism:0}")
+    private int batchParallelism;
+    /**
+     * 批量处理时单个分片的文本条数，分片内逐阶段、逐处理器成列处理
+     */
+    @Value("${sensitive.batch.slice.size:256}")
+    private int batchSliceSize;
+
+    private ForkJoinPool batchPool;
+
+    @PostConstruct
+    public void init() {
+        if (parallelValidate) {
+            parallelValidator = new ParallelValidator(parallelValidateThreads, parallelValidateQueueSize, parallelValidateDeadlineMillis);
+        }
+        batchPool = new ForkJoinPool(batchParallelism > 0 ? batchParallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (Objects.nonNull(parallelValidator)) {
+            parallelValidator.shutdown();
+        }
+        batchPool.shutdownNow();
+    }
 
     public String getSensitiveDealRes(ContentInfoContext contentInfoContext) {
         StringBuilder sensitiveDealRes = new StringBuilder();
         sensitiveDealRes.append("用户文本【").append(contentInfoContext.getContent()).append("】");
         /*1.检查请求内容的合法性*/
-        /*2.获取对应请求的文本清洗结果*/
-        ContentCleanResContext contentCleanResContext = getContentCleanRes(contentInfoContext);
-        if (!contentCleanResContext.isCleanDone()) {
-            sensitiveDealRes.append("内部清洗处理异常：").append("具体原因为【").append(contentCleanResContext.getReason()).append("】");
+        /*2.相同文本、属性且词库版本未变化时直接使用缓存的处理结果*/
+        SensitiveDealResult sensitiveDealResult = sensitiveResultCache.get(contentInfoContext, this::deal);
+        if (!sensitiveDealResult.isCleanDone()) {
+            sensitiveDealRes.append("内部清洗处理异常：").append("具体原因为【").append(sensitiveDealResult.getReason()).append("】");
             return sensitiveDealRes.toString();
         }
-
-        /*3.整合相关的校验能力*/
-        SensitveHitContext sensitveHitContext = getSensitveHitRes(contentCleanResContext);
-        if (!sensitveHitContext.getHasHit()) {
-            sensitiveDealRes.append("无任何敏感词命中");
+        if (sensitiveDealResult.isHit()) {
+            sensitiveDealRes.append("命中相关敏感词：").append("【").append(sensitiveDealResult.getHitWords().stream().map(SensitiveWord::getSensitive).collect(Collectors.toList())).append("】");
+            if (sensitiveDealResult.isPartial()) {
+                sensitiveDealRes.append("，部分敏感词校验超时或未执行，结果不完整");
+            }
             return sensitiveDealRes.toString();
         }
-        /*4.整合最终的命中结果*/
-        SensitveEffectiveContext sensitveEffectiveContext = getSensitveHitRes(sensitveHitContext);
-        if (sensitveEffectiveContext.getIsHit()) {
-            sensitiveDealRes.append("命中相关敏感词：").append("【").append(sensitveEffectiveContext.getHitWords().stream().map(SensitiveWord::getSensitive).collect(Collectors.toList())).append("】");
+        /*3.部分校验器超时或未执行时不能断定未命中*/
+        if (sensitiveDealResult.isPartial()) {
+            sensitiveDealRes.append("已完成的校验未命中敏感词，部分敏感词校验超时或未执行，结果不完整");
             return sensitiveDealRes.toString();
         }
 
@@ -55,6 +115,254 @@ public class SensitivePipelineExecutor {
         return sensitiveDealRes.toString();
     }
 
+    /**
+     * 单条文本依次执行清洗、校验、生效
+     *
+     * @param contentInfoContext 用户文本内容
+     * @return 处理结果
+     */
+    private SensitiveDealResult deal(ContentInfoContext contentInfoContext) {
+        /*获取对应请求的文本清洗结果*/
+        ContentCleanResContext contentCleanResContext = getContentCleanRes(contentInfoContext);
+        if (!contentCleanResContext.isCleanDone()) {
+            return toDealResult(contentCleanResContext, null, false);
+        }
+
+        /*整合相关的校验能力*/
+        SensitveHitContext sensitveHitContext = getSensitveHitRes(contentCleanResContext);
+        boolean partial = CollectionUtils.isNotEmpty(sensitveHitContext.getMissedValidateCodes());
+        if (!Boolean.TRUE.equals(sensitveHitContext.getHasHit())) {
+            return toDealResult(contentCleanResContext, null, partial);
+        }
+        /*整合最终的命中结果*/
+        return toDealResult(contentCleanResContext, getSensitveHitRes(sensitveHitContext), partial);
+    }
+
+    /**
+     * 批量处理用户文本：按清洗、校验、生效三个阶段成列执行，每个阶段内各处理器对整个分片调用一次handleBatch，
+     * 词库自动机、编译后正则等按分片只获取一次；分片在ForkJoinPool上并行，阶段之间等待全部分片完成。
+     * 不经过通用头尾处理器，每批只记录一条汇总日志；并行校验模式对批量接口不生效，分片本身已并行
+     *
+     * @param contentInfoContexts 用户文本内容
+     * @return 与contentInfoContexts一一对应的处理结果
+     */
+    public List<SensitiveDealResult> getSensitiveDealRes(List<ContentInfoContext> contentInfoContexts) {
+        /*命中缓存的文本不再处理，批内重复的文本只处理一次*/
+        return sensitiveResultCache.getAll(contentInfoContexts, this::dealBatch);
+    }
+
+    private List<SensitiveDealResult> dealBatch(List<ContentInfoContext> contentInfoContexts) {
+        int size = contentInfoContexts.size();
+        if (size == 0) {
+            return Lists.newArrayList();
+        }
+        long start = System.currentTimeMillis();
+        ContentCleanResContext[] cleanRes = new ContentCleanResContext[size];
+        SensitveHitContext[] hitRes = new SensitveHitContext[size];
+        SensitveEffectiveContext[] effectiveRes = new SensitveEffectiveContext[size];
+        /*1.数据清洗*/
+        batchPool.invoke(new SliceTask(0, size, (from, to) -> cleanSlice(contentInfoContexts, from, to, cleanRes)));
+        /*2.敏感词校验*/
+        batchPool.invoke(new SliceTask(0, size, (from, to) -> validateSlice(cleanRes, from, to, hitRes)));
+        /*3.敏感词生效*/
+        batchPool.invoke(new SliceTask(0, size, (from, to) -> effectSlice(hitRes, from, to, effectiveRes)));
+
+        List<SensitiveDealResult> results = Lists.newArrayListWithCapacity(size);
+        int hitCount = 0;
+        for (int i = 0; i < size; i++) {
+            SensitiveDealResult result = toDealResult(cleanRes[i], effectiveRes[i], false);
+            hitCount += result.isHit() ? 1 : 0;
+            results.add(result);
+        }
+        log.info("批量管道执行完毕：size={}, hit={}, cost={}ms", size, hitCount, System.currentTimeMillis() - start);
+        return results;
+    }
+
+    private void cleanSlice(List<ContentInfoContext> contexts, int from, int to, ContentCleanResContext[] cleanRes) {
+        List<Integer> active = range(from, to);
+        for (ContextHandler handler : pipelineRouteConfig.getContentCleanProcessor().values()) {
+            if (active.isEmpty()) {
+                break;
+            }
+            List<ContentCleanResContext> results = handler.handleBatch(active.stream().map(contexts::get).collect(Collectors.toList()));
+            List<Integer> next = Lists.newArrayListWithCapacity(active.size());
+            for (int k = 0; k < active.size(); k++) {
+                int index = active.get(k);
+                ContentCleanResContext result = results.get(k);
+                if (Objects.nonNull(result)) {
+                    cleanRes[index] = result;
+                }
+                /*清洗异常的文本不再进入后续清洗*/
+                if (Objects.isNull(result) || result.isCleanDone()) {
+                    next.add(index);
+                }
+            }
+            active = next;
+        }
+        for (int i = from; i < to; i++) {
+            if (Objects.isNull(cleanRes[i])) {
+                /*没有任何清洗处理器给出结果，按原文本继续校验*/
+                ContentInfoContext context = contexts.get(i);
+                cleanRes[i] = ContentCleanResContext.builder()
+                        .isCleanDone(true)
+                        .content(context.getContent())
+                        .cleanContent(context.getCleanContent())
+                        .contentAttr(context.getContentAttr())
+                        .build();
+            }
+        }
+    }
+
+    private void validateSlice(ContentCleanResContext[] cleanRes, int from, int to, SensitveHitContext[] hitRes) {
+        List<Integer> active = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            if (cleanRes[i].isCleanDone()) {
+                active.add(i);
+            }
+        }
+        if (active.isEmpty()) {
+            return;
+        }
+        List<ContentCleanResContext> contexts = active.stream().map(i -> cleanRes[i]).collect(Collectors.toList());
+        List<List<SensitiveWord>> hitWords = Lists.newArrayListWithCapacity(active.size());
+        active.forEach(i -> hitWords.add(Lists.newArrayList()));
+        for (ContextHandler handler : pipelineRouteConfig.getSensitiveValidateProcessor().values()) {
+            List<SensitveHitContext> results = handler.handleBatch(contexts);
+            for (int k = 0; k < active.size(); k++) {
+                SensitveHitContext result = results.get(k);
+                if (Objects.isNull(result)) {
+                    continue;
+                }
+                hitRes[active.get(k)] = result;
+                if (CollectionUtils.isNotEmpty(result.getHitWords())) {
+                    hitWords.get(k).addAll(result.getHitWords());
+                }
+            }
+        }
+        /*根据统计词库信息决定最后的词库结果*/
+        for (int k = 0; k < active.size(); k++) {
+            int index = active.get(k);
+            if (Objects.isNull(hitRes[index])) {
+                hitRes[index] = SensitveHitContext.builder().hasHit(false).build();
+            }
+            hitRes[index].setHasHit(CollectionUtils.isNotEmpty(hitWords.get(k)));
+            hitRes[index].setHitWords(hitWords.get(k));
+        }
+    }
+
+    private void effectSlice(SensitveHitContext[] hitRes, int from, int to, SensitveEffectiveContext[] effectiveRes) {
+        List<Integer> active = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            if (Objects.nonNull(hitRes[i]) && hitRes[i].getHasHit()) {
+                active.add(i);
+            }
+        }
+        /*各文本放行的词在生效处理器之间累积，下标相对分片起点*/
+        SensitveEffectiveContext[] ignored = new SensitveEffectiveContext[to - from];
+        for (int i : active) {
+            ignored[i - from] = SensitveEffectiveContext.builder()
+                    .whitedWords(Lists.newArrayList())
+                    .complianceIgnoreWords(Lists.newArrayList())
+                    .ruleIgnoreWords(Lists.newArrayList())
+                    .build();
+        }
+        for (ContextHandler handler : pipelineRouteConfig.getSensitiveEffectProcessor().values()) {
+            if (active.isEmpty()) {
+                break;
+            }
+            List<SensitveEffectiveContext> results = handler.handleBatch(active.stream().map(i -> hitRes[i]).collect(Collectors.toList()));
+            List<Integer> next = Lists.newArrayListWithCapacity(active.size());
+            for (int k = 0; k < active.size(); k++) {
+                int index = active.get(k);
+                SensitveEffectiveContext result = results.get(k);
+                if (Objects.isNull(result)) {
+                    next.add(index);
+                    continue;
+                }
+                if (CollectionUtils.isNotEmpty(result.getComplianceIgnoreWords())) {
+                    ignored[index - from].getComplianceIgnoreWords().addAll(result.getComplianceIgnoreWords());
+                }
+                if (CollectionUtils.isNotEmpty(result.getRuleIgnoreWords())) {
+                    ignored[index - from].getRuleIgnoreWords().addAll(result.getRuleIgnoreWords());
+                }
+                if (CollectionUtils.isNotEmpty(result.getWhitedWords())) {
+                    ignored[index - from].getWhitedWords().addAll(result.getWhitedWords());
+                }
+                effectiveRes[index] = result;
+                /*如果已经没有命中的词了则该文本不再进入后续生效处理*/
+                if (result.getIsHit()) {
+                    next.add(index);
+                }
+            }
+            active = next;
+        }
+        for (int i = from; i < to; i++) {
+            if (Objects.nonNull(effectiveRes[i])) {
+                effectiveRes[i].setWhitedWords(ignored[i - from].getWhitedWords());
+                effectiveRes[i].setComplianceIgnoreWords(ignored[i - from].getComplianceIgnoreWords());
+                effectiveRes[i].setRuleIgnoreWords(ignored[i - from].getRuleIgnoreWords());
+            }
+        }
+    }
+
+    private SensitiveDealResult toDealResult(ContentCleanResContext cleanRes, SensitveEffectiveContext effectiveRes, boolean partial) {
+        SensitiveDealResult.SensitiveDealResultBuilder builder = SensitiveDealResult.builder()
+                .content(cleanRes.getContent())
+                .cleanContent(cleanRes.getCleanContent())
+                .cleanDone(cleanRes.isCleanDone())
+                .reason(cleanRes.getReason())
+                .partial(partial)
+                .hitWords(Lists.newArrayList());
+        if (Objects.isNull(effectiveRes)) {
+            return builder.build();
+        }
+        boolean hit = Boolean.TRUE.equals(effectiveRes.getIsHit());
+        return builder.hit(hit)
+                .hitWords(hit && Objects.nonNull(effectiveRes.getHitWords()) ? effectiveRes.getHitWords() : Lists.newArrayList())
+                .whitedWords(effectiveRes.getWhitedWords())
+                .complianceIgnoreWords(effectiveRes.getComplianceIgnoreWords())
+                .ruleIgnoreWords(effectiveRes.getRuleIgnoreWords())
+                .build();
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> indexes = Lists.newArrayListWithCapacity(to - from);
+        for (int i = from; i < to; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    /**
+     * 批量处理的分片任务：区间超过分片大小时对半拆分，否则在当前线程处理整个区间
+     */
+    private class SliceTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final SliceHandler handler;
+
+        private SliceTask(int from, int to, SliceHandler handler) {
+            this.from = from;
+            this.to = to;
+            this.handler = handler;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= Math.max(1, batchSliceSize)) {
+                handler.handle(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SliceTask(from, middle, handler), new SliceTask(middle, to, handler));
+        }
+    }
+
+    @FunctionalInterface
+    private interface SliceHandler {
+        void handle(int from, int to);
+    }
+
     /**
      * 根据用户文本获取对应数据清洗结果内容
      *
@@ -65,8 +373,8 @@ public class SensitivePipelineExecutor {
         /*【通用头处理器】处理*/
         commonHeadHandler.handle(contentInfoContext);
         ContentCleanResContext contentCleanResContext = null;
-        for (Integer cleanCode : PipelineRouteConfig.getContentCleanProcessor().keySet()) {
-            contentCleanResContext = (ContentCleanResContext) PipelineRouteConfig.getInstance(cleanCode).handle(contentInfoContext);
+        for (ContextHandler handler : pipelineRouteConfig.getContentCleanProcessor().values()) {
+            contentCleanResContext = (ContentCleanResContext) handler.handle(contentInfoContext);
             if (Objects.isNull(contentCleanResContext)) {
                 continue;
             }
@@ -90,10 +398,17 @@ public class SensitivePipelineExecutor {
     public SensitveHitContext getSensitveHitRes(ContentCleanResContext contentCleanResContext) {
         /*【通用头处理器】处理*/
         commonHeadHandler.handle(contentCleanResContext);
+        if (Objects.nonNull(parallelValidator)) {
+            /*并行校验：命中词按路由表顺序合并，超时的校验器记入缺失编码*/
+            SensitveHitContext sensitveHitContext = parallelValidator.validate(pipelineRouteConfig.getSensitiveValidateProcessor(), contentCleanResContext);
+            /*【通用尾处理器】处理*/
+            commonTailHandler.handle(contentCleanResContext);
+            return sensitveHitContext;
+        }
         SensitveHitContext sensitveHitContext = null;
         List<SensitiveWord> hitWords = Lists.newArrayList();
-        for (Integer validateCode : PipelineRouteConfig.getSensitiveValidateProcessor().keySet()) {
-            sensitveHitContext = (SensitveHitContext) PipelineRouteConfig.getInstance(validateCode).handle(contentCleanResContext);
+        for (ContextHandler handler : pipelineRouteConfig.getSensitiveValidateProcessor().values()) {
+            sensitveHitContext = (SensitveHitContext) handler.handle(contentCleanResContext);
             if (Objects.isNull(sensitveHitContext)) {
                 continue;
             }
@@ -127,8 +442,8 @@ public class SensitivePipelineExecutor {
         List<SensitiveWord> whitedWords = Lists.newArrayList();
         List<SensitiveWord> complianceIgnoreWords = Lists.newArrayList();
         List<SensitiveWord> ruleIgnoreWords = Lists.newArrayList();
-        for (Integer effectCode : PipelineRouteConfig.getSensitiveEffectProcessor().keySet()) {
-            sensitveEffectiveContext = (SensitveEffectiveContext) PipelineRouteConfig.getInstance(effectCode).handle(sensitveHitContext);
+        for (ContextHandler handler : pipelineRouteConfig.getSensitiveEffectProcessor().values()) {
+            sensitveEffectiveContext = (SensitveEffectiveContext) handler.handle(sensitveHitContext);
             if (Objects.isNull(sensitveHitContext)) {
                 continue;
             }
@@ -0,0 +1,352 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentAttr;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentInfoContext;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitiveDealResult;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitiveWord;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/31 上午10:30
+ * @description 敏感词处理结果缓存：key为文本、影响结果的文本属性的128位murmur3哈希加上管道版本指纹，本地Caffeine为一级，Redis为可选的二级
+ * 版本指纹由路由表中各处理器的编码和version()组合而成，词库、规则、白名单版本变化或路由表reload后指纹变化，一级缓存整体清空，二级缓存的旧key不再被读取、等待过期
+ * 缓存中保存的是副本，命中时同样返回副本，调用方修改返回结果（包括命中词列表）不会影响缓存和同一批内的重复文本
+ */
+@Component
+@Log4j2
+public class SensitiveResultCache {
+
+    private static final String KEY_PREFIX = "sensitive:result:";
+
+    @Autowired
+    private PipelineRouteConfig pipelineRouteConfig;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 是否缓存处理结果
+     */
+    @Value("${sensitive.result.cache.enabled:true}")
+    private boolean enabled;
+    @Value("${sensitive.result.cache.l1.maximum-size:100000}")
+    private long l1MaximumSize;
+    @Value("${sensitive.result.cache.l1.expire-seconds:600}")
+    private long l1ExpireSeconds;
+    /**
+     * 是否启用Redis二级缓存，多节点共享结果
+     */
+    @Value("${sensitive.result.cache.l2.enabled:false}")
+    private boolean l2Enabled;
+    @Value("${sensitive.result.cache.l2.expire-seconds:3600}")
+    private long l2ExpireSeconds;
+    /**
+     * 版本指纹的重新计算间隔，版本变化最多延迟该时间后生效
+     */
+    @Value("${sensitive.result.cache.version.refresh-millis:1000}")
+    private long versionRefreshMillis;
+
+    private Cache<String, SensitiveDealResult> l1Cache;
+
+    private final LongAdder l1Hits = new LongAdder();
+
+    private final LongAdder l2Hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private volatile long version;
+
+    private volatile long versionCheckedAt;
+
+    @PostConstruct
+    public void init() {
+        l1Cache = Caffeine.newBuilder()
+                .maximumSize(l1MaximumSize)
+                .expireAfterWrite(l1ExpireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        FunctionCounter.builder("sensitive.result.cache.requests", l1Hits, LongAdder::doubleValue)
+                .description("结果缓存查询次数").tag("result", "l1_hit").register(meterRegistry);
+        FunctionCounter.builder("sensitive.result.cache.requests", l2Hits, LongAdder::doubleValue)
+                .description("结果缓存查询次数").tag("result", "l2_hit").register(meterRegistry);
+        FunctionCounter.builder("sensitive.result.cache.requests", misses, LongAdder::doubleValue)
+                .description("结果缓存查询次数").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("sensitive.result.cache.hit.ratio", this, SensitiveResultCache::hitRatio)
+                .description("一级与二级缓存合计命中率").register(meterRegistry);
+        Gauge.builder("sensitive.result.cache.size", l1Cache, Cache::estimatedSize)
+                .description("一级缓存条数").register(meterRegistry);
+        FunctionCounter.builder("sensitive.result.cache.evictions", l1Cache, cache -> cache.stats().evictionCount())
+                .description("一级缓存因容量或过期淘汰的条数").register(meterRegistry);
+    }
+
+    /**
+     * 查询单条文本的处理结果，未命中时调用loader处理并写入缓存
+     *
+     * @param context 用户文本内容
+     * @param loader  未命中时的处理
+     * @return 处理结果
+     */
+    public SensitiveDealResult get(ContentInfoContext context, Function<ContentInfoContext, SensitiveDealResult> loader) {
+        if (!enabled) {
+            return loader.apply(context);
+        }
+        String key = key(context, currentVersion());
+        SensitiveDealResult result = l1Cache.getIfPresent(key);
+        if (Objects.nonNull(result)) {
+            l1Hits.increment();
+            return copy(result);
+        }
+        if (l2Enabled) {
+            result = l2Get(Lists.newArrayList(key)).get(0);
+            if (Objects.nonNull(result)) {
+                l2Hits.increment();
+                l1Cache.put(key, result);
+                return copy(result);
+            }
+        }
+        misses.increment();
+        result = loader.apply(context);
+        put(Collections.singletonMap(key, result));
+        return result;
+    }
+
+    /**
+     * 批量查询处理结果：依次查一级、二级缓存，剩余文本按key去重后一次交给loader处理
+     *
+     * @param contexts 用户文本内容
+     * @param loader   未命中时的批量处理，返回与入参一一对应的结果
+     * @return 与contexts一一对应的处理结果
+     */
+    public List<SensitiveDealResult> getAll(List<ContentInfoContext> contexts,
+                                            Function<List<ContentInfoContext>, List<SensitiveDealResult>> loader) {
+        if (!enabled || contexts.isEmpty()) {
+            return loader.apply(contexts);
+        }
+        long currentVersion = currentVersion();
+        List<String> keys = Lists.newArrayListWithCapacity(contexts.size());
+        for (ContentInfoContext context : contexts) {
+            keys.add(key(context, currentVersion));
+        }
+        Map<String, SensitiveDealResult> found = Maps.newHashMap(l1Cache.getAllPresent(keys));
+        /*本次loader处理出的结果未进入缓存，可以直接返回一次，其余位置返回副本*/
+        Set<SensitiveDealResult> owned = Sets.newIdentityHashSet();
+        l1Hits.add(countIn(keys, found));
+
+        if (l2Enabled) {
+            List<String> l2Keys = Lists.newArrayList(Sets.newLinkedHashSet(keys));
+            l2Keys.removeIf(found::containsKey);
+            if (!l2Keys.isEmpty()) {
+                List<SensitiveDealResult> l2Values = l2Get(l2Keys);
+                Map<String, SensitiveDealResult> l2Found = Maps.newHashMap();
+                for (int i = 0; i < l2Keys.size(); i++) {
+                    if (Objects.nonNull(l2Values.get(i))) {
+                        l2Found.put(l2Keys.get(i), l2Values.get(i));
+                    }
+                }
+                l1Cache.putAll(l2Found);
+                l2Hits.add(countIn(keys, l2Found));
+                found.putAll(l2Found);
+            }
+        }
+
+        /*同一批内重复的文本只处理一次*/
+        Map<String, ContentInfoContext> missed = Maps.newLinkedHashMap();
+        for (int i = 0; i < keys.size(); i++) {
+            if (!found.containsKey(keys.get(i))) {
+                missed.putIfAbsent(keys.get(i), contexts.get(i));
+            }
+        }
+        misses.add(contexts.size() - countIn(keys, found));
+        if (!missed.isEmpty()) {
+            List<SensitiveDealResult> loaded = loader.apply(Lists.newArrayList(missed.values()));
+            Map<String, SensitiveDealResult> loadedByKey = Maps.newLinkedHashMap();
+            int index = 0;
+            for (String key : missed.keySet()) {
+                loadedByKey.put(key, loaded.get(index++));
+            }
+            put(loadedByKey);
+            found.putAll(loadedByKey);
+            owned.addAll(loadedByKey.values());
+        }
+
+        List<SensitiveDealResult> results = Lists.newArrayListWithCapacity(keys.size());
+        for (String key : keys) {
+            SensitiveDealResult result = found.get(key);
+            results.add(owned.remove(result) ? result : copy(result));
+        }
+        return results;
+    }
+
+    /**
+     * 管道版本指纹：按间隔重新计算，变化时清空一级缓存
+     */
+    long currentVersion() {
+        long now = System.currentTimeMillis();
+        if (now - versionCheckedAt < versionRefreshMillis) {
+            return version;
+        }
+        synchronized (this) {
+            if (now - versionCheckedAt < versionRefreshMillis) {
+                return version;
+            }
+            long newVersion = computeVersion();
+            if (versionCheckedAt != 0 && newVersion != version) {
+                l1Cache.invalidateAll();
+                log.info("SensitiveResultCache version changed, {} -> {}, l1 invalidated", Long.toHexString(version), Long.toHexString(newVersion));
+            }
+            version = newVersion;
+            versionCheckedAt = now;
+            return newVersion;
+        }
+    }
+
+    private long computeVersion() {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (Map<Integer, ContextHandler> handlers : Lists.newArrayList(pipelineRouteConfig.getContentCleanProcessor(),
+                pipelineRouteConfig.getSensitiveValidateProcessor(), pipelineRouteConfig.getSensitiveEffectProcessor())) {
+            for (Map.Entry<Integer, ContextHandler> entry : handlers.entrySet()) {
+                hasher.putInt(entry.getKey()).putLong(entry.getValue().version());
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * 缓存key：文本与处理器实际读取的文本属性（业务来源、城市）一起哈希，属性有新的处理器读取时需加入此处
+     */
+    private static String key(ContentInfoContext context, long version) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putUnencodedChars(Objects.toString(context.getContent(), ""));
+        if (!Objects.equals(context.getContent(), context.getCleanContent())) {
+            /*调用方传入了与原文不同的待清洗文本*/
+            hasher.putBoolean(true).putUnencodedChars(Objects.toString(context.getCleanContent(), ""));
+        }
+        ContentAttr contentAttr = context.getContentAttr();
+        if (Objects.nonNull(contentAttr)) {
+            hasher.putInt(Objects.isNull(contentAttr.getBizType()) ? -1 : contentAttr.getBizType())
+                    .putInt(Objects.isNull(contentAttr.getCityCode()) ? -1 : contentAttr.getCityCode());
+        }
+        return KEY_PREFIX + Long.toHexString(version) + ":" + hasher.hash();
+    }
+
+    private void put(Map<String, SensitiveDealResult> loaded) {
+        /*并行校验超时等不完整的结果不缓存*/
+        Map<String, SensitiveDealResult> results = Maps.filterValues(loaded, result -> Objects.nonNull(result) && !result.isPartial());
+        if (results.isEmpty()) {
+            return;
+        }
+        /*缓存保存副本，loader的结果原样返回给调用方*/
+        l1Cache.putAll(Maps.transformValues(results, SensitiveResultCache::copy));
+        if (l2Enabled) {
+            try {
+                stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        ValueOperations<String, String> valueOperations = (ValueOperations<String, String>) operations.opsForValue();
+                        results.forEach((key, value) -> valueOperations.set(key, JSON.toJSONString(value), l2ExpireSeconds, TimeUnit.SECONDS));
+                        return null;
+                    }
+                });
+            } catch (Exception e) {
+                log.error("SensitiveResultCache l2 put error, size:{}", results.size(), e);
+            }
+        }
+    }
+
+    private List<SensitiveDealResult> l2Get(List<String> keys) {
+        List<SensitiveDealResult> results = Lists.newArrayListWithCapacity(keys.size());
+        try {
+            List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < keys.size(); i++) {
+                String value = Objects.isNull(values) ? null : values.get(i);
+                results.add(Objects.isNull(value) ? null : JSON.parseObject(value, SensitiveDealResult.class));
+            }
+        } catch (Exception e) {
+            /*二级缓存不可用时按未命中处理*/
+            log.error("SensitiveResultCache l2 get error, size:{}", keys.size(), e);
+            while (results.size() < keys.size()) {
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    private static SensitiveDealResult copy(SensitiveDealResult result) {
+        if (Objects.isNull(result)) {
+            return null;
+        }
+        return SensitiveDealResult.builder()
+                .content(result.getContent())
+                .cleanContent(result.getCleanContent())
+                .cleanDone(result.isCleanDone())
+                .reason(result.getReason())
+                .hit(result.isHit())
+                .hitWords(copyWords(result.getHitWords()))
+                .whitedWords(copyWords(result.getWhitedWords()))
+                .complianceIgnoreWords(copyWords(result.getComplianceIgnoreWords()))
+                .ruleIgnoreWords(copyWords(result.getRuleIgnoreWords()))
+                .partial(result.isPartial())
+                .build();
+    }
+
+    private static List<SensitiveWord> copyWords(List<SensitiveWord> words) {
+        if (Objects.isNull(words)) {
+            return null;
+        }
+        List<SensitiveWord> copies = Lists.newArrayListWithCapacity(words.size());
+        for (SensitiveWord word : words) {
+            copies.add(Objects.isNull(word) ? null : SensitiveWord.builder()
+                    .sensitive(word.getSensitive())
+                    .sensitiveId(word.getSensitiveId())
+                    .kind(word.getKind()).build());
+        }
+        return copies;
+    }
+
+    private static long countIn(List<String> keys, Map<String, ?> found) {
+        long count = 0;
+        for (String key : keys) {
+            if (found.containsKey(key)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private double hitRatio() {
+        double hits = l1Hits.sum() + l2Hits.sum();
+        double total = hits + misses.sum();
+        return total == 0 ? 0 : hits / total;
+    }
+}
@@ -0,0 +1,303 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline.base;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/8 上午10:12
+ * @description 基于双数组Trie的AC自动机：多模式串一次扫描匹配
+ * <p>
+ * 构建完成后只读，可以被多个线程并发使用；词库变化时应重新构建新实例并整体替换
+ */
+public class AhoCorasickDoubleArrayTrie<V> {
+    /**
+     * 空闲槽位标记
+     */
+    private static final int FREE = -1;
+    /**
+     * 根节点位置
+     */
+    private static final int ROOT = 0;
+
+    /**
+     * 状态转移：t = base[s] + code，当且仅当 check[t] == s 时转移成立
+     */
+    private int[] base;
+    private int[] check;
+    /**
+     * 失败指针
+     */
+    private int[] fail;
+    /**
+     * 每个状态可输出的模式串下标（已合并失败链上的输出）
+     */
+    private int[][] output;
+    /**
+     * 模式串长度，用于计算命中起始位置
+     */
+    private int[] keyLength;
+    /**
+     * 模式串对应的值
+     */
+    private Object[] values;
+    /**
+     * 构建期使用：每个槽位之后的第一个空闲槽位
+     */
+    private int[] nextFree;
+
+    /**
+     * 命中回调
+     */
+    public interface Hit<V> {
+        /**
+         * @param begin 命中起始位置（包含）
+         * @param end   命中结束位置（不包含）
+         * @param value 模式串对应的值
+         */
+        void hit(int begin, int end, V value);
+    }
+
+    /**
+     * 构建自动机，keys与values按下标一一对应，允许相同模式串对应多个值
+     *
+     * @param keys   模式串
+     * @param values 模式串对应的值
+     * @return 自动机
+     */
+    public static <V> AhoCorasickDoubleArrayTrie<V> build(List<String> keys, List<V> values) {
+        if (keys.size() != values.size()) {
+            throw new IllegalArgumentException("keys and values size mismatch");
+        }
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<>();
+        trie.doBuild(keys, values);
+        return trie;
+    }
+
+    /**
+     * 一次扫描文本，回调所有命中的模式串
+     *
+     * @param text 待匹配文本
+     * @param hit  命中回调
+     */
+    @SuppressWarnings("unchecked")
+    public void parseText(CharSequence text, Hit<V> hit) {
+        if (text == null) {
+            return;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = nextState(state, text.charAt(i) + 1);
+            int[] hits = output[state];
+            if (hits == null) {
+                continue;
+            }
+            for (int keyIndex : hits) {
+                hit.hit(i + 1 - keyLength[keyIndex], i + 1, (V) values[keyIndex]);
+            }
+        }
+    }
+
+    /**
+     * 文本中是否存在任意命中
+     */
+    public boolean matches(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = nextState(state, text.charAt(i) + 1);
+            if (output[state] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 模式串数量
+     */
+    public int size() {
+        return values == null ? 0 : values.length;
+    }
+
+    private int nextState(int state, int code) {
+        while (true) {
+            int t = transition(state, code);
+            if (t != FREE) {
+                return t;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    private int transition(int state, int code) {
+        int t = base[state] + code;
+        if (t > 0 && t < check.length && check[t] == state) {
+            return t;
+        }
+        return FREE;
+    }
+
+    private void doBuild(List<String> keys, List<V> vals) {
+        /*1.先构建普通Trie，空串不参与匹配*/
+        Node root = new Node();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (key == null || key.isEmpty()) {
+                continue;
+            }
+            Node node = root;
+            for (int j = 0; j < key.length(); j++) {
+                node = node.children.computeIfAbsent(key.charAt(j) + 1, k -> new Node());
+            }
+            node.addKey(i);
+        }
+        keyLength = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            keyLength[i] = keys.get(i) == null ? 0 : keys.get(i).length();
+        }
+        values = vals.toArray();
+
+        /*2.按层序将Trie压缩进双数组*/
+        resize(Math.max(1024, keys.size() * 4));
+        /*根节点占位，避免被当作空闲槽位分配*/
+        occupy(ROOT, Integer.MIN_VALUE);
+        root.position = ROOT;
+        Queue<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            if (node.children.isEmpty()) {
+                continue;
+            }
+            int begin = findBase(node);
+            base[node.position] = begin;
+            for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                int t = begin + entry.getKey();
+                occupy(t, node.position);
+                entry.getValue().position = t;
+                queue.add(entry.getValue());
+            }
+        }
+        nextFree = null;
+
+        /*3.按层序计算失败指针并合并输出*/
+        fail = new int[base.length];
+        output = new int[base.length][];
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            int s = node.position;
+            output[s] = mergeOutput(node.keys, s == ROOT ? null : output[fail[s]]);
+            for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                int t = entry.getValue().position;
+                if (s == ROOT) {
+                    fail[t] = ROOT;
+                } else {
+                    int f = fail[s];
+                    int target;
+                    while ((target = transition(f, entry.getKey())) == FREE && f != ROOT) {
+                        f = fail[f];
+                    }
+                    fail[t] = target == FREE ? ROOT : target;
+                }
+                queue.add(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 为节点的所有子节点寻找一段可同时容纳的空闲槽位，只在空闲槽位上跳跃查找
+     */
+    private int findBase(Node node) {
+        int firstCode = node.children.firstKey();
+        int pos = nextFree(firstCode + 1);
+        outer:
+        while (true) {
+            int begin = pos - firstCode;
+            for (int code : node.children.keySet()) {
+                if (begin + code >= check.length) {
+                    resize(Math.max(check.length * 2, begin + node.children.lastKey() + 1));
+                }
+                if (check[begin + code] != FREE) {
+                    pos = nextFree(pos + 1);
+                    continue outer;
+                }
+            }
+            return begin;
+        }
+    }
+
+    /**
+     * 查找不小于from的第一个空闲槽位（并查集式路径压缩）
+     */
+    private int nextFree(int from) {
+        if (from >= check.length) {
+            resize(Math.max(check.length * 2, from + 1));
+        }
+        int root = from;
+        while (nextFree[root] != root) {
+            root = nextFree[root];
+            if (root >= check.length) {
+                resize(check.length * 2);
+            }
+        }
+        while (nextFree[from] != root) {
+            int next = nextFree[from];
+            nextFree[from] = root;
+            from = next;
+        }
+        return root;
+    }
+
+    private void occupy(int position, int parent) {
+        check[position] = parent;
+        nextFree[position] = position + 1;
+    }
+
+    private void resize(int newSize) {
+        int oldSize = check == null ? 0 : check.length;
+        base = base == null ? new int[newSize] : Arrays.copyOf(base, newSize);
+        check = check == null ? new int[newSize] : Arrays.copyOf(check, newSize);
+        nextFree = nextFree == null ? new int[newSize] : Arrays.copyOf(nextFree, newSize);
+        Arrays.fill(check, oldSize, newSize, FREE);
+        for (int i = oldSize; i < newSize; i++) {
+            nextFree[i] = i;
+        }
+    }
+
+    private static int[] mergeOutput(int[] own, int[] inherited) {
+        if (own == null) {
+            return inherited;
+        }
+        if (inherited == null) {
+            return own;
+        }
+        int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+        System.arraycopy(inherited, 0, merged, own.length, inherited.length);
+        return merged;
+    }
+
+    /**
+     * 构建期使用的Trie节点，构建完成后即丢弃
+     */
+    private static class Node {
+        private final TreeMap<Integer, Node> children = new TreeMap<>();
+        private int[] keys;
+        private int position;
+
+        private void addKey(int keyIndex) {
+            keys = keys == null ? new int[]{keyIndex} : Arrays.copyOf(keys, keys.length + 1);
+            keys[keys.length - 1] = keyIndex;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline.base;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/25 上午10:12
+ * @description 字符过滤表：覆盖全部码点的位图，构建时预先按BCConvert.charConvert归一化，过滤时按码点读取，代理对作为一个字符整体判断
+ */
+public final class CodePointFilter {
+
+    /**
+     * 单个线程复用的缓冲区上限，超过的长文本每次单独分配
+     */
+    private static final int MAX_REUSED_BUFFER = 64 * 1024;
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[1024]);
+
+    private final long[] bits = new long[(Character.MAX_CODE_POINT >>> 6) + 1];
+
+    private CodePointFilter() {
+    }
+
+    /**
+     * 合并多组过滤字符，集合中的值为归一化（全角转半角、大写转小写）后的码点
+     *
+     * @param codePointSets 过滤字符集合
+     * @return 过滤表
+     */
+    public static CodePointFilter of(Collection<Set<Integer>> codePointSets) {
+        CodePointFilter filter = new CodePointFilter();
+        for (Set<Integer> codePoints : codePointSets) {
+            for (Integer codePoint : codePoints) {
+                if (codePoint > Character.MAX_VALUE && codePoint <= Character.MAX_CODE_POINT) {
+                    //增补平面字符不受全角半角、大小写转换影响
+                    filter.set(codePoint);
+                }
+            }
+            //基本平面的字符先归一化再判断，与原先逐字符charConvert后查集合的结果一致
+            for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+                if (codePoints.contains(BCConvert.charConvert((char) c))) {
+                    filter.set(c);
+                }
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * 码点归一化：基本平面字符全角转半角、大写转小写，增补平面字符不变
+     *
+     * @param codePoint 码点
+     * @return 归一化后的码点
+     */
+    public static int normalize(int codePoint) {
+        return codePoint <= Character.MAX_VALUE ? BCConvert.charConvert((char) codePoint) : codePoint;
+    }
+
+    public boolean contains(int codePoint) {
+        return (bits[codePoint >>> 6] & (1L << codePoint)) != 0;
+    }
+
+    /**
+     * 去除文本中的过滤字符，没有需要去除的字符时直接返回原文本
+     *
+     * @param text 文本
+     * @return 过滤后的文本
+     */
+    public String filter(String text) {
+        int length = text.length();
+        int index = 0;
+        while (index < length) {
+            int codePoint = text.codePointAt(index);
+            if (contains(codePoint)) {
+                break;
+            }
+            index += Character.charCount(codePoint);
+        }
+        if (index == length) {
+            return text;
+        }
+        char[] buffer = buffer(length);
+        text.getChars(0, index, buffer, 0);
+        int size = index;
+        while (index < length) {
+            char c = text.charAt(index);
+            if (Character.isHighSurrogate(c) && index + 1 < length && Character.isLowSurrogate(text.charAt(index + 1))) {
+                char low = text.charAt(index + 1);
+                if (!contains(Character.toCodePoint(c, low))) {
+                    buffer[size++] = c;
+                    buffer[size++] = low;
+                }
+                index += 2;
+            } else {
+                //单独出现的代理字符按原值判断
+                if (!contains(c)) {
+                    buffer[size++] = c;
+                }
+                index++;
+            }
+        }
+        return new String(buffer, 0, size);
+    }
+
+    private void set(int codePoint) {
+        bits[codePoint >>> 6] |= 1L << codePoint;
+    }
+
+    private static char[] buffer(int length) {
+        if (length > MAX_REUSED_BUFFER) {
+            return new char[length];
+        }
+        char[] buffer = BUFFER.get();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+            BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,256 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline.base;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/31 上午10:20
+ * @description 文本归一化表：全角转半角、大写转小写与繁体转简体合并为码点到码点的映射表，构建时预先用繁简转换链路逐字计算；
+ * 转换结果与逐字映射不一致的词组（以及转换为多个字符的单字）放入词组trie，归一化时按最长匹配优先替换，一次遍历、一个输出缓冲区
+ * <p>
+ * 构建完成后只读，可以被多个线程并发使用
+ */
+public final class NormalizationTable {
+
+    /**
+     * 批量转换时的分隔符，词组中不会出现换行，转换链路也不会改变它
+     */
+    private static final char SEPARATOR = '\n';
+
+    /**
+     * 基本平面码点 -> 归一化后的码点
+     */
+    private final int[] table = new int[Character.MAX_VALUE + 1];
+
+    /**
+     * 增补平面中被转换的汉字，其余增补平面字符不变
+     */
+    private final Map<Integer, Integer> supplementary = Maps.newHashMap();
+
+    /**
+     * 词组首个char的位图，不在位图中的位置不查trie
+     */
+    private final long[] phraseStarts = new long[(Character.MAX_VALUE >>> 6) + 1];
+
+    private final Node root = new Node(0);
+
+    private NormalizationTable() {
+        for (int c = 0; c < table.length; c++) {
+            table[c] = c;
+        }
+    }
+
+    /**
+     * 构建归一化表
+     *
+     * @param converter 繁体转简体的整串转换链路
+     * @param phrases   候选词组（繁简词典中的词条），只保留整体转换与逐字映射结果不一致的词组
+     * @return 归一化表
+     */
+    public static NormalizationTable of(UnaryOperator<String> converter, Collection<String> phrases) {
+        NormalizationTable normalizationTable = new NormalizationTable();
+        List<String> chars = Lists.newArrayList();
+        for (int codePoint = Character.MIN_CODE_POINT; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+            boolean candidate = codePoint <= Character.MAX_VALUE
+                    ? codePoint != SEPARATOR && !Character.isSurrogate((char) codePoint)
+                    : Character.isIdeographic(codePoint);
+            if (candidate) {
+                chars.add(new String(Character.toChars(codePoint)));
+            }
+        }
+        List<String> convertedChars = convert(converter, chars);
+        for (int i = 0; i < chars.size(); i++) {
+            int codePoint = chars.get(i).codePointAt(0);
+            String converted = fold(convertedChars.get(i));
+            if (converted.codePointCount(0, converted.length()) == 1) {
+                normalizationTable.map(codePoint, converted.codePointAt(0));
+            } else {
+                /*转换为多个字符或空串的单字按词组处理*/
+                normalizationTable.addPhrase(chars.get(i), converted);
+            }
+        }
+        Set<String> candidates = new LinkedHashSet<>();
+        for (String phrase : phrases) {
+            if (Objects.nonNull(phrase) && phrase.codePointCount(0, phrase.length()) > 1 && phrase.indexOf(SEPARATOR) < 0) {
+                candidates.add(phrase);
+            }
+        }
+        List<String> phraseList = Lists.newArrayList(candidates);
+        List<String> convertedPhrases = convert(converter, phraseList);
+        for (int i = 0; i < phraseList.size(); i++) {
+            String converted = fold(convertedPhrases.get(i));
+            if (!converted.equals(normalizationTable.mapChars(phraseList.get(i)))) {
+                normalizationTable.addPhrase(phraseList.get(i), converted);
+            }
+        }
+        return normalizationTable;
+    }
+
+    /**
+     * 归一化文本：每个位置先按最长匹配查找词组，未命中时按码点查表；没有需要转换的字符时直接返回原文本
+     *
+     * @param text 文本
+     * @return 归一化后的文本
+     */
+    public String normalize(String text) {
+        int length = text.length();
+        StringBuilder builder = null;
+        int index = 0;
+        while (index < length) {
+            Node phrase = isPhraseStart(text.charAt(index)) ? longestPhrase(text, index) : null;
+            if (Objects.nonNull(phrase)) {
+                if (Objects.isNull(builder)) {
+                    builder = newBuilder(text, index);
+                }
+                builder.append(phrase.replacement);
+                index += phrase.depth;
+                continue;
+            }
+            int codePoint = text.codePointAt(index);
+            int mapped = map(codePoint);
+            if (mapped != codePoint && Objects.isNull(builder)) {
+                builder = newBuilder(text, index);
+            }
+            if (Objects.nonNull(builder)) {
+                builder.appendCodePoint(mapped);
+            }
+            index += Character.charCount(codePoint);
+        }
+        return Objects.isNull(builder) ? text : builder.toString();
+    }
+
+    /**
+     * @return 词组trie中的词条数量
+     */
+    public int phraseSize() {
+        return root.size();
+    }
+
+    private int map(int codePoint) {
+        return codePoint <= Character.MAX_VALUE ? table[codePoint] : supplementary.getOrDefault(codePoint, codePoint);
+    }
+
+    private void map(int codePoint, int mapped) {
+        if (codePoint <= Character.MAX_VALUE) {
+            table[codePoint] = mapped;
+        } else if (codePoint != mapped) {
+            supplementary.put(codePoint, mapped);
+        }
+    }
+
+    /**
+     * 只按码点映射表转换，用于判断词组是否需要进入trie
+     */
+    private String mapChars(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        text.codePoints().forEach(codePoint -> builder.appendCodePoint(map(codePoint)));
+        return builder.toString();
+    }
+
+    private void addPhrase(String phrase, String replacement) {
+        Node node = root;
+        for (int i = 0; i < phrase.length(); i++) {
+            Node child = node.children.get(phrase.charAt(i));
+            if (Objects.isNull(child)) {
+                child = new Node(i + 1);
+                node.children.put(phrase.charAt(i), child);
+            }
+            node = child;
+        }
+        /*多个词典中出现同一词条时以先加入的为准*/
+        if (Objects.isNull(node.replacement)) {
+            node.replacement = replacement;
+        }
+        char first = phrase.charAt(0);
+        phraseStarts[first >>> 6] |= 1L << first;
+    }
+
+    private boolean isPhraseStart(char c) {
+        return (phraseStarts[c >>> 6] & (1L << c)) != 0;
+    }
+
+    /**
+     * 从index开始沿trie向后匹配，返回最长的词组节点，没有词组命中时返回null
+     */
+    private Node longestPhrase(String text, int index) {
+        Node node = root;
+        Node longest = null;
+        for (int i = index; i < text.length(); i++) {
+            node = node.children.get(text.charAt(i));
+            if (Objects.isNull(node)) {
+                break;
+            }
+            /*词组不能截断代理对*/
+            if (Objects.nonNull(node.replacement)
+                    && !(Character.isHighSurrogate(text.charAt(i)) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1)))) {
+                longest = node;
+            }
+        }
+        return longest;
+    }
+
+    private static StringBuilder newBuilder(String text, int index) {
+        StringBuilder builder = new StringBuilder(text.length() + 16);
+        builder.append(text, 0, index);
+        return builder;
+    }
+
+    /**
+     * 全角转半角、大写转小写
+     */
+    private static String fold(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        text.codePoints().forEach(codePoint -> builder.appendCodePoint(CodePointFilter.normalize(codePoint)));
+        return builder.toString();
+    }
+
+    /**
+     * 以换行连接后整串转换一次，按换行拆回；拆分数量不一致时（转换链路改变了分隔符）逐条转换
+     */
+    private static List<String> convert(UnaryOperator<String> converter, List<String> texts) {
+        String converted = converter.apply(String.join(String.valueOf(SEPARATOR), texts));
+        List<String> results = Arrays.asList(converted.split(String.valueOf(SEPARATOR), -1));
+        if (results.size() == texts.size()) {
+            return results;
+        }
+        results = Lists.newArrayListWithCapacity(texts.size());
+        for (String text : texts) {
+            results.add(converter.apply(text));
+        }
+        return results;
+    }
+
+    private static class Node {
+        /**
+         * 从根节点到本节点的char数，即词组长度
+         */
+        private final int depth;
+        private final Map<Character, Node> children = Maps.newHashMap();
+        /**
+         * 以本节点结尾的词组的替换文本，非词组结尾时为null
+         */
+        private String replacement;
+
+        private Node(int depth) {
+            this.depth = depth;
+        }
+
+        private int size() {
+            int size = Objects.isNull(replacement) ? 0 : 1;
+            for (Node child : children.values()) {
+                size += child.size();
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline.combination.clean;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.splendor.notes.design.patterns.responsibility.pipeline.ContextHandler;
+import com.splendor.notes.design.patterns.responsibility.pipeline.base.NormalizationTable;
+import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveClean;
+import com.splendor.notes.design.patterns.responsibility.pipeline.constant.*;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentCleanResContext;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentInfoContext;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/31 上午11:00
+ * @description 数据清洗：一次遍历完成全角转半角、大写转小写、繁体转简体
+ * 三个繁简词库的逐字转换与全角半角、大小写转换预先合并为码点映射表，词组级转换走trie，替代原先三次整串转换；
+ * 与原繁简转换环节一样在清洗阶段最先执行；归一化表在启动时构建，构建失败则启动失败，不会在首个请求中临时构建
+ */
+@Log4j2
+@Component
+@SensitiveClean(cleanCode = SensitiveCons.Clean.NORMALIZATION, order = -2)
+public class CharacterNormalization implements ContextHandler<ContentInfoContext, ContentCleanResContext> {
+
+    private static final String TABLE = "table";
+
+    /**
+     * 繁简词典随依赖发布，归一化表构建一次后不再刷新
+     */
+    private static final LoadingCache<String, NormalizationTable> TABLE_CACHE = CacheBuilder.newBuilder()
+            /*构建缓存*/
+            .build(new CacheLoader<String, NormalizationTable>() {
+                /*初始化加载数据的缓存信息*/
+                @Override
+                public NormalizationTable load(String table) throws Exception {
+                    return NormalizationTable.of(TraditionalSimplifiedConversion::toSimple, TraditionalSimplifiedConversion.getPhrases());
+                }
+            });
+
+    /**
+     * 启动时构建归一化表：逐码点经过三次整串转换并加载词组词典，耗时较长，不放到首个请求中
+     */
+    @PostConstruct
+    public void init() {
+        long start = System.currentTimeMillis();
+        NormalizationTable table;
+        try {
+            table = getTable();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("build normalization table failed", e.getCause());
+        }
+        log.info("CharacterNormalization build table, phrases:{}, cost:{}ms", table.phraseSize(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 对用户内容进行处理：全角转半角、大写转小写、繁体转简体
+     *
+     * @param context 处理时的上下文数据
+     * @return 处理结果（代进入敏感词词库校验）
+     */
+    @Override
+    public ContentCleanResContext handle(ContentInfoContext context) {
+        try {
+            return handle(context, getTable());
+        } catch (Exception e) {
+            return cleanFailed(context);
+        }
+    }
+
+    /**
+     * 批量处理：整批文本共用一次取出的归一化表
+     *
+     * @param contexts 处理时的上下文数据
+     * @return 与contexts一一对应的处理结果
+     */
+    @Override
+    public List<ContentCleanResContext> handleBatch(List<ContentInfoContext> contexts) {
+        List<ContentCleanResContext> results = Lists.newArrayListWithCapacity(contexts.size());
+        NormalizationTable table;
+        try {
+            table = getTable();
+        } catch (Exception e) {
+            contexts.forEach(context -> results.add(cleanFailed(context)));
+            return results;
+        }
+        for (ContentInfoContext context : contexts) {
+            try {
+                results.add(handle(context, table));
+            } catch (Exception e) {
+                results.add(cleanFailed(context));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 按清洗阶段同一张归一化表转换文本，词库编译时用于归一化词条
+     *
+     * @param text 文本
+     * @return 归一化后的文本
+     */
+    public static String normalize(String text) {
+        return TABLE_CACHE.getUnchecked(TABLE).normalize(text);
+    }
+
+    private static NormalizationTable getTable() throws ExecutionException {
+        return TABLE_CACHE.get(TABLE);
+    }
+
+    private ContentCleanResContext handle(ContentInfoContext context, NormalizationTable table) {
+        /*其他链路中清洗后的词*/
+        String cleanContent = table.normalize(context.getCleanContent());
+        /*将本次清洗数据载入待继续清洗实体中*/
+        context.setCleanContent(cleanContent);
+        /*设置处理结果*/
+        return ContentCleanResContext.builder()
+                .isCleanDone(true)
+                .content(context.getContent())
+                .cleanContent(cleanContent)
+                .contentAttr(context.getContentAttr())
+                .build();
+    }
+
+    private ContentCleanResContext cleanFailed(ContentInfoContext context) {
+        /*设置处理结果*/
+        return ContentCleanResContext.builder()
+                .isCleanDone(false)
+                .content(context.getContent())
+                /*记录下中间态数据*/
+                .cleanContent(context.getCleanContent())
+                .contentAttr(context.getContentAttr())
+                .reason("数据清洗异常：全角半角、大小写及繁体转换失败")
+                .build();
+    }
+}
@@ -5,15 +5,14 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 import com.splendor.notes.design.patterns.responsibility.pipeline.ContextHandler;
-import com.splendor.notes.design.patterns.responsibility.pipeline.base.BCConvert;
-import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveClean;
-import com.splendor.notes.design.patterns.responsibility.pipeline.constant.*;
+import com.splendor.notes.design.patterns.responsibility.pipeline.base.CodePointFilter;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentCleanResContext;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentInfoContext;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -23,19 +22,19 @@ import java.util.concurrent.TimeUnit;
  * @author splendor.s
  * @create 2022/11/28 下午2:27
  * @description 排除隐藏字符
+ * 管道中已由FusedCharacterFilter与其他过滤字符一次遍历完成，不再单独注册为清洗环节
  */
 @Component
-@SensitiveClean(cleanCode = SensitiveCons.Clean.EXCULDE_HIDDEN)
 public class ExcludeHiddenCharacters implements ContextHandler<ContentInfoContext, ContentCleanResContext> {
 
-    private LoadingCache<String, Set<Integer>> hiddenCharactersCache = CacheBuilder.newBuilder()
+    private LoadingCache<String, CodePointFilter> hiddenCharactersCache = CacheBuilder.newBuilder()
             .refreshAfterWrite(10, TimeUnit.MINUTES)
             /*构建缓存*/
-            .build(new CacheLoader<String, Set<Integer>>() {
+            .build(new CacheLoader<String, CodePointFilter>() {
                 /*初始化加载数据的缓存信息*/
                 @Override
-                public Set<Integer> load(String specialSymbols) throws Exception {
-                    return getHiddenCharacters();
+                public CodePointFilter load(String specialSymbols) throws Exception {
+                    return CodePointFilter.of(Collections.singletonList(getHiddenCharacters()));
                 }
             });
 
@@ -50,25 +49,16 @@ public class ExcludeHiddenCharacters implements ContextHandler<ContentInfoContex
         try {
             String HIDDEREN = "hidden";
 
-            Set<Integer> emojis = hiddenCharactersCache.get(HIDDEREN);
-            /*其他链路中清洗后的词*/
-            char[] valueChars = context.getCleanContent().toCharArray();
-            StringBuilder cleanContent = new StringBuilder();
-            for (char valueChar : valueChars) {
-                int temp = BCConvert.charConvert(valueChar);
-                if (emojis.contains(temp)) {
-                    /*过滤隐藏字符*/
-                    continue;
-                }
-                cleanContent.append(valueChar);
-            }
+            CodePointFilter filter = hiddenCharactersCache.get(HIDDEREN);
+            /*其他链路中清洗后的词，按码点过滤，代理对作为一个字符判断*/
+            String cleanContent = filter.filter(context.getCleanContent());
             /*将本次清洗数据载入待继续清洗实体中*/
-            context.setCleanContent(cleanContent.toString());
+            context.setCleanContent(cleanContent);
             /*设置处理结果*/
             return ContentCleanResContext.builder()
                     .isCleanDone(true)
                     .content(context.getContent())
-                    .cleanContent(cleanContent.toString())
+                    .cleanContent(cleanContent)
                     .contentAttr(context.getContentAttr())
                     .build();
         } catch (Exception e) {
@@ -89,24 +79,18 @@ public class ExcludeHiddenCharacters implements ContextHandler<ContentInfoContex
      *
      * @return 相关特殊符号集合
      */
-    private static Set<Integer> getHiddenCharacters() {
+    static Set<Integer> getHiddenCharacters() {
         List<String> specialSymbolsRes = Lists.newArrayList();
         String speciSymbols = "\u2069\u202A\u202B\u202C\u202D\u202E\u2060\u2061\u2062\u2063\u2064\uE7C7\uE7C8" +
                 "͏\u2069\u2060\u2061\u2062\u2063\u2064\u2067\u206C\u206B";
         if (StringUtils.isNotBlank(speciSymbols)) {
-            for (int index = 0; index < speciSymbols.length(); index++) {
-                specialSymbolsRes.add(String.valueOf(speciSymbols.charAt(index)));
-            }
+            speciSymbols.codePoints().forEach(codePoint -> specialSymbolsRes.add(new String(Character.toChars(codePoint))));
         }
 
         Set<Integer> specialSymbolsSet = new HashSet<>();
         if (!CollectionUtils.isEmpty(specialSymbolsRes)) {
-            char[] chs;
             for (String curr : specialSymbolsRes) {
-                chs = curr.toCharArray();
-                for (char c : chs) {
-                    specialSymbolsSet.add(BCConvert.charConvert(c));
-                }
+                curr.codePoints().forEach(codePoint -> specialSymbolsSet.add(CodePointFilter.normalize(codePoint)));
             }
         }
         return specialSymbolsSet;
@@ -114,18 +98,7 @@ public class ExcludeHiddenCharacters implements ContextHandler<ContentInfoContex
 
     public static void main(String[] args) {
         String content = "你\u2069\u202A好\u2062\u2063\u2064\uE7C7\uE7C8，张\u2067\u206C彦\u2061\u2062\u2063峰！";
-        char[] valueChars = content.toCharArray();
-        Set<Integer> specialSymbols = getHiddenCharacters();
-        StringBuilder cleanContent = new StringBuilder();
-        for (char valueChar : valueChars) {
-            int temp = BCConvert.charConvert(valueChar);
-            if (specialSymbols.contains(temp)) {
-                /*过滤特殊字符*/
-                continue;
-            }
-            cleanContent.append(valueChar);
-        }
-        System.out.println(cleanContent.toString());
+        System.out.println(CodePointFilter.of(Collections.singletonList(getHiddenCharacters())).filter(content));
     }
 
 }
@@ -0,0 +1,113 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline.combination.clean;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.splendor.notes.design.patterns.responsibility.pipeline.ContextHandler;
+import com.splendor.notes.design.patterns.responsibility.pipeline.base.CodePointFilter;
+import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveClean;
+import com.splendor.notes.design.patterns.responsibility.pipeline.constant.*;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentCleanResContext;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentInfoContext;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/25 上午11:05
+ * @description 数据清洗：一次遍历同时去除特殊符号、emoji和隐藏字符
+ * 三组过滤字符合并为一张码点位图，按码点遍历一次文本，代理对（增补平面的emoji）整体判断；没有需要去除的字符时不产生新字符串
+ * 与原先去除特殊符号、emoji的环节一样在文本语言限制之前执行
+ */
+@Component
+@SensitiveClean(cleanCode = SensitiveCons.Clean.FUSED_CHARACTER_FILTER, order = -1)
+public class FusedCharacterFilter implements ContextHandler<ContentInfoContext, ContentCleanResContext> {
+
+    private LoadingCache<String, CodePointFilter> filterCache = CacheBuilder.newBuilder()
+            .refreshAfterWrite(10, TimeUnit.MINUTES)
+            /*构建缓存*/
+            .build(new CacheLoader<String, CodePointFilter>() {
+                /*初始化加载数据的缓存信息*/
+                @Override
+                public CodePointFilter load(String filter) throws Exception {
+                    return CodePointFilter.of(Lists.newArrayList(RemoveSpecialSymbols.getSpecialSymbols(),
+                            RemoveEmoji.getEmojis(), ExcludeHiddenCharacters.getHiddenCharacters()));
+                }
+            });
+
+    /**
+     * 对用户内容进行处理：去除特殊符号、emoji和隐藏字符
+     *
+     * @param context 处理时的上下文数据
+     * @return 处理结果（代进入敏感词词库校验）
+     */
+    @Override
+    public ContentCleanResContext handle(ContentInfoContext context) {
+        try {
+            return handle(context, getFilter());
+        } catch (Exception e) {
+            return cleanFailed(context);
+        }
+    }
+
+    /**
+     * 批量处理：整批文本共用一次取出的过滤表
+     *
+     * @param contexts 处理时的上下文数据
+     * @return 与contexts一一对应的处理结果
+     */
+    @Override
+    public List<ContentCleanResContext> handleBatch(List<ContentInfoContext> contexts) {
+        List<ContentCleanResContext> results = Lists.newArrayListWithCapacity(contexts.size());
+        CodePointFilter filter;
+        try {
+            filter = getFilter();
+        } catch (Exception e) {
+            contexts.forEach(context -> results.add(cleanFailed(context)));
+            return results;
+        }
+        for (ContentInfoContext context : contexts) {
+            try {
+                results.add(handle(context, filter));
+            } catch (Exception e) {
+                results.add(cleanFailed(context));
+            }
+        }
+        return results;
+    }
+
+    private CodePointFilter getFilter() throws ExecutionException {
+        String FILTER = "filter";
+        return filterCache.get(FILTER);
+    }
+
+    private ContentCleanResContext handle(ContentInfoContext context, CodePointFilter filter) {
+        /*其他链路中清洗后的词*/
+        String cleanContent = filter.filter(context.getCleanContent());
+        /*将本次清洗数据载入待继续清洗实体中*/
+        context.setCleanContent(cleanContent);
+        /*设置处理结果*/
+        return ContentCleanResContext.builder()
+                .isCleanDone(true)
+                .content(context.getContent())
+                .cleanContent(cleanContent)
+                .contentAttr(context.getContentAttr())
+                .build();
+    }
+
+    private ContentCleanResContext cleanFailed(ContentInfoContext context) {
+        /*设置处理结果*/
+        return ContentCleanResContext.builder()
+                .isCleanDone(false)
+                .content(context.getContent())
+                /*记录下中间态数据*/
+                .cleanContent(context.getCleanContent())
+                .contentAttr(context.getContentAttr())
+                .reason("数据清洗异常：去除特殊符号、emoji和隐藏字符失败")
+                .build();
+    }
+}
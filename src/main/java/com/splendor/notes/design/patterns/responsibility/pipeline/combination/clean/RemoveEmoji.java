@@ -5,15 +5,14 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 import com.splendor.notes.design.patterns.responsibility.pipeline.ContextHandler;
-import com.splendor.notes.design.patterns.responsibility.pipeline.base.BCConvert;
-import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveClean;
-import com.splendor.notes.design.patterns.responsibility.pipeline.constant.*;
+import com.splendor.notes.design.patterns.responsibility.pipeline.base.CodePointFilter;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentCleanResContext;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentInfoContext;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -23,19 +22,19 @@ import java.util.concurrent.TimeUnit;
  * @author splendor.s
  * @create 2022/11/28 下午2:35
  * @description 数据清洗：去除相关emoji信息
+ * 管道中已由FusedCharacterFilter与其他过滤字符一次遍历完成，不再单独注册为清洗环节
  */
 @Component
-@SensitiveClean(cleanCode = SensitiveCons.Clean.REMOVE_EMOJI)
 public class RemoveEmoji implements ContextHandler<ContentInfoContext, ContentCleanResContext> {
 
-    private LoadingCache<String, Set<Integer>> emojiCache = CacheBuilder.newBuilder()
+    private LoadingCache<String, CodePointFilter> emojiCache = CacheBuilder.newBuilder()
             .refreshAfterWrite(10, TimeUnit.MINUTES)
             /*构建缓存*/
-            .build(new CacheLoader<String, Set<Integer>>() {
+            .build(new CacheLoader<String, CodePointFilter>() {
                 /*初始化加载数据的缓存信息*/
                 @Override
-                public Set<Integer> load(String specialSymbols) throws Exception {
-                    return getEmojis();
+                public CodePointFilter load(String specialSymbols) throws Exception {
+                    return CodePointFilter.of(Collections.singletonList(getEmojis()));
                 }
             });
 
@@ -49,26 +48,16 @@ public class RemoveEmoji implements ContextHandler<ContentInfoContext, ContentCl
     public ContentCleanResContext handle(ContentInfoContext context) {
         try {
             String EMOJI = "emoji";
-            Set<Integer> emojis = emojiCache.get(EMOJI);
-            StringBuilder cleanContent = new StringBuilder();
-            /*其他链路中清洗后的词*/
-            char[] valueChars = context.getCleanContent().toCharArray();
-            for (char valueChar : valueChars) {
-                int temp = BCConvert.charConvert(valueChar);
-                if (emojis.contains(temp)) {
-                    /*过滤特殊字符*/
-                    continue;
-                }
-                cleanContent.append(valueChar);
-            }
-
+            CodePointFilter filter = emojiCache.get(EMOJI);
+            /*其他链路中清洗后的词，按码点过滤，代理对作为一个字符判断*/
+            String cleanContent = filter.filter(context.getCleanContent());
             /*将本次清洗数据载入待继续清洗实体中*/
-            context.setCleanContent(cleanContent.toString());
+            context.setCleanContent(cleanContent);
             /*设置处理结果*/
             return ContentCleanResContext.builder()
                     .isCleanDone(true)
                     .content(context.getContent())
-                    .cleanContent(cleanContent.toString())
+                    .cleanContent(cleanContent)
                     .contentAttr(context.getContentAttr())
                     .build();
         } catch (Exception e) {
@@ -89,7 +78,7 @@ public class RemoveEmoji implements ContextHandler<ContentInfoContext, ContentCl
      *
      * @return 相关Emoji集合
      */
-    private static Set<Integer> getEmojis() {
+    static Set<Integer> getEmojis() {
         List<String> emojiRes = Lists.newArrayList();
         String emojis = "\uD83D\uDC36,\uD83D\uDC15,\uD83D\uDC59,\uD83D\uDEAD,\uD83D\uDEAC,\uD83D\uDC8A,\uD83C\uDF47,\uD83C\uDF48," +
                 "\uD83C\uDF49,\uD83C\uDF4A,\uD83C\uDF4B,\uD83C\uDF4C,\uD83C\uDF4D,\uD83C\uDF4E,\uD83C\uDF4F,\uD83C\uDF50," +
@@ -228,12 +217,10 @@ public class RemoveEmoji implements ContextHandler<ContentInfoContext, ContentCl
 
         Set<Integer> emojisSet = new HashSet<>();
         if (!CollectionUtils.isEmpty(emojiRes)) {
-            char[] chs;
             for (String curr : emojiRes) {
-                chs = curr.toCharArray();
-                for (char c : chs) {
-                    emojisSet.add(BCConvert.charConvert(c));
-                }
+                /*按码点拆分，代理对作为一个字符；键帽序列中的#、*、0-9等ASCII字符本身不是emoji，不加入*/
+                curr.codePoints().filter(codePoint -> codePoint > 0x7F)
+                        .forEach(codePoint -> emojisSet.add(CodePointFilter.normalize(codePoint)));
             }
         }
         return emojisSet;
@@ -241,17 +228,6 @@ public class RemoveEmoji implements ContextHandler<ContentInfoContext, ContentCl
 
     public static void main(String[] args) {
         String content = "你♋♌♍♎好✴️，官⏳⌚⏰彦⚗️⚰️峰✌⛳！☕";
-        char[] valueChars = content.toCharArray();
-        Set<Integer> emojis = getEmojis();
-        StringBuilder cleanContent = new StringBuilder();
-        for (char valueChar : valueChars) {
-            int temp = BCConvert.charConvert(valueChar);
-            if (emojis.contains(temp)) {
-                /*过滤特殊字符*/
-                continue;
-            }
-            cleanContent.append(valueChar);
-        }
-        System.out.println(cleanContent.toString());
+        System.out.println(CodePointFilter.of(Collections.singletonList(getEmojis())).filter(content));
     }
 }
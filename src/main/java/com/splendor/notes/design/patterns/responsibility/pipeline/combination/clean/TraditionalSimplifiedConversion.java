@@ -4,20 +4,39 @@ import com.github.houbb.opencc4j.util.ZhConverterUtil;
 import com.github.houbb.opencc4j.util.ZhTwConverterUtil;
 import com.luhuiguo.chinese.ChineseUtils;
 import com.splendor.notes.design.patterns.responsibility.pipeline.ContextHandler;
-import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveClean;
-import com.splendor.notes.design.patterns.responsibility.pipeline.constant.*;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentCleanResContext;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentInfoContext;
+import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
 /**
  * @author splendor.s
  * @create 2022/11/28 下午2:47
  * @description 数据清洗：中文繁体转换为简体
+ * 管道中已由CharacterNormalization按预先计算的归一化表一次遍历完成，不再单独注册为清洗环节
  */
+@Log4j2
 @Component
-@SensitiveClean(cleanCode = SensitiveCons.Clean.TRADITIONAL_TO_SIMPLE)
 public class TraditionalSimplifiedConversion implements ContextHandler<ContentInfoContext, ContentCleanResContext> {
+
+    /**
+     * opencc4j中繁体转简体用到的词组词典，每行为"词条\t转换结果"
+     */
+    private static final String[] PHRASE_DICTIONARIES = {
+            "data/dictionary/TSPhrases.txt",
+            "data/dictionary/HKVariantsRevPhrases.txt",
+            "data/dictionary/TWPhrasesRev.txt",
+            "data/dictionary/TWVariantsRevPhrases.txt"};
+
     /**
      * 对用户内容进行处理：中文繁体转换为简体
      *
@@ -28,13 +47,7 @@ public class TraditionalSimplifiedConversion implements ContextHandler<ContentIn
     public ContentCleanResContext handle(ContentInfoContext context) {
         try {
             /*其他链路中清洗后的词*/
-            String traditionalChinese = context.getCleanContent();
-            /*中国大陆普通词库进行第一次转换*/
-            String commonConverter = ChineseUtils.toSimplified(traditionalChinese);
-            /*中国港澳词库进行第二次转换*/
-            String macauAndHKConverter = ZhConverterUtil.toSimple(commonConverter);
-            /*中国台湾词库进行第三次转换*/
-            String finalContent = ZhTwConverterUtil.toSimple(macauAndHKConverter);
+            String finalContent = toSimple(context.getCleanContent());
 
             /*将本次清洗数据载入待继续清洗实体中*/
             context.setCleanContent(finalContent);
@@ -58,5 +71,51 @@ public class TraditionalSimplifiedConversion implements ContextHandler<ContentIn
                     .build();
         }
     }
-}
 
+    /**
+     * 繁体转简体：依次经过三个词库转换
+     *
+     * @param traditionalChinese 文本
+     * @return 转换后的文本
+     */
+    public static String toSimple(String traditionalChinese) {
+        /*中国大陆普通词库进行第一次转换*/
+        String commonConverter = ChineseUtils.toSimplified(traditionalChinese);
+        /*中国港澳词库进行第二次转换*/
+        String macauAndHKConverter = ZhConverterUtil.toSimple(commonConverter);
+        /*中国台湾词库进行第三次转换*/
+        return ZhTwConverterUtil.toSimple(macauAndHKConverter);
+    }
+
+    /**
+     * 繁简词典中的词组词条，作为归一化表的候选词组；词典不存在或读取失败时记录日志并跳过，缺少的词组只能按逐字映射转换
+     *
+     * @return 词组集合
+     */
+    public static Set<String> getPhrases() {
+        Set<String> phrases = new LinkedHashSet<>();
+        ClassLoader classLoader = TraditionalSimplifiedConversion.class.getClassLoader();
+        for (String dictionary : PHRASE_DICTIONARIES) {
+            try (InputStream inputStream = classLoader.getResourceAsStream(dictionary)) {
+                if (Objects.isNull(inputStream)) {
+                    log.warn("TraditionalSimplifiedConversion phrase dictionary not found, resource:{}", dictionary);
+                    continue;
+                }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    /*只取词条，转换结果由转换链路重新计算*/
+                    int tab = line.indexOf('\t');
+                    String phrase = (tab < 0 ? line : line.substring(0, tab)).trim();
+                    if (!phrase.isEmpty()) {
+                        phrases.add(phrase);
+                    }
+                }
+            } catch (IOException e) {
+                /*单个词典读取失败不影响其他词典*/
+                log.error("TraditionalSimplifiedConversion read phrase dictionary error, resource:{}", dictionary, e);
+            }
+        }
+        return phrases;
+    }
+}
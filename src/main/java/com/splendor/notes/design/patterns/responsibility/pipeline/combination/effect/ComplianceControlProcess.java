@@ -7,7 +7,7 @@ import com.splendor.notes.design.patterns.responsibility.pipeline.model.Sensitiv
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitveEffectiveContext;
 import com.splendor.notes.design.patterns.responsibility.pipeline.constant.*;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitveHitContext;
-import com.splendor.notes.spring.stereotype.Component;
+import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Arrays;
@@ -92,4 +92,21 @@ public class ComplianceControlProcess implements ContextHandler<SensitveHitConte
         List<String> complianceControlSensitiveWordInfo = complianceControlSensitiveWord.stream().map(SensitiveWord::getSensitive).collect(Collectors.toList());
         return hitWords.stream().filter(sensitiveWord -> complianceControlSensitiveWordInfo.contains(sensitiveWord.getSensitive())).collect(Collectors.toList());
     }
+
+    /**
+     * @return 合规管控策略版本
+     */
+    @Override
+    public long version() {
+        return getComplianceControlVersion();
+    }
+
+    /**
+     * 获取合规管控放行策略版本号，实际应从合规管控配置中心获取，此处只做模拟
+     *
+     * @return 版本号
+     */
+    private long getComplianceControlVersion() {
+        return 1L;
+    }
 }
@@ -1,5 +1,6 @@
 package com.splendor.notes.design.patterns.responsibility.pipeline.combination.effect;
 
+import com.google.common.collect.Lists;
 import com.splendor.notes.design.patterns.responsibility.pipeline.ContextHandler;
 import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveEffect;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentAttr;
@@ -8,7 +9,6 @@ import com.splendor.notes.design.patterns.responsibility.pipeline.model.Sensitve
 import com.splendor.notes.design.patterns.responsibility.pipeline.constant.*;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitveHitContext;
 import org.apache.commons.collections.CollectionUtils;
-import org.assertj.core.util.Lists;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -99,4 +99,21 @@ public class EffectiveRuleProcess implements ContextHandler<SensitveHitContext,
         }
         return true;
     }
+
+    /**
+     * @return 生效规则版本
+     */
+    @Override
+    public long version() {
+        return getEffectiveRuleVersion();
+    }
+
+    /**
+     * 获取敏感词生效规则版本号，实际应从敏感词生效配置获取，此处只做模拟
+     *
+     * @return 版本号
+     */
+    private long getEffectiveRuleVersion() {
+        return 1L;
+    }
 }
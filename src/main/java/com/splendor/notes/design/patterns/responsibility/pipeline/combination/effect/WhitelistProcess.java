@@ -81,6 +81,23 @@ public class WhitelistProcess implements ContextHandler<SensitveHitContext, Sens
                 .whitedWords(ignoreSensitiveWord).build();
     }
 
+    /**
+     * @return 白名单版本
+     */
+    @Override
+    public long version() {
+        return getWhitelistVersion();
+    }
+
+    /**
+     * 获取白名单版本号，实际应从白名单配置中心获取，此处只做模拟
+     *
+     * @return 版本号
+     */
+    private long getWhitelistVersion() {
+        return 1L;
+    }
+
     private List<SensitiveWord> getIgnoreSensitiveByWhite(List<SensitiveWord> hitWords) {
         if (CollectionUtils.isEmpty(hitWords)) {
             return Lists.newArrayList();
@@ -0,0 +1,311 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline.combination.validate;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.splendor.notes.design.patterns.responsibility.pipeline.base.AhoCorasickDoubleArrayTrie;
+import com.splendor.notes.design.patterns.responsibility.pipeline.base.Base64;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.RegularTypeEnum;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitiveWord;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.WordRegular;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/30 上午10:15
+ * @description 正则规则引擎：全部规则的子模式去重编号，其中的纯文本子模式合并为一个AC自动机，对文本扫描一次得到命中的子模式位图；
+ * 含正则语法的子模式只在所属规则需要时执行一次Matcher.find，结果同样记入位图；简单、与、与非规则按位图求值
+ * <p>
+ * 构建完成后只读，可以被多个线程并发使用；规则变化时重新构建并整体替换
+ */
+@Log4j2
+public class RegularRuleEngine {
+
+    /**
+     * 正则元字符，子模式中出现未转义的元字符则按正则执行
+     */
+    private static final String META_CHARS = "\\^$.|?*+()[]{}";
+
+    /**
+     * 子模式编号 -> 子模式
+     */
+    private final List<SubPattern> subPatterns;
+
+    /**
+     * 纯文本子模式的AC自动机，值为子模式编号，关键字按ASCII转小写以对应CASE_INSENSITIVE
+     */
+    private final AhoCorasickDoubleArrayTrie<Integer> literalTrie;
+
+    private final List<Rule> rules;
+
+    /**
+     * 规则指纹，由全部规则的编号、类型、子模式计算，规则内容变化则指纹变化
+     */
+    private final long version;
+
+    private RegularRuleEngine(List<SubPattern> subPatterns, List<Rule> rules, long version) {
+        this.subPatterns = subPatterns;
+        this.rules = rules;
+        this.version = version;
+        List<String> keys = Lists.newArrayList();
+        List<Integer> ids = Lists.newArrayList();
+        for (int id = 0; id < subPatterns.size(); id++) {
+            SubPattern subPattern = subPatterns.get(id);
+            if (Objects.isNull(subPattern.pattern)) {
+                keys.add(subPattern.literal);
+                ids.add(id);
+            }
+        }
+        this.literalTrie = keys.isEmpty() ? null : AhoCorasickDoubleArrayTrie.build(keys, ids);
+    }
+
+    /**
+     * 编译规则，子模式为Base64编码的正则；格式错误或正则语法错误的规则跳过，不影响其他规则
+     *
+     * @param wordRegulars 正则规则
+     * @return 规则引擎
+     */
+    public static RegularRuleEngine compile(List<WordRegular> wordRegulars) {
+        List<SubPattern> subPatterns = Lists.newArrayList();
+        Map<String, Integer> subPatternIds = Maps.newHashMap();
+        List<Rule> rules = Lists.newArrayList();
+        Hasher version = Hashing.murmur3_128().newHasher();
+        for (WordRegular wordRegular : wordRegulars) {
+            version.putLong(wordRegular.getId()).putInt(wordRegular.getType()).putUnencodedChars(StringUtils.defaultString(wordRegular.getWords()));
+            RegularTypeEnum type = RegularTypeEnum.getByCode(wordRegular.getType());
+            if (Objects.isNull(type) || StringUtils.isEmpty(wordRegular.getWords())) {
+                continue;
+            }
+            String[] words = wordRegular.getWords().split(",");
+            if (words.length != (type == RegularTypeEnum.SIAMPLE_REGULAR ? 1 : 2)) {
+                continue;
+            }
+            try {
+                int first = subPatternId(Base64.decodeToString(words[0]), subPatterns, subPatternIds);
+                int second = words.length == 2 ? subPatternId(Base64.decodeToString(words[1]), subPatterns, subPatternIds) : -1;
+                rules.add(new Rule(wordRegular.getId(), type, first, second));
+            } catch (PatternSyntaxException e) {
+                log.error("RegularRuleEngine compile error, id:{}", wordRegular.getId(), e);
+            }
+        }
+        return new RegularRuleEngine(subPatterns, rules, version.hash().asLong());
+    }
+
+    /**
+     * 匹配文本，规则按配置顺序输出命中的词：简单、与非规则输出第一个子模式的首个命中，与规则输出两个子模式的首个命中
+     *
+     * @param content 已去除空白、数字、标点的文本
+     * @return 命中结果
+     */
+    public List<SensitiveWord> match(String content) {
+        List<SensitiveWord> result = Lists.newArrayList();
+        if (StringUtils.isEmpty(content) || rules.isEmpty()) {
+            return result;
+        }
+        MatchState state = new MatchState(content);
+        if (Objects.nonNull(literalTrie)) {
+            literalTrie.parseText(new AsciiLowerCase(content), (begin, end, id) -> state.literalHit(id, begin, end));
+        }
+        for (Rule rule : rules) {
+            switch (rule.type) {
+                case SIAMPLE_REGULAR:
+                    if (state.found(rule.first)) {
+                        result.add(hitWord(rule, state.groups[rule.first]));
+                    }
+                    break;
+                case AND_REGULAR:
+                    if (state.found(rule.first) && state.found(rule.second)) {
+                        result.add(hitWord(rule, state.groups[rule.first]));
+                        result.add(hitWord(rule, state.groups[rule.second]));
+                    }
+                    break;
+                case N_AND_REGULAR:
+                    if (state.found(rule.first) && !state.found(rule.second)) {
+                        result.add(hitWord(rule, state.groups[rule.first]));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 规则数量
+     */
+    public int size() {
+        return rules.size();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    private static SensitiveWord hitWord(Rule rule, String group) {
+        return SensitiveWord.builder().sensitive(group).sensitiveId(rule.id).kind(5).build();
+    }
+
+    private static int subPatternId(String regex, List<SubPattern> subPatterns, Map<String, Integer> subPatternIds) {
+        Integer id = subPatternIds.get(regex);
+        if (Objects.nonNull(id)) {
+            return id;
+        }
+        String literal = toLiteral(regex);
+        /*空串在任意位置命中，交给正则处理*/
+        SubPattern subPattern = StringUtils.isEmpty(literal)
+                ? new SubPattern(null, Pattern.compile(regex, Pattern.CASE_INSENSITIVE))
+                : new SubPattern(literal, null);
+        subPatterns.add(subPattern);
+        subPatternIds.put(regex, subPatterns.size() - 1);
+        return subPatterns.size() - 1;
+    }
+
+    /**
+     * 不含正则语法的子模式转为纯文本：元字符须以反斜杠转义，字母数字前的反斜杠表示字符类等语法，按正则处理
+     *
+     * @param regex 子模式
+     * @return ASCII转小写后的纯文本，含正则语法时返回null
+     */
+    private static String toLiteral(String regex) {
+        StringBuilder literal = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    return null;
+                }
+                c = regex.charAt(++i);
+            } else if (META_CHARS.indexOf(c) >= 0) {
+                return null;
+            }
+            literal.append(AsciiLowerCase.toLowerCase(c));
+        }
+        return literal.toString();
+    }
+
+    /**
+     * 单次匹配的子模式位图
+     */
+    private class MatchState {
+        private final String content;
+        /**
+         * 已确定命中的子模式
+         */
+        private final BitSet matched = new BitSet(subPatterns.size());
+        /**
+         * 已执行过Matcher.find的正则子模式
+         */
+        private final BitSet evaluated = new BitSet(subPatterns.size());
+        /**
+         * 子模式首个命中的原文
+         */
+        private final String[] groups = new String[subPatterns.size()];
+
+        private MatchState(String content) {
+            this.content = content;
+        }
+
+        /**
+         * AC自动机按命中结束位置回调，同一子模式长度固定，首次回调即为最左命中
+         */
+        private void literalHit(int id, int begin, int end) {
+            if (!matched.get(id)) {
+                matched.set(id);
+                groups[id] = content.substring(begin, end);
+            }
+        }
+
+        private boolean found(int id) {
+            Pattern pattern = subPatterns.get(id).pattern;
+            if (Objects.nonNull(pattern) && !evaluated.get(id)) {
+                evaluated.set(id);
+                Matcher matcher = pattern.matcher(content);
+                if (matcher.find()) {
+                    matched.set(id);
+                    groups[id] = matcher.group();
+                }
+            }
+            return matched.get(id);
+        }
+    }
+
+    private static class SubPattern {
+        /**
+         * 纯文本子模式，pattern为空时有效
+         */
+        private final String literal;
+        private final Pattern pattern;
+
+        private SubPattern(String literal, Pattern pattern) {
+            this.literal = literal;
+            this.pattern = pattern;
+        }
+    }
+
+    private static class Rule {
+        private final long id;
+        private final RegularTypeEnum type;
+        private final int first;
+        /**
+         * 简单规则没有第二个子模式，为-1
+         */
+        private final int second;
+
+        private Rule(long id, RegularTypeEnum type, int first, int second) {
+            this.id = id;
+            this.type = type;
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    /**
+     * 按ASCII转小写的文本视图，与CASE_INSENSITIVE（未开启UNICODE_CASE）的大小写规则一致，长度与下标不变
+     */
+    private static class AsciiLowerCase implements CharSequence {
+        private final String text;
+
+        private AsciiLowerCase(String text) {
+            this.text = text;
+        }
+
+        private static char toLowerCase(char c) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return toLowerCase(text.charAt(index));
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiLowerCase(text.substring(start, end));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                builder.append(charAt(i));
+            }
+            return builder.toString();
+        }
+    }
+}
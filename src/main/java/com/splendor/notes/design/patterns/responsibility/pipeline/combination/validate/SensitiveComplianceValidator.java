@@ -69,4 +69,21 @@ public class SensitiveComplianceValidator implements ContextHandler<ContentClean
         }
         return sensitiveWords;
     }
+
+    /**
+     * @return 企业合规词库版本
+     */
+    @Override
+    public long version() {
+        return getComplianceThesaurusVersion();
+    }
+
+    /**
+     * 获取企业合规管控词库版本号，实际应从企业词库配置获取，此处只做模拟
+     *
+     * @return 版本号
+     */
+    private long getComplianceThesaurusVersion() {
+        return 1L;
+    }
 }
@@ -46,4 +46,21 @@ public class SensitivePrivacyValidator implements ContextHandler<ContentCleanRes
         }
         return sensitiveWords;
     }
+
+    /**
+     * @return 隐私信息规则版本
+     */
+    @Override
+    public long version() {
+        return getPrivacyRuleVersion();
+    }
+
+    /**
+     * 获取手机号、身份证号等隐私信息识别规则版本号，实际应从隐私规则配置获取，此处只做模拟
+     *
+     * @return 版本号
+     */
+    private long getPrivacyRuleVersion() {
+        return 1L;
+    }
 }
@@ -4,9 +4,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.splendor.notes.design.patterns.responsibility.pipeline.ContextHandler;
-import com.splendor.notes.design.patterns.responsibility.pipeline.base.Base64;
 import com.splendor.notes.design.patterns.responsibility.pipeline.enums.SensitiveValidate;
 import com.splendor.notes.design.patterns.responsibility.pipeline.model.*;
 import com.splendor.notes.design.patterns.responsibility.pipeline.constant.*;
@@ -15,11 +13,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -32,13 +27,18 @@ import java.util.regex.Pattern;
 @SensitiveValidate(validateCode = SensitiveCons.Validate.REGULAR)
 public class SensitiveRegularValidator implements ContextHandler<ContentCleanResContext, SensitveHitContext> {
 
-    private LoadingCache<String, Map<WordRegular, Pattern[]>> wordRegularCache = CacheBuilder.newBuilder()
+    /**
+     * 匹配正则前去除的空白、数字、标点等字符
+     */
+    private static final Pattern CHAR_PATTERN = Pattern.compile("[\\s\\d\\pP+~$`^=|<>～｀＄＾＋＝｜＜＞￥× ]");
+
+    private LoadingCache<String, RegularRuleEngine> wordRegularCache = CacheBuilder.newBuilder()
             .refreshAfterWrite(10, TimeUnit.MINUTES)
             /*构建缓存*/
-            .build(new CacheLoader<String, Map<WordRegular, Pattern[]>>() {
+            .build(new CacheLoader<String, RegularRuleEngine>() {
                 /*初始化加载数据的缓存信息*/
                 @Override
-                public Map<WordRegular, Pattern[]> load(String wordRegularInfo) throws Exception {
+                public RegularRuleEngine load(String wordRegularInfo) throws Exception {
                     return getwordRegularCache();
                 }
             });
@@ -55,91 +55,58 @@ public class SensitiveRegularValidator implements ContextHandler<ContentCleanRes
                 .content(context.getContent())
                 .cleanContent(context.getCleanContent())
                 .contentAttr(context.getContentAttr())
-                .hitWords(getSensitiveRegularValidator(context.getCleanContent())).build();
+                .hitWords(getSensitiveRegularValidator(context.getCleanContent(), getRegularRuleEngine())).build();
     }
 
-
-    private Map<WordRegular, Pattern[]> getwordRegularCache() {
-        /*从指定词正则库中拉取配置，在此处放本地缓存或redis，这里只进行模拟*/
-        List<WordRegular> words = Lists.newArrayList();
-        words.add(WordRegular.builder().id(11L).type(RegularTypeEnum.AND_REGULAR.getCode()).words(constructWords()).build());
-
-        Map<WordRegular, Pattern[]> wordRegularPattern = Maps.newHashMap();
-        String[] wordstr;
-        Pattern p1;
-        Pattern p2;
-        for (WordRegular wordRegular : words) {
-            switch (RegularTypeEnum.getByCode(wordRegular.getType())) {
-                case SIAMPLE_REGULAR:
-                    Pattern p = Pattern.compile(Base64.decodeToString(wordRegular.getWords()), Pattern.CASE_INSENSITIVE);
-                    wordRegularPattern.put(wordRegular, new Pattern[]{p});
-                    break;
-                case AND_REGULAR:
-                case N_AND_REGULAR:
-                    wordstr = wordRegular.getWords().split(",");
-                    if (2 != wordstr.length) {
-                        continue;
-                    }
-                    p1 = Pattern.compile(Base64.decodeToString(wordstr[0]), Pattern.CASE_INSENSITIVE);
-                    p2 = Pattern.compile(Base64.decodeToString(wordstr[1]), Pattern.CASE_INSENSITIVE);
-                    wordRegularPattern.put(wordRegular, new Pattern[]{p1, p2});
-                    break;
-                default:
-                    break;
-            }
+    /**
+     * 批量校验：整批文本共用一次取出的规则引擎
+     *
+     * @param contexts 处理时的上下文数据
+     * @return 与contexts一一对应的处理结果
+     */
+    @Override
+    public List<SensitveHitContext> handleBatch(List<ContentCleanResContext> contexts) {
+        RegularRuleEngine regularRuleEngine = getRegularRuleEngine();
+        List<SensitveHitContext> results = Lists.newArrayListWithCapacity(contexts.size());
+        for (ContentCleanResContext context : contexts) {
+            results.add(SensitveHitContext.builder()
+                    .content(context.getContent())
+                    .cleanContent(context.getCleanContent())
+                    .contentAttr(context.getContentAttr())
+                    .hitWords(getSensitiveRegularValidator(context.getCleanContent(), regularRuleEngine)).build());
         }
-        return wordRegularPattern;
+        return results;
     }
 
-    private List<SensitiveWord> getSensitiveRegularValidator(String content) {
-        List<SensitiveWord> result = Lists.newArrayList();
-        if (StringUtils.isEmpty(content)) {
-            return result;
-        }
-        final String CHAR_PATTERN = "[\\s\\d\\pP+~$`^=|<>～｀＄＾＋＝｜＜＞￥× ]";
-        content = content.replaceAll(CHAR_PATTERN, "");
-        boolean illegal = false;
-        Matcher matcher1 = null;
-        Matcher matcher2 = null;
+    /**
+     * @return 当前规则引擎的规则指纹
+     */
+    @Override
+    public long version() {
+        return getRegularRuleEngine().getVersion();
+    }
 
-        Map<WordRegular, Pattern[]> getwordRegularCache = null;
+    private RegularRuleEngine getRegularRuleEngine() {
         try {
-            getwordRegularCache = wordRegularCache.get("wordRegularInfo");
+            return wordRegularCache.get("wordRegularInfo");
         } catch (ExecutionException e) {
-            getwordRegularCache = Maps.newHashMap();
+            return RegularRuleEngine.compile(Lists.newArrayList());
         }
-        for (Map.Entry<WordRegular, Pattern[]> e : getwordRegularCache.entrySet()) {
-            switch (Objects.requireNonNull(RegularTypeEnum.getByCode(e.getKey().getType()))) {
-                case SIAMPLE_REGULAR:
-                    Matcher matcher = e.getValue()[0].matcher(content);
-                    illegal = matcher.find();
-                    /*已经命中正则的前提下，需要同时满足业务身份的要求*/
-                    if (illegal) {
-                        result.add(SensitiveWord.builder().sensitive(matcher.group()).sensitiveId(e.getKey().getId()).kind(5).build());
-                    }
-                    break;
-                case AND_REGULAR:
-                    matcher1 = e.getValue()[0].matcher(content);
-                    matcher2 = e.getValue()[1].matcher(content);
-                    illegal = matcher1.find() && matcher2.find();
-                    if (illegal) {
-                        result.add(SensitiveWord.builder().sensitive(matcher1.group()).sensitiveId(e.getKey().getId()).kind(5).build());
-                        result.add(SensitiveWord.builder().sensitive(matcher2.group()).sensitiveId(e.getKey().getId()).kind(5).build());
-                    }
-                    break;
-                case N_AND_REGULAR:
-                    matcher1 = e.getValue()[0].matcher(content);
-                    matcher2 = e.getValue()[1].matcher(content);
-                    illegal = matcher1.find() && !matcher2.find();
-                    if (illegal) {
-                        result.add(SensitiveWord.builder().sensitive(matcher1.group()).sensitiveId(e.getKey().getId()).kind(5).build());
-                    }
-                    break;
-                default:
-                    break;
-            }
+    }
+
+
+    private RegularRuleEngine getwordRegularCache() {
+        /*从指定词正则库中拉取配置，在此处放本地缓存或redis，这里只进行模拟*/
+        List<WordRegular> words = Lists.newArrayList();
+        words.add(WordRegular.builder().id(11L).type(RegularTypeEnum.AND_REGULAR.getCode()).words(constructWords()).build());
+        return RegularRuleEngine.compile(words);
+    }
+
+    private List<SensitiveWord> getSensitiveRegularValidator(String content, RegularRuleEngine regularRuleEngine) {
+        if (StringUtils.isEmpty(content)) {
+            return Lists.newArrayList();
         }
-        return result;
+        return regularRuleEngine.match(CHAR_PATTERN.matcher(content).replaceAll(""));
     }
 
     private String constructWords() {
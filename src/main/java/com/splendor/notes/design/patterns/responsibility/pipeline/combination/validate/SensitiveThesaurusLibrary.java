@@ -0,0 +1,212 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline.combination.validate;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.splendor.notes.design.patterns.responsibility.pipeline.base.AhoCorasickDoubleArrayTrie;
+import com.splendor.notes.design.patterns.responsibility.pipeline.combination.clean.CharacterNormalization;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitiveWord;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/8 上午11:05
+ * @description 敏感词库自动机管理：每个词库版本只编译一次AC自动机，版本变化时后台重建并原子替换
+ * 词条与用户文本经过同一张归一化表（全角半角、大小写、繁简），全角、大写或繁体的词条也能命中清洗后的文本
+ */
+@Log4j2
+public class SensitiveThesaurusLibrary {
+    /**
+     * 企业词库
+     */
+    public static final int COMPANY = 1;
+    /**
+     * 部门词库
+     */
+    public static final int DEPARTMENT = 2;
+    /**
+     * 其他词库
+     */
+    public static final int OTHER = 3;
+
+    /**
+     * 后台重建线程：重建期间读请求继续使用旧版本自动机
+     */
+    private static final ExecutorService REBUILD_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "thesaurus-automaton-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final LoadingCache<Integer, ThesaurusAutomaton> AUTOMATON_CACHE = CacheBuilder.newBuilder()
+            .refreshAfterWrite(1, TimeUnit.MINUTES)
+            /*构建缓存*/
+            .build(CacheLoader.asyncReloading(new CacheLoader<Integer, ThesaurusAutomaton>() {
+                /*初始化加载：同步编译当前版本词库*/
+                @Override
+                public ThesaurusAutomaton load(Integer libraryCode) {
+                    return compile(libraryCode, getThesaurusVersion(libraryCode));
+                }
+
+                /*定时刷新：版本未变化直接复用旧自动机，变化则重新编译*/
+                @Override
+                public ListenableFuture<ThesaurusAutomaton> reload(Integer libraryCode, ThesaurusAutomaton oldValue) {
+                    long version = getThesaurusVersion(libraryCode);
+                    if (version == oldValue.version) {
+                        return Futures.immediateFuture(oldValue);
+                    }
+                    return Futures.immediateFuture(compile(libraryCode, version));
+                }
+            }, REBUILD_EXECUTOR));
+
+    private SensitiveThesaurusLibrary() {
+    }
+
+    /**
+     * 对文本进行一次扫描，返回指定词库中所有命中的敏感词（同一词条只返回一次）
+     *
+     * @param libraryCode 词库编号
+     * @param content     用户内容
+     * @return 命中结果
+     */
+    public static List<SensitiveWord> match(int libraryCode, String content) {
+        if (Objects.isNull(content) || content.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ThesaurusAutomaton automaton = getAutomaton(libraryCode);
+        if (Objects.isNull(automaton)) {
+            return Collections.emptyList();
+        }
+        return automaton.match(content);
+    }
+
+    /**
+     * 批量扫描：整批文本使用同一版本的自动机，只查询一次缓存
+     *
+     * @param libraryCode 词库编号
+     * @param contents    用户内容
+     * @return 与contents一一对应的命中结果
+     */
+    public static List<List<SensitiveWord>> matchAll(int libraryCode, List<String> contents) {
+        List<List<SensitiveWord>> results = Lists.newArrayListWithCapacity(contents.size());
+        ThesaurusAutomaton automaton = getAutomaton(libraryCode);
+        for (String content : contents) {
+            if (Objects.isNull(automaton) || Objects.isNull(content) || content.isEmpty()) {
+                results.add(Collections.emptyList());
+            } else {
+                results.add(automaton.match(content));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 当前使用中的自动机对应的词库版本，加载失败时返回-1
+     *
+     * @param libraryCode 词库编号
+     * @return 版本号
+     */
+    public static long getVersion(int libraryCode) {
+        ThesaurusAutomaton automaton = getAutomaton(libraryCode);
+        return Objects.isNull(automaton) ? -1L : automaton.version;
+    }
+
+    private static ThesaurusAutomaton getAutomaton(int libraryCode) {
+        try {
+            return AUTOMATON_CACHE.get(libraryCode);
+        } catch (ExecutionException e) {
+            log.error("SensitiveThesaurusLibrary load automaton error, libraryCode:{}", libraryCode, e);
+            return null;
+        }
+    }
+
+    /**
+     * 词库变化后主动触发后台重建，重建完成前仍使用旧版本
+     *
+     * @param libraryCode 词库编号
+     */
+    public static void refresh(int libraryCode) {
+        AUTOMATON_CACHE.refresh(libraryCode);
+    }
+
+    private static ThesaurusAutomaton compile(int libraryCode, long version) {
+        long start = System.currentTimeMillis();
+        List<SensitiveWord> words = loadThesaurus(libraryCode);
+        /*自动机的键使用归一化后的词条，命中结果仍返回词库中的原始词条*/
+        AhoCorasickDoubleArrayTrie<SensitiveWord> trie = AhoCorasickDoubleArrayTrie.build(
+                words.stream().map(word -> CharacterNormalization.normalize(word.getSensitive())).collect(Collectors.toList()), words);
+        log.info("SensitiveThesaurusLibrary compile automaton, libraryCode:{}, version:{}, size:{}, cost:{}ms",
+                libraryCode, version, trie.size(), System.currentTimeMillis() - start);
+        return new ThesaurusAutomaton(version, trie);
+    }
+
+    /**
+     * 获取词库版本号，实际应从词库配置中心获取，此处只做模拟
+     *
+     * @param libraryCode 词库编号
+     * @return 版本号
+     */
+    private static long getThesaurusVersion(int libraryCode) {
+        return 1L;
+    }
+
+    /**
+     * 拉取词库全量词条，实际应从词库存储中拉取，此处只做模拟
+     *
+     * @param libraryCode 词库编号
+     * @return 词条
+     */
+    private static List<SensitiveWord> loadThesaurus(int libraryCode) {
+        List<SensitiveWord> sensitiveWords = Lists.newArrayList();
+        switch (libraryCode) {
+            case COMPANY:
+                sensitiveWords.add(SensitiveWord.builder().sensitive("splendor").sensitiveId(1L).kind(COMPANY).build());
+                sensitiveWords.add(SensitiveWord.builder().sensitive("splendor").sensitiveId(86L).kind(COMPANY).build());
+                break;
+            case DEPARTMENT:
+                sensitiveWords.add(SensitiveWord.builder().sensitive("妓院").sensitiveId(23L).kind(DEPARTMENT).build());
+                sensitiveWords.add(SensitiveWord.builder().sensitive("赌博").sensitiveId(36L).kind(DEPARTMENT).build());
+                break;
+            case OTHER:
+                sensitiveWords.add(SensitiveWord.builder().sensitive("禁药").sensitiveId(28L).kind(OTHER).build());
+                sensitiveWords.add(SensitiveWord.builder().sensitive("毒品").sensitiveId(376L).kind(OTHER).build());
+                break;
+            default:
+                break;
+        }
+        return sensitiveWords;
+    }
+
+    /**
+     * 某一版本词库编译后的自动机
+     */
+    private static class ThesaurusAutomaton {
+        private final long version;
+        private final AhoCorasickDoubleArrayTrie<SensitiveWord> trie;
+
+        private ThesaurusAutomaton(long version, AhoCorasickDoubleArrayTrie<SensitiveWord> trie) {
+            this.version = version;
+            this.trie = trie;
+        }
+
+        private List<SensitiveWord> match(String content) {
+            Set<SensitiveWord> hitWords = new LinkedHashSet<>();
+            trie.parseText(content, (begin, end, sensitiveWord) -> hitWords.add(sensitiveWord));
+            return Lists.newArrayList(hitWords);
+        }
+    }
+}
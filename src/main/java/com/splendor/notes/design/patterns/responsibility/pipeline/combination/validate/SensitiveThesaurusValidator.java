@@ -11,7 +11,11 @@ import org.apache.commons.collections.CollectionUtils;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.stream.Collectors;
 
 /**
  * @author splendor.s
@@ -31,28 +35,10 @@ public class SensitiveThesaurusValidator implements ContextHandler<ContentCleanR
      */
     @Override
     public SensitveHitContext handle(ContentCleanResContext context) {
-        Integer bizType = context.getContentAttr().getBizType();
-        /*根据业务方接入来源获取对应的业务方词库校验要求*/
-        List<Integer> validatorModes = getBizSensitiveModes(bizType);
-        if (CollectionUtils.isEmpty(validatorModes)) {
-            /*没有配置则直接默认走企业词库校验*/
-            validatorModes.add(1);
-        }
-
         List<SensitiveWord> hitWords = Lists.newArrayList();
-        for (Integer validatorMode : validatorModes) {
-            if (validatorMode.equals(1)) {
-                /*企业词库校验*/
-                hitWords.addAll(companySensitive(context.getContent()));
-            }
-            if (validatorMode.equals(2)) {
-                /*企业词库校验*/
-                hitWords.addAll(departmentSensitive(context.getContent()));
-            }
-            if (validatorMode.equals(3)) {
-                /*企业词库校验*/
-                hitWords.addAll(otherSensitive(context.getContent()));
-            }
+        for (Integer validatorMode : getValidatorModes(context)) {
+            /*每个词库对清洗后文本只扫描一次*/
+            hitWords.addAll(SensitiveThesaurusLibrary.match(validatorMode, context.getCleanContent()));
         }
 
         return SensitveHitContext.builder()
@@ -62,85 +48,85 @@ public class SensitiveThesaurusValidator implements ContextHandler<ContentCleanR
                 .hitWords(hitWords).build();
     }
 
-
     /**
-     * 模拟假设配置的都是所有词库都跑一遍
+     * 批量校验：按词库分组，同一词库的自动机整批只获取一次；每条文本的命中词仍按其自身的词库顺序拼接，与handle的结果顺序一致
      *
-     * @return 业务方词库配置
+     * @param contexts 处理时的上下文数据
+     * @return 与contexts一一对应的处理结果
      */
-    private List<Integer> getBizSensitiveModes(Integer bizType) {
-        /**
-         * 1-企业词库校验；2-部门词库校验；3-其他词库校验
-         */
-        return Arrays.asList(1, 2, 3);
-    }
-
-    /**
-     * 企业敏感词库（编号1）匹配,实际为词库校验，此处只做模拟
-     *
-     * @param content 用户内容
-     * @return 匹配结果
-     */
-    private List<SensitiveWord> companySensitive(String content) {
-        List<SensitiveWord> sensitiveWords = Lists.newArrayList();
-        if (content.contains("splendor")) {
-            sensitiveWords.add(SensitiveWord.builder()
-                    .sensitive("splendor")
-                    .sensitiveId(1L)
-                    .kind(1).build());
+    @Override
+    public List<SensitveHitContext> handleBatch(List<ContentCleanResContext> contexts) {
+        /*词库编号 -> 需要校验该词库的{文本下标, 该词库在文本词库列表中的位置}*/
+        Map<Integer, List<int[]>> modeSlots = new LinkedHashMap<>();
+        /*文本下标 -> 按文本自身词库顺序排列的各词库命中词*/
+        List<List<List<SensitiveWord>>> slotHitWords = Lists.newArrayListWithCapacity(contexts.size());
+        for (int i = 0; i < contexts.size(); i++) {
+            List<Integer> validatorModes = getValidatorModes(contexts.get(i));
+            List<List<SensitiveWord>> slots = Lists.newArrayListWithCapacity(validatorModes.size());
+            for (int slot = 0; slot < validatorModes.size(); slot++) {
+                slots.add(Collections.emptyList());
+                modeSlots.computeIfAbsent(validatorModes.get(slot), mode -> Lists.newArrayList()).add(new int[]{i, slot});
+            }
+            slotHitWords.add(slots);
+        }
+        for (Map.Entry<Integer, List<int[]>> entry : modeSlots.entrySet()) {
+            List<int[]> slots = entry.getValue();
+            List<String> contents = slots.stream().map(slot -> contexts.get(slot[0]).getCleanContent()).collect(Collectors.toList());
+            List<List<SensitiveWord>> matched = SensitiveThesaurusLibrary.matchAll(entry.getKey(), contents);
+            for (int k = 0; k < slots.size(); k++) {
+                slotHitWords.get(slots.get(k)[0]).set(slots.get(k)[1], matched.get(k));
+            }
         }
-        if (content.contains("splendor")) {
-            sensitiveWords.add(SensitiveWord.builder()
-                    .sensitive("splendor")
-                    .sensitiveId(86L)
-                    .kind(1).build());
+
+        List<SensitveHitContext> results = Lists.newArrayListWithCapacity(contexts.size());
+        for (int i = 0; i < contexts.size(); i++) {
+            ContentCleanResContext context = contexts.get(i);
+            List<SensitiveWord> hitWords = Lists.newArrayList();
+            for (List<SensitiveWord> words : slotHitWords.get(i)) {
+                hitWords.addAll(words);
+            }
+            results.add(SensitveHitContext.builder()
+                    .content(context.getContent())
+                    .cleanContent(context.getCleanContent())
+                    .contentAttr(context.getContentAttr())
+                    .hitWords(hitWords).build());
         }
-        return sensitiveWords;
+        return results;
     }
 
     /**
-     * 部门敏感词库（编号2）匹配,实际为不同部门的词库校验，此处只做模拟
-     *
-     * @param content 用户内容
-     * @return 匹配结果
+     * @return 各词库当前自动机版本的组合
      */
-    private List<SensitiveWord> departmentSensitive(String content) {
-        List<SensitiveWord> sensitiveWords = Lists.newArrayList();
-        if (content.contains("妓院")) {
-            sensitiveWords.add(SensitiveWord.builder()
-                    .sensitive("妓院")
-                    .sensitiveId(23L)
-                    .kind(2).build());
+    @Override
+    public long version() {
+        long version = 0L;
+        for (int libraryCode : new int[]{SensitiveThesaurusLibrary.COMPANY, SensitiveThesaurusLibrary.DEPARTMENT, SensitiveThesaurusLibrary.OTHER}) {
+            version = version * 31 + SensitiveThesaurusLibrary.getVersion(libraryCode);
         }
-        if (content.contains("赌博")) {
-            sensitiveWords.add(SensitiveWord.builder()
-                    .sensitive("赌博")
-                    .sensitiveId(36L)
-                    .kind(2).build());
+        return version;
+    }
+
+    private List<Integer> getValidatorModes(ContentCleanResContext context) {
+        Integer bizType = context.getContentAttr().getBizType();
+        /*根据业务方接入来源获取对应的业务方词库校验要求*/
+        List<Integer> validatorModes = getBizSensitiveModes(bizType);
+        if (CollectionUtils.isEmpty(validatorModes)) {
+            /*没有配置则直接默认走企业词库校验*/
+            validatorModes = Lists.newArrayList(SensitiveThesaurusLibrary.COMPANY);
         }
-        return sensitiveWords;
+        return validatorModes;
     }
 
+
     /**
-     * 其他敏感词库（编号3）匹配,实际为不同第三方词库校验，此处只做模拟
+     * 模拟假设配置的都是所有词库都跑一遍
      *
-     * @param content 用户内容
-     * @return 匹配结果
+     * @return 业务方词库配置
      */
-    private List<SensitiveWord> otherSensitive(String content) {
-        List<SensitiveWord> sensitiveWords = Lists.newArrayList();
-        if (content.contains("禁药")) {
-            sensitiveWords.add(SensitiveWord.builder()
-                    .sensitive("禁药")
-                    .sensitiveId(28L)
-                    .kind(3).build());
-        }
-        if (content.contains("毒品")) {
-            sensitiveWords.add(SensitiveWord.builder()
-                    .sensitive("毒品")
-                    .sensitiveId(376L)
-                    .kind(3).build());
-        }
-        return sensitiveWords;
+    private List<Integer> getBizSensitiveModes(Integer bizType) {
+        /**
+         * 1-企业词库校验；2-部门词库校验；3-其他词库校验
+         */
+        return Arrays.asList(SensitiveThesaurusLibrary.COMPANY, SensitiveThesaurusLibrary.DEPARTMENT, SensitiveThesaurusLibrary.OTHER);
     }
 }
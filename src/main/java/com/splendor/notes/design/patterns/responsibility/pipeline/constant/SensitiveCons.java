@@ -31,6 +31,14 @@ public class SensitiveCons {
          * 排除隐藏字符
          */
         public static final int EXCULDE_HIDDEN = 1005;
+        /**
+         * 一次遍历去除特殊符号、emoji和隐藏字符
+         */
+        public static final int FUSED_CHARACTER_FILTER = 1006;
+        /**
+         * 一次遍历完成全角转半角、大写转小写、繁体转简体
+         */
+        public static final int NORMALIZATION = 1007;
     }
 
     /**
@@ -16,4 +16,9 @@ public @interface SensitiveClean {
      * 清洗编码
      */
     int cleanCode();
+
+    /**
+     * 同一阶段内的执行顺序，值小的先执行，相同时按编码从小到大
+     */
+    int order() default 0;
 }
@@ -15,4 +15,9 @@ public @interface SensitiveEffect {
      * 生效编码
      */
     int effectCode();
+
+    /**
+     * 同一阶段内的执行顺序，值小的先执行，相同时按编码从小到大
+     */
+    int order() default 0;
 }
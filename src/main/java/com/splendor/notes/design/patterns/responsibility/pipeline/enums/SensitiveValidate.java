@@ -17,4 +17,9 @@ public @interface SensitiveValidate {
      */
     int validateCode();
 
+    /**
+     * 同一阶段内的执行顺序，值小的先执行，相同时按编码从小到大
+     */
+    int order() default 0;
+
 }
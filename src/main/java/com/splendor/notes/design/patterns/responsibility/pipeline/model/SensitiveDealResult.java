@@ -0,0 +1,60 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/29 上午10:40
+ * @description 单条文本的敏感词处理结果：批量接口返回，结果缓存中存储
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensitiveDealResult {
+    /**
+     * 用户输入文本原稿
+     */
+    private String content;
+    /**
+     * 用户清洗后的文本内容
+     */
+    private String cleanContent;
+    /**
+     * 清洗完成 false-清洗异常，未进入校验
+     */
+    private boolean cleanDone;
+    /**
+     * 清洗异常原因，只有cleanDone为false生效
+     */
+    private String reason;
+    /**
+     * 是否命中敏感词,最终生效的
+     */
+    private boolean hit;
+    /**
+     * 最终生效的敏感词
+     */
+    private List<SensitiveWord> hitWords;
+    /**
+     * 命中的敏感词被加白
+     */
+    private List<SensitiveWord> whitedWords;
+    /**
+     * 命中的敏感词被合规放行
+     */
+    private List<SensitiveWord> complianceIgnoreWords;
+    /**
+     * 命中的敏感词中被对应规则放行
+     */
+    private List<SensitiveWord> ruleIgnoreWords;
+    /**
+     * 结果不完整（并行校验存在超时或异常的校验器），不写入结果缓存
+     */
+    private boolean partial;
+}
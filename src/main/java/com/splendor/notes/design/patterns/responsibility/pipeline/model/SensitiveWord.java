@@ -1,7 +1,9 @@
 package com.splendor.notes.design.patterns.responsibility.pipeline.model;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 /**
  * @author splendor.s
@@ -10,6 +12,8 @@ import lombok.Data;
  */
 @Builder
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class SensitiveWord {
     /**
      * 敏感词
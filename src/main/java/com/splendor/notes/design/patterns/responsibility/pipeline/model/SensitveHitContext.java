@@ -33,6 +33,10 @@ public class SensitveHitContext extends PipelineContext {
      * 命中的敏感词
      */
     private List<SensitiveWord> hitWords;
+    /**
+     * 并行校验时超过截止时间或执行异常的校验编码，非空表示命中结果不完整
+     */
+    private List<Integer> missedValidateCodes;
 
     @Override
     public String getName() {
@@ -8,13 +8,31 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.MDC;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
 
 import javax.annotation.Resource;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Objects;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 
@@ -35,6 +53,24 @@ public class CacheAspect {
     @Resource
     private final RedisTemplate redisTemplate;
 
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    private final CacheValueSerializer cacheValueSerializer;
+
+    //同一realKey正在进行中的加载，后到的请求直接等待该结果
+    private final Map<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+    //正在提前刷新的realKey，避免重复提交刷新任务
+    private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+
+    //提前刷新线程池，队列满时放弃本次刷新，等下次命中再触发
+    private final ExecutorService refreshExecutor = new ThreadPoolExecutor(1, 4, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(256), r -> {
+        Thread thread = new Thread(r, "custom-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.AbortPolicy());
+
 
     @Pointcut("@annotation(com.splendor.notes.infrastructure.cache.CustomCache)")
     public void cacheAspect() { }
@@ -45,29 +81,27 @@ public class CacheAspect {
         MethodSignature signature = (MethodSignature) point.getSignature();
         Method method = signature.getMethod();
 
-        //拼接解析springEl表达式的map
-        String[] paramNames = signature.getParameterNames();
-        Object[] args = point.getArgs();
-        TreeMap<String, Object> treeMap = new TreeMap<>();
-        for (int i = 0; i < paramNames.length; i++) {
-            treeMap.put(paramNames[i],args[i]);
-        }
-
+        //解析springEl表达式，表达式与参数名按方法缓存
         CustomCache annotation = method.getAnnotation(CustomCache.class);
-        String elResult = SpringElUtil.parse(annotation.key(), treeMap);
+        String elResult = SpringElUtil.parse(method, annotation.key(), signature.getParameterNames(), point.getArgs());
         String realKey = annotation.cacheName() + CacheConstant.COLON + elResult;
 
         //强制更新
         if (annotation.type()== CacheType.PUT){
             Object object = point.proceed();
-            redisTemplate.opsForValue().set(realKey, object,annotation.l2TimeOut(), TimeUnit.SECONDS);
+            l2Set(annotation, realKey, object);
+            //删除旧格式的key，滚动发布期间未升级的节点回源读到新值
+            redisTemplate.delete(realKey);
             cache.put(realKey, object);
+            //通知其他节点失效本地缓存，下次读取从Redis获取新值
+            cacheInvalidationBus.publish(realKey);
             return object;
         }
         //删除
         else if (annotation.type()== CacheType.DELETE){
-            redisTemplate.delete(realKey);
+            redisTemplate.delete(Arrays.asList(CacheValueSerializer.l2Key(realKey), realKey));
             cache.invalidate(realKey);
+            cacheInvalidationBus.publish(realKey);
             return point.proceed();
         }
 
@@ -78,11 +112,47 @@ public class CacheAspect {
             return caffeineCache;
         }
 
+        if (!annotation.coalesce()) {
+            return load(point, annotation, realKey);
+        }
+
+        //合并回源：同一realKey只有第一个请求真正加载，其余请求等待同一结果
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightLoads.putIfAbsent(realKey, loading);
+        if (Objects.nonNull(existing)) {
+            log.info("wait for in-flight load");
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause();
+            }
+        }
+        try {
+            //二次确认：等待putIfAbsent期间可能已有请求完成加载并写入Caffeine
+            Object object = cache.getIfPresent(realKey);
+            if (Objects.isNull(object)) {
+                object = load(point, annotation, realKey);
+            }
+            loading.complete(object);
+            return object;
+        } catch (Throwable t) {
+            loading.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlightLoads.remove(realKey, loading);
+        }
+    }
+
+    /**
+     * 依次查询Redis、数据库并回填两级缓存
+     */
+    private Object load(ProceedingJoinPoint point, CustomCache annotation, String realKey) throws Throwable {
         //查询Redis
-        Object redisCache = redisTemplate.opsForValue().get(realKey);
+        Object redisCache = l2Get(annotation, realKey, ((MethodSignature) point.getSignature()).getMethod().getGenericReturnType());
         if (Objects.nonNull(redisCache)) {
             log.info("get data from redis");
             cache.put(realKey, redisCache);
+            refreshAheadIfNecessary(point, annotation, realKey);
             return redisCache;
         }
 
@@ -90,10 +160,107 @@ public class CacheAspect {
         Object object = point.proceed();
         if (Objects.nonNull(object)){
             //写入Redis
-            redisTemplate.opsForValue().set(realKey, object,annotation.l2TimeOut(), TimeUnit.SECONDS);
+            l2Set(annotation, realKey, object);
             //写入Caffeine
             cache.put(realKey, object);
         }
         return object;
     }
+
+    /**
+     * Redis剩余过期时间低于refreshAhead时，异步回源刷新两级缓存，当前请求仍返回旧值
+     * 切面返回后JoinPoint不能在其他线程再次proceed，这里在通知执行时取出目标对象、方法和参数，刷新线程直接反射调用目标对象
+     */
+    private void refreshAheadIfNecessary(ProceedingJoinPoint point, CustomCache annotation, String realKey) {
+        if (annotation.refreshAhead() <= 0) {
+            return;
+        }
+        Long expire = redisTemplate.getExpire(CacheValueSerializer.l2Key(realKey), TimeUnit.SECONDS);
+        if (Objects.isNull(expire) || expire < 0 || expire > annotation.refreshAhead()) {
+            return;
+        }
+        if (!refreshingKeys.add(realKey)) {
+            return;
+        }
+        Object target = point.getTarget();
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        Object[] args = point.getArgs();
+        //日志上下文随任务带到刷新线程，事务、请求作用域等线程绑定的上下文不传递
+        Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+        try {
+            refreshExecutor.execute(() -> {
+                if (Objects.nonNull(mdcContext)) {
+                    MDC.setContextMap(mdcContext);
+                }
+                try {
+                    log.info("refresh data ahead of expiration");
+                    Object object = invoke(target, method, args);
+                    if (Objects.nonNull(object)) {
+                        l2Set(annotation, realKey, object);
+                        cache.put(realKey, object);
+                    }
+                } catch (Throwable t) {
+                    log.error("refresh cache error, key:{}", realKey, t);
+                } finally {
+                    refreshingKeys.remove(realKey);
+                    MDC.clear();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingKeys.remove(realKey);
+        }
+    }
+
+    /**
+     * 反射调用被代理的目标对象，不再经过切面
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            ReflectionUtils.makeAccessible(method);
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * 写入Redis：所有编码方式统一经过CacheValueSerializer编码、压缩并统计
+     */
+    private void l2Set(CustomCache annotation, String realKey, Object object) {
+        long timeOut = l2TimeOut(annotation);
+        byte[] rawKey = rawKey(CacheValueSerializer.l2Key(realKey));
+        byte[] rawValue = cacheValueSerializer.serialize(annotation, object);
+        redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.set(rawKey, rawValue, Expiration.seconds(timeOut), RedisStringCommands.SetOption.UPSERT));
+    }
+
+    /**
+     * 读取Redis并按方法返回类型解码，无法解码的数据按未命中处理，回源后覆盖
+     */
+    private Object l2Get(CustomCache annotation, String realKey, Type returnType) {
+        byte[] rawKey = rawKey(CacheValueSerializer.l2Key(realKey));
+        byte[] rawValue = (byte[]) redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        try {
+            return cacheValueSerializer.deserialize(annotation, rawValue, returnType);
+        } catch (RuntimeException e) {
+            log.warn("decode redis cache error, key:{}", realKey, e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String realKey) {
+        //与opsForValue使用相同的key序列化，保证delete、getExpire等操作作用于同一个key
+        return ((RedisSerializer<Object>) redisTemplate.getKeySerializer()).serialize(realKey);
+    }
+
+    /**
+     * 二级缓存过期时间加上随机抖动，避免同一批写入的key同时过期
+     */
+    private long l2TimeOut(CustomCache annotation) {
+        if (annotation.ttlJitter() <= 0) {
+            return annotation.l2TimeOut();
+        }
+        return annotation.l2TimeOut() + ThreadLocalRandom.current().nextLong(annotation.ttlJitter() + 1);
+    }
 }
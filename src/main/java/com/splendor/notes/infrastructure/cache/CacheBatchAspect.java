@@ -0,0 +1,225 @@
+package com.splendor.notes.infrastructure.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * @author splendor.s
+ * @create 2023/5/12 下午3:20
+ * 批量缓存：Caffeine批量命中 -> Redis一次MGET -> 只用未命中的id回源一次 -> 管道批量回写
+ * Redis值与CacheAspect一样经过CacheValueSerializer编解码，批量读写统一走RedisTemplateUtil的帧读写，codec一致时单个与批量读写共用同一份缓存
+ */
+
+
+@Slf4j
+@Aspect
+@Component
+@AllArgsConstructor
+public class CacheBatchAspect {
+
+    private final Cache cache;
+
+    private final RedisTemplateUtil redisTemplateUtil;
+
+    private final CacheValueSerializer cacheValueSerializer;
+
+
+    @Pointcut("@annotation(com.splendor.notes.infrastructure.cache.CustomCacheBatch)")
+    public void cacheBatchAspect() { }
+
+
+    @Around("cacheBatchAspect()")
+    @SuppressWarnings("unchecked")
+    public Object doAround(ProceedingJoinPoint point) throws Throwable {
+        MethodSignature signature = (MethodSignature) point.getSignature();
+        Method method = signature.getMethod();
+        CustomCacheBatch annotation = method.getAnnotation(CustomCacheBatch.class);
+        boolean returnMap = Map.class.isAssignableFrom(method.getReturnType());
+        Object[] args = point.getArgs();
+        validate(method, annotation, returnMap, args);
+
+        Collection<Object> ids = (Collection<Object>) args[annotation.idsIndex()];
+        if (Objects.isNull(ids) || ids.isEmpty()) {
+            return point.proceed();
+        }
+
+        //id -> realKey，保持入参顺序并去重
+        Map<Object, String> idKeys = new LinkedHashMap<>();
+        for (Object id : ids) {
+            idKeys.put(id, realKey(annotation, id));
+        }
+        Map<String, Object> hits = new LinkedHashMap<>();
+
+        //查询Caffeine
+        hits.putAll(cache.getAllPresent(idKeys.values()));
+
+        //查询Redis，剩余未命中的key一次MGET
+        List<String> redisKeys = new ArrayList<>();
+        for (String key : idKeys.values()) {
+            if (!hits.containsKey(key)) {
+                redisKeys.add(key);
+            }
+        }
+        if (!redisKeys.isEmpty()) {
+            Map<String, Object> redisHits = l2MultiGet(annotation, redisKeys, valueType(method, returnMap));
+            cache.putAll(redisHits);
+            hits.putAll(redisHits);
+        }
+
+        //只用仍未命中的id回源一次
+        List<Object> missingIds = new ArrayList<>();
+        idKeys.forEach((id, key) -> {
+            if (!hits.containsKey(key)) {
+                missingIds.add(id);
+            }
+        });
+        if (!missingIds.isEmpty()) {
+            log.info("get {} of {} ids from database", missingIds.size(), idKeys.size());
+            Object[] missingArgs = args.clone();
+            missingArgs[annotation.idsIndex()] = ids instanceof Set ? new LinkedHashSet<>(missingIds) : missingIds;
+            Map<String, Object> loaded = toKeyedValues(annotation, point.proceed(missingArgs), returnMap);
+            if (!loaded.isEmpty()) {
+                //写入Redis
+                l2MultiSet(annotation, loaded);
+                //写入Caffeine
+                cache.putAll(loaded);
+                hits.putAll(loaded);
+            }
+        }
+
+        //按入参顺序组装结果
+        if (returnMap) {
+            Map<Object, Object> result = new LinkedHashMap<>();
+            idKeys.forEach((id, key) -> {
+                if (hits.containsKey(key)) {
+                    result.put(id, hits.get(key));
+                }
+            });
+            return result;
+        }
+        Collection<Object> result = Set.class.isAssignableFrom(method.getReturnType())
+                ? new LinkedHashSet<>() : new ArrayList<>(idKeys.size());
+        for (String key : idKeys.values()) {
+            if (hits.containsKey(key)) {
+                result.add(hits.get(key));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 将回源结果转换为realKey -> value
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> toKeyedValues(CustomCacheBatch annotation, Object loaded, boolean returnMap) {
+        Map<String, Object> keyedValues = new LinkedHashMap<>();
+        if (Objects.isNull(loaded)) {
+            return keyedValues;
+        }
+        if (returnMap) {
+            ((Map<Object, Object>) loaded).forEach((id, value) -> {
+                if (Objects.nonNull(value)) {
+                    keyedValues.put(realKey(annotation, id), value);
+                }
+            });
+            return keyedValues;
+        }
+        for (Object value : (Collection<Object>) loaded) {
+            if (Objects.nonNull(value)) {
+                keyedValues.put(realKey(annotation, SpringElUtil.parse(annotation.valueKey(), "value", value)), value);
+            }
+        }
+        return keyedValues;
+    }
+
+    /**
+     * 在通知执行时校验注解配置，配置错误直接失败，不等到回源后才暴露
+     */
+    private void validate(Method method, CustomCacheBatch annotation, boolean returnMap, Object[] args) {
+        if (annotation.idsIndex() < 0 || annotation.idsIndex() >= args.length) {
+            throw new IllegalStateException("@CustomCacheBatch idsIndex " + annotation.idsIndex() + " out of range on " + method);
+        }
+        Object ids = args[annotation.idsIndex()];
+        if (Objects.nonNull(ids) && !(ids instanceof Collection)) {
+            throw new IllegalStateException("@CustomCacheBatch idsIndex " + annotation.idsIndex() + " is not a Collection on " + method);
+        }
+        if (!returnMap && !StringUtils.hasText(annotation.valueKey())) {
+            throw new IllegalStateException("@CustomCacheBatch valueKey is required when the method returns a collection: " + method);
+        }
+    }
+
+    /**
+     * Redis一次MGET，按注解的编码方式解码，无法解码的数据按未命中处理
+     */
+    private Map<String, Object> l2MultiGet(CustomCacheBatch annotation, List<String> keys, Type valueType) {
+        List<byte[]> rawValues = redisTemplateUtil.multiGet(keys);
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size() && i < rawValues.size(); i++) {
+            try {
+                Object value = cacheValueSerializer.deserialize(annotation, rawValues.get(i), valueType);
+                if (Objects.nonNull(value)) {
+                    values.put(keys.get(i), value);
+                }
+            } catch (RuntimeException e) {
+                log.warn("decode redis cache error, key:{}", keys.get(i), e);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 管道批量写入Redis，每个key单独计算过期时间抖动
+     */
+    private void l2MultiSet(CustomCacheBatch annotation, Map<String, Object> values) {
+        Map<String, byte[]> rawValues = new LinkedHashMap<>();
+        values.forEach((key, value) -> rawValues.put(key, cacheValueSerializer.serialize(annotation, value)));
+        if (!redisTemplateUtil.multiSet(rawValues, () -> l2TimeOut(annotation))) {
+            log.warn("write redis cache error, keys:{}", rawValues.keySet());
+        }
+    }
+
+    /**
+     * 返回Map时取value的泛型，返回集合时取元素的泛型
+     */
+    private static Type valueType(Method method, boolean returnMap) {
+        ResolvableType returnType = ResolvableType.forMethodReturnType(method);
+        ResolvableType valueType = returnMap ? returnType.asMap().getGeneric(1) : returnType.asCollection().getGeneric(0);
+        return Objects.isNull(valueType.resolve()) ? Object.class : valueType.getType();
+    }
+
+    /**
+     * 二级缓存过期时间加上随机抖动，与CacheAspect单个写入一致
+     */
+    private static long l2TimeOut(CustomCacheBatch annotation) {
+        if (annotation.ttlJitter() <= 0) {
+            return annotation.l2TimeOut();
+        }
+        return annotation.l2TimeOut() + ThreadLocalRandom.current().nextLong(annotation.ttlJitter() + 1);
+    }
+
+    private String realKey(CustomCacheBatch annotation, Object id) {
+        return annotation.cacheName() + CacheConstant.COLON + id;
+    }
+}
@@ -0,0 +1,58 @@
+package com.splendor.notes.infrastructure.cache;
+
+import com.alibaba.fastjson.JSON;
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/11 上午10:05
+ * 二级缓存值编码方式
+ */
+public enum CacheCodec {
+    //JDK序列化，值须实现Serializable，写入类名，不依赖方法返回类型
+    JDK {
+        @Override
+        public byte[] encode(Object value) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(value);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("JDK encode error, type:" + value.getClass().getName(), e);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Object decode(byte[] bytes, Type type) {
+            try (ObjectInputStream in = new ConfigurableObjectInputStream(new ByteArrayInputStream(bytes), ClassUtils.getDefaultClassLoader())) {
+                return in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                throw new IllegalArgumentException("JDK decode error", e);
+            }
+        }
+    },
+    //紧凑的JSON字节编码，按方法返回类型反序列化，不写入类名
+    JSON_BYTES {
+        @Override
+        public byte[] encode(Object value) {
+            return JSON.toJSONBytes(value);
+        }
+
+        @Override
+        public Object decode(byte[] bytes, Type type) {
+            return JSON.parseObject(bytes, type);
+        }
+    };
+
+    public abstract byte[] encode(Object value);
+
+    public abstract Object decode(byte[] bytes, Type type);
+}
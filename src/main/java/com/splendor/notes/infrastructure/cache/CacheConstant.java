@@ -10,4 +10,9 @@ import lombok.Getter;
 public class CacheConstant {
 
     public final static String COLON = "custom_cache";
+
+    /**
+     * 二级缓存值格式版本，作为Redis key前缀，格式变化时升级，新旧节点互不读取对方的值
+     */
+    public final static String L2_FORMAT_VERSION = "v2:";
 }
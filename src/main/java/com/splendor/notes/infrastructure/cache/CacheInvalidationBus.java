@@ -0,0 +1,129 @@
+package com.splendor.notes.infrastructure.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @author splendor.s
+ * @create 2023/5/9 下午2:16
+ * 跨节点本地缓存失效总线：通过Redis发布订阅让所有节点的Caffeine同步失效
+ * 发送端按时间窗口合并、去重后批量发布，接收端逐个失效本地key
+ */
+@Slf4j
+@Component
+public class CacheInvalidationBus implements MessageListener {
+
+    public final static String CHANNEL = CacheConstant.COLON + ":invalidation";
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final Cache cache;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${custom.cache.invalidation.flush-millis:20}")
+    private long flushMillis;
+
+    @Value("${custom.cache.invalidation.batch-size:500}")
+    private int batchSize;
+
+    private ScheduledExecutorService flushScheduler;
+
+    public CacheInvalidationBus(Cache cache, StringRedisTemplate stringRedisTemplate) {
+        this.cache = cache;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "custom-cache-invalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushScheduler.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroyed() {
+        flushScheduler.shutdown();
+        flush();
+    }
+
+    /**
+     * 登记需要在其他节点失效的key，同一窗口内重复的key只广播一次
+     */
+    public void publish(String realKey) {
+        pendingKeys.add(realKey);
+    }
+
+    /**
+     * 将当前窗口内登记的key按批次发布
+     */
+    public void flush() {
+        if (pendingKeys.isEmpty()) {
+            return;
+        }
+        List<String> batch = new ArrayList<>(Math.min(pendingKeys.size(), batchSize));
+        Iterator<String> iterator = pendingKeys.iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            iterator.remove();
+            if (batch.size() >= batchSize) {
+                send(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private void send(List<String> keys) {
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, JSON.toJSONString(new CacheInvalidationMessage(nodeId, keys)));
+        } catch (Exception e) {
+            //发布失败时其他节点依赖本地过期时间兜底
+            log.error("publish cache invalidation error, size:{}", keys.size(), e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        CacheInvalidationMessage invalidation;
+        try {
+            invalidation = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8), CacheInvalidationMessage.class);
+        } catch (Exception e) {
+            log.error("parse cache invalidation error", e);
+            return;
+        }
+        if (Objects.isNull(invalidation) || nodeId.equals(invalidation.getNodeId()) || Objects.isNull(invalidation.getKeys())) {
+            return;
+        }
+        cache.invalidateAll(invalidation.getKeys());
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.splendor.notes.infrastructure.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/9 下午2:10
+ * 本地缓存失效广播消息
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidationMessage {
+
+    private String nodeId; //发送节点，接收方据此忽略自己发出的消息
+
+    private List<String> keys; //需要失效的realKey，已去重
+
+}
@@ -0,0 +1,134 @@
+package com.splendor.notes.infrastructure.cache;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @author splendor.s
+ * @create 2023/5/11 上午10:32
+ * 二级缓存值编解码：按注解配置的编码方式编码，超过阈值时LZ4压缩，并按cacheName统计字节数与耗时
+ * 格式：1字节标记(0-未压缩 1-LZ4) + [4字节原始长度，仅压缩时] + 数据
+ * 该格式与直接使用RedisTemplate值序列化写入的数据不兼容，Redis key统一通过l2Key加上格式版本前缀，滚动发布期间新旧节点各读各的key
+ */
+@Component
+public class CacheValueSerializer {
+
+    private static final byte RAW = 0;
+
+    private static final byte LZ4 = 1;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    /**
+     * LZ4单个字节最多展开为255字节，超过该比例的原始长度必然是损坏或伪造的数据
+     */
+    private static final long MAX_COMPRESSION_RATIO = 255;
+
+    private final MeterRegistry meterRegistry;
+
+    public CacheValueSerializer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 本地缓存key -> 带格式版本前缀的Redis key
+     */
+    public static String l2Key(String realKey) {
+        return CacheConstant.L2_FORMAT_VERSION + realKey;
+    }
+
+    public byte[] serialize(CustomCache annotation, Object value) {
+        return serialize(annotation.cacheName(), annotation.codec(), annotation.compressThreshold(), value);
+    }
+
+    public byte[] serialize(CustomCacheBatch annotation, Object value) {
+        return serialize(annotation.cacheName(), annotation.codec(), annotation.compressThreshold(), value);
+    }
+
+    public Object deserialize(CustomCache annotation, byte[] bytes, Type type) {
+        return deserialize(annotation.cacheName(), annotation.codec(), bytes, type);
+    }
+
+    public Object deserialize(CustomCacheBatch annotation, byte[] bytes, Type type) {
+        return deserialize(annotation.cacheName(), annotation.codec(), bytes, type);
+    }
+
+    private byte[] serialize(String cacheName, CacheCodec codec, int compressThreshold, Object value) {
+        long start = System.nanoTime();
+        byte[] encoded = codec.encode(value);
+        byte[] result;
+        if (compressThreshold >= 0 && encoded.length >= compressThreshold) {
+            byte[] compressed = new byte[COMPRESSOR.maxCompressedLength(encoded.length)];
+            int compressedLength = COMPRESSOR.compress(encoded, 0, encoded.length, compressed, 0, compressed.length);
+            result = ByteBuffer.allocate(5 + compressedLength)
+                    .put(LZ4)
+                    .putInt(encoded.length)
+                    .put(compressed, 0, compressedLength)
+                    .array();
+        } else {
+            result = new byte[encoded.length + 1];
+            result[0] = RAW;
+            System.arraycopy(encoded, 0, result, 1, encoded.length);
+        }
+        encodeTimer(cacheName).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        valueBytes(cacheName, "raw").record(encoded.length);
+        valueBytes(cacheName, "stored").record(result.length);
+        return result;
+    }
+
+    private Object deserialize(String cacheName, CacheCodec codec, byte[] bytes, Type type) {
+        if (Objects.isNull(bytes) || bytes.length == 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        byte[] encoded;
+        if (bytes[0] == LZ4) {
+            if (bytes.length < 5) {
+                throw new IllegalArgumentException("lz4 frame too short, cacheName:" + cacheName + ", length:" + bytes.length);
+            }
+            int originalLength = ByteBuffer.wrap(bytes, 1, 4).getInt();
+            //先校验长度再分配，避免损坏的数据导致NegativeArraySizeException或超大数组OOM
+            if (originalLength < 0 || originalLength > (bytes.length - 5) * MAX_COMPRESSION_RATIO) {
+                throw new IllegalArgumentException("invalid lz4 original length, cacheName:" + cacheName
+                        + ", originalLength:" + originalLength + ", length:" + bytes.length);
+            }
+            encoded = new byte[originalLength];
+            DECOMPRESSOR.decompress(bytes, 5, encoded, 0, originalLength);
+        } else {
+            encoded = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, encoded, 0, encoded.length);
+        }
+        Object value = codec.decode(encoded, type);
+        decodeTimer(cacheName).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return value;
+    }
+
+    private Timer encodeTimer(String cacheName) {
+        return Timer.builder("custom.cache.value.encode").tag("cacheName", cacheName).register(meterRegistry);
+    }
+
+    private Timer decodeTimer(String cacheName) {
+        return Timer.builder("custom.cache.value.decode").tag("cacheName", cacheName).register(meterRegistry);
+    }
+
+    private DistributionSummary valueBytes(String cacheName, String stage) {
+        return DistributionSummary.builder("custom.cache.value.bytes")
+                .baseUnit("bytes")
+                .tag("cacheName", cacheName)
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+}
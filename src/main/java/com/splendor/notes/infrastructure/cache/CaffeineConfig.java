@@ -2,6 +2,7 @@ package com.splendor.notes.infrastructure.cache;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -17,14 +18,16 @@ import java.util.concurrent.TimeUnit;
 public class CaffeineConfig {
 
     @Bean
-    public Cache<String,Object> caffeineCache(){
+    public Cache<String,Object> caffeineCache(@Value("${custom.cache.l1.maximum-size:10240}") long maximumSize,
+                                              @Value("${custom.cache.l1.expire-seconds:600}") long expireSeconds){
+        //跨节点失效由CacheInvalidationBus保证，过期时间只作为广播丢失时的兜底
         return Caffeine.newBuilder()
                 //初始大小
                 .initialCapacity(128)
                 //最大数量
-                .maximumSize(1024)
+                .maximumSize(maximumSize)
                 //过期时间
-                .expireAfterWrite(60, TimeUnit.SECONDS)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .build();
     }
 
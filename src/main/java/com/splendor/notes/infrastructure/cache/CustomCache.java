@@ -20,4 +20,14 @@ public @interface CustomCache {
 
     CacheType type() default CacheType.FULL;
 
+    boolean coalesce() default true; //同一节点同一realKey只允许一个回源加载，其余请求等待其结果
+
+    long refreshAhead() default 0; //Redis剩余过期时间(秒)低于该值时异步提前刷新，0表示不开启
+
+    long ttlJitter() default 0; //Redis过期时间随机抖动上限(秒)，避免同批key同时过期
+
+    CacheCodec codec() default CacheCodec.JDK; //Redis值编码方式
+
+    int compressThreshold() default -1; //编码后字节数达到该值时LZ4压缩，-1表示不压缩
+
 }
@@ -0,0 +1,30 @@
+package com.splendor.notes.infrastructure.cache;
+
+import java.lang.annotation.*;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/12 下午3:06
+ * 批量缓存标识：集合参数中的每个id对应一个缓存key，只对未命中的id回源
+ * 方法返回Map时按key对应id；返回集合时通过valueKey从每个元素中取出id
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CustomCacheBatch {
+
+    String cacheName();
+
+    int idsIndex() default 0; //id集合参数的下标
+
+    String valueKey() default ""; //返回集合时从元素取id的springEl表达式，元素变量名为value，例如#value.id
+
+    long l2TimeOut() default 120;
+
+    long ttlJitter() default 0; //Redis过期时间随机抖动上限(秒)，每个key单独抖动
+
+    CacheCodec codec() default CacheCodec.JDK; //Redis值编码方式，与共用同一cacheName的@CustomCache保持一致
+
+    int compressThreshold() default -1; //编码后字节数达到该值时LZ4压缩，-1表示不压缩
+
+}
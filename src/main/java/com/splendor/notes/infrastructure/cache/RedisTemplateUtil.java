@@ -1,15 +1,21 @@
 package com.splendor.notes.infrastructure.cache;
 
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.Resource;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 
 /**
@@ -149,6 +155,63 @@ public class RedisTemplateUtil {
     }
 
 
+/**
+     * 批量获取CacheValueSerializer编码的二级缓存帧，一次MGET往返
+     * 直接读取原始字节，不经过模板的value序列化，key使用二级缓存带版本的命名空间
+     *
+     * @param keys 键
+     * @return 与keys顺序一致的帧，不存在的键对应null
+     */
+
+    public List<byte[]> multiGet(List<String> keys) {
+        if (CollectionUtils.isEmpty(keys)) {
+            return Collections.emptyList();
+        }
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            rawKeys[i] = rawKey(CacheValueSerializer.l2Key(keys.get(i)));
+        }
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(rawKeys));
+        return values == null ? Collections.nCopies(keys.size(), null) : values;
+    }
+
+
+/**
+     * 批量放入CacheValueSerializer编码的二级缓存帧，通过管道一次往返完成
+     *
+     * @param map  键 -> 已编码的帧
+     * @param time 每个键的时间(秒)，每个键单独取一次以便各自加上抖动，小于等于0 将设置无限期
+     * @return true成功 false 失败
+     */
+
+    public boolean multiSet(Map<String, byte[]> map, LongSupplier time) {
+        if (CollectionUtils.isEmpty(map)) {
+            return true;
+        }
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                map.forEach((key, value) -> {
+                    long seconds = time.getAsLong();
+                    connection.set(rawKey(CacheValueSerializer.l2Key(key)), value,
+                            seconds > 0 ? Expiration.seconds(seconds) : Expiration.persistent(), RedisStringCommands.SetOption.UPSERT);
+                });
+                return null;
+            });
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        //与CacheAspect使用相同的key序列化
+        return ((RedisSerializer<Object>) redisTemplate.getKeySerializer()).serialize(key);
+    }
+
+
 /**
      * 递增
      *
@@ -4,10 +4,15 @@ import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.common.TemplateParserContext;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
+import java.lang.reflect.Method;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author splendor.s
@@ -15,6 +20,17 @@ import java.util.TreeMap;
  */
 public class SpringElUtil {
 
+    //解析器线程安全，全局共享；表达式解释执行若干次后编译为字节码，编译后执行失败会自动退回解释执行
+    private static final ExpressionParser COMPILED_PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, SpringElUtil.class.getClassLoader()));
+
+    private static final TemplateParserContext TEMPLATE_PARSER_CONTEXT = new TemplateParserContext();
+
+    //每个方法只解析一次key表达式并绑定一次参数名
+    private static final Map<Method, MethodKeyExpression> METHOD_KEY_EXPRESSIONS = new ConcurrentHashMap<>();
+
+    private static final Map<String, Expression> EXPRESSIONS = new ConcurrentHashMap<>();
+
     public static String parse(String elString, TreeMap<String,Object> map){
         elString=String.format("#{%s}",elString);
         //创建表达式解析器
@@ -32,4 +48,55 @@ public class SpringElUtil {
         return value;
     }
 
+    /**
+     * 按方法缓存已解析的表达式，调用时只需绑定参数值
+     *
+     * @param method     被缓存的方法
+     * @param elString   springEl表达式
+     * @param paramNames 方法参数名，仅首次调用时使用
+     * @param args       方法参数值
+     * @return 表达式结果
+     */
+    public static String parse(Method method, String elString, String[] paramNames, Object[] args){
+        MethodKeyExpression keyExpression = METHOD_KEY_EXPRESSIONS.computeIfAbsent(method,
+                m -> new MethodKeyExpression(
+                        COMPILED_PARSER.parseExpression(String.format("#{%s}", elString), TEMPLATE_PARSER_CONTEXT),
+                        paramNames));
+
+        EvaluationContext context = new StandardEvaluationContext();
+        String[] names = keyExpression.paramNames;
+        for (int i = 0; i < names.length; i++) {
+            context.setVariable(names[i], args[i]);
+        }
+        return keyExpression.expression.getValue(context, String.class);
+    }
+
+    /**
+     * 以单个变量求值表达式，表达式按字符串缓存
+     *
+     * @param elString springEl表达式
+     * @param name     变量名
+     * @param value    变量值
+     * @return 表达式结果
+     */
+    public static Object parse(String elString, String name, Object value){
+        Expression expression = EXPRESSIONS.computeIfAbsent(elString,
+                el -> COMPILED_PARSER.parseExpression(String.format("#{%s}", el), TEMPLATE_PARSER_CONTEXT));
+        EvaluationContext context = new StandardEvaluationContext();
+        context.setVariable(name, value);
+        return expression.getValue(context);
+    }
+
+    private static class MethodKeyExpression {
+
+        private final Expression expression;
+
+        private final String[] paramNames;
+
+        private MethodKeyExpression(Expression expression, String[] paramNames) {
+            this.expression = expression;
+            this.paramNames = paramNames;
+        }
+    }
+
 }
@@ -1,7 +1,10 @@
 package com.splendor.notes.thread.delay;
 
-import java.util.concurrent.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @Author splendor.s
@@ -10,9 +13,39 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public abstract class DelayQueue<T> implements Runnable, LifeCycle {
 
     public AtomicBoolean isClose = new AtomicBoolean(false);
-    public java.util.concurrent.DelayQueue<DelayedWrapper<T>> queue = new java.util.concurrent.DelayQueue<>();
+    public DelayStore<T> queue = new HeapDelayStore<>();
     public ExecutorService executorService;
 
+    /**
+     * 使用指定的延迟数据存储初始化，需在加入数据之前调用
+     *
+     * @param threadName
+     * @param delayStore
+     */
+    public void init(String threadName, DelayStore<T> delayStore){
+        this.queue = delayStore;
+        init(threadName);
+    }
+
+    /**
+     * 使用指定的延迟数据存储和消费线程数初始化，并启动消费线程持续消费
+     *
+     * @param threadName
+     * @param delayStore
+     * @param parallelism 消费线程数
+     */
+    public void init(String threadName, DelayStore<T> delayStore, int parallelism){
+        this.queue = delayStore;
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        executorService = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, threadName + "-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < parallelism; i++) {
+            executorService.submit(this);
+        }
+    }
 
     public void init(String threadName){
         executorService = Executors.newSingleThreadExecutor(r -> {
@@ -35,67 +68,16 @@ public abstract class DelayQueue<T> implements Runnable, LifeCycle {
      *
      * @param data
      */
-    public void add(T data) {
-        queue.add(new DelayedWrapper<>(data, 10, TimeUnit.SECONDS));
-    }
-
-    public void add(T data, int seconds) {
-        queue.add(new DelayedWrapper<>(data, seconds, TimeUnit.SECONDS));
+    public DelayTimeout add(T data) {
+        return queue.add(data, 10, TimeUnit.SECONDS);
     }
 
-    public void add(T data, int time, TimeUnit timeUnit) {
-        queue.add(new DelayedWrapper<>(data, time, timeUnit));
+    public DelayTimeout add(T data, int seconds) {
+        return queue.add(data, seconds, TimeUnit.SECONDS);
     }
 
-    class DelayedWrapper<T> implements Delayed {
-        private long deadline;
-        private T bean;
-
-
-        public DelayedWrapper(T bean, long delayTime, TimeUnit delayTimeUnit) {
-            this.deadline = System.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(delayTime, delayTimeUnit);
-            this.bean = bean;
-        }
-
-
-        @Override
-        public long getDelay(TimeUnit unit) {
-            long delay = unit.convert(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
-            return delay;
-        }
-
-
-        @Override
-        public int compareTo(Delayed o) {
-            long diff;
-            if (o instanceof DelayedWrapper) {
-                diff = this.deadline - ((DelayedWrapper) o).getDeadline();
-            } else {
-                diff = this.getDelay(TimeUnit.MILLISECONDS) - o.getDelay(TimeUnit.MILLISECONDS);
-            }
-            return (diff == 0) ? 0 : ((diff < 0) ? -1 : 1);
-        }
-
-        public T get() {
-            return bean;
-        }
-
-        /**
-         * 获取 deadline
-         *
-         * @return deadline
-         */
-        public long getDeadline() {
-            return deadline;
-        }
-
-        @Override
-        public String toString() {
-            return "DelayedWrapper{" +
-                    "deadline=" + deadline +
-                    ", bean=" + bean +
-                    '}';
-        }
+    public DelayTimeout add(T data, int time, TimeUnit timeUnit) {
+        return queue.add(data, time, timeUnit);
     }
 
 }
@@ -0,0 +1,27 @@
+package com.splendor.notes.thread.delay;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/19 10:05
+ * @Description 延迟数据持久化编解码
+ */
+public interface DelayRecordCodec<T> {
+
+    /**
+     * 编码写入buffer，空间不足时抛出BufferOverflowException，由调用方扩容后重试
+     *
+     * @param value 数据
+     * @param buffer 目标buffer
+     */
+    void encode(T value, ByteBuffer buffer);
+
+    /**
+     * 从buffer的当前位置解码
+     *
+     * @param buffer 源buffer
+     * @return 数据
+     */
+    T decode(ByteBuffer buffer);
+}
@@ -0,0 +1,77 @@
+package com.splendor.notes.thread.delay;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/18 10:00
+ * @Description 延迟数据存储：到期后才能被取出
+ */
+public interface DelayStore<T> {
+
+    /**
+     * 加入延迟数据
+     *
+     * @param data 数据
+     * @param delay 延迟时间
+     * @param timeUnit 时间单位
+     * @return 可用于取消的句柄
+     */
+    DelayTimeout add(T data, long delay, TimeUnit timeUnit);
+
+    /**
+     * 阻塞获取一条到期数据
+     *
+     * @return 到期数据
+     * @throws InterruptedException
+     */
+    T take() throws InterruptedException;
+
+    /**
+     * 在超时时间内获取一条到期数据
+     *
+     * @return 到期数据，超时返回null
+     * @throws InterruptedException
+     */
+    T poll(long timeout, TimeUnit timeUnit) throws InterruptedException;
+
+    /**
+     * 不阻塞地取出已到期的数据
+     *
+     * @param collection 接收数据的集合
+     * @param maxElements 最多取出的数量
+     * @return 取出的数量
+     */
+    int drainTo(Collection<? super T> collection, int maxElements);
+
+    /**
+     * 未取出的数据数量
+     *
+     * @return
+     */
+    int size();
+
+    /**
+     * 确认取出的数据已处理完成，持久化的存储据此删除对应记录
+     *
+     * @param items 已处理完成的数据
+     */
+    default void ack(Collection<? extends T> items) {
+    }
+
+    /**
+     * 根据类型创建延迟数据存储：heap-DelayQueue实现，wheel-分层时间轮实现
+     *
+     * @param type 类型
+     * @param tickMillis 时间轮时间格精度（毫秒）
+     * @param wheelSize 时间轮每层时间格数量
+     * @return 延迟数据存储
+     */
+    static <T> DelayStore<T> of(String type, long tickMillis, int wheelSize) {
+        if ("wheel".equalsIgnoreCase(type)) {
+            return new TimingWheelDelayStore<>(tickMillis, wheelSize);
+        }
+        return new HeapDelayStore<>();
+    }
+}
@@ -0,0 +1,16 @@
+package com.splendor.notes.thread.delay;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/18 10:05
+ * @Description 延迟任务句柄
+ */
+public interface DelayTimeout {
+
+    /**
+     * 取消尚未到期的任务
+     *
+     * @return 是否取消成功，已到期被取走或已取消时返回false
+     */
+    boolean cancel();
+}
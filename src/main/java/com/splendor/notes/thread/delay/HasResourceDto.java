@@ -18,5 +18,10 @@ import java.io.Serializable;
 public class HasResourceDto implements Serializable {
 
     private HasResourceInfo hasResourceInfo;
+
+    /**
+     * 已重试次数
+     */
+    private int attempts;
 }
 
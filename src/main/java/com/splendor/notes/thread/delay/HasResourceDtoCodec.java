@@ -0,0 +1,100 @@
+package com.splendor.notes.thread.delay;
+
+import com.splendor.notes.thread.reactor.HasResourceInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/19 10:10
+ * @Description HasResourceDto紧凑二进制编码：重试次数 + 非空字段位图 + 非空字段值，字符串为长度前缀的UTF-8
+ */
+public class HasResourceDtoCodec implements DelayRecordCodec<HasResourceDto> {
+
+    public static final HasResourceDtoCodec INSTANCE = new HasResourceDtoCodec();
+
+    private static final int INFO = 1;
+    private static final int CONTENT = 1 << 1;
+    private static final int TITLE = 1 << 2;
+    private static final int REMIND_TIME = 1 << 3;
+    private static final int NOTIFY_TYPE = 1 << 4;
+    private static final int DOCTOR_ID = 1 << 5;
+    private static final int DOCTOR_NAME = 1 << 6;
+    private static final int DEP_ID = 1 << 7;
+    private static final int UNIT_ID = 1 << 8;
+
+    @Override
+    public void encode(HasResourceDto value, ByteBuffer buffer) {
+        buffer.putInt(value.getAttempts());
+        HasResourceInfo info = value.getHasResourceInfo();
+        if (info == null) {
+            buffer.putShort((short) 0);
+            return;
+        }
+        int mask = INFO
+                | flag(info.getContent(), CONTENT)
+                | flag(info.getTitle(), TITLE)
+                | flag(info.getRemindTime(), REMIND_TIME)
+                | flag(info.getNotifyType(), NOTIFY_TYPE)
+                | flag(info.getDoctorId(), DOCTOR_ID)
+                | flag(info.getDoctorName(), DOCTOR_NAME)
+                | flag(info.getDepId(), DEP_ID)
+                | flag(info.getUnitId(), UNIT_ID);
+        buffer.putShort((short) mask);
+        putString(buffer, info.getContent());
+        putString(buffer, info.getTitle());
+        putString(buffer, info.getRemindTime());
+        if (info.getNotifyType() != null) {
+            buffer.putInt(info.getNotifyType());
+        }
+        if (info.getDoctorId() != null) {
+            buffer.putLong(info.getDoctorId());
+        }
+        putString(buffer, info.getDoctorName());
+        if (info.getDepId() != null) {
+            buffer.putLong(info.getDepId());
+        }
+        if (info.getUnitId() != null) {
+            buffer.putLong(info.getUnitId());
+        }
+    }
+
+    @Override
+    public HasResourceDto decode(ByteBuffer buffer) {
+        int attempts = buffer.getInt();
+        int mask = buffer.getShort() & 0xFFFF;
+        if ((mask & INFO) == 0) {
+            return HasResourceDto.builder().attempts(attempts).build();
+        }
+        HasResourceInfo info = HasResourceInfo.builder()
+                .content((mask & CONTENT) != 0 ? getString(buffer) : null)
+                .title((mask & TITLE) != 0 ? getString(buffer) : null)
+                .remindTime((mask & REMIND_TIME) != 0 ? getString(buffer) : null)
+                .notifyType((mask & NOTIFY_TYPE) != 0 ? buffer.getInt() : null)
+                .doctorId((mask & DOCTOR_ID) != 0 ? buffer.getLong() : null)
+                .doctorName((mask & DOCTOR_NAME) != 0 ? getString(buffer) : null)
+                .depId((mask & DEP_ID) != 0 ? buffer.getLong() : null)
+                .unitId((mask & UNIT_ID) != 0 ? buffer.getLong() : null)
+                .build();
+        return HasResourceDto.builder().hasResourceInfo(info).attempts(attempts).build();
+    }
+
+    private static int flag(Object field, int bit) {
+        return field != null ? bit : 0;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+package com.splendor.notes.thread.delay;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/18 10:10
+ * @Description 基于java.util.concurrent.DelayQueue的延迟数据存储，插入和取消均为O(log n)/O(n)
+ */
+public class HeapDelayStore<T> implements DelayStore<T> {
+
+    private final java.util.concurrent.DelayQueue<DelayedWrapper<T>> queue = new java.util.concurrent.DelayQueue<>();
+
+    @Override
+    public DelayTimeout add(T data, long delay, TimeUnit timeUnit) {
+        DelayedWrapper<T> wrapper = new DelayedWrapper<>(data, delay, timeUnit);
+        queue.add(wrapper);
+        return () -> queue.remove(wrapper);
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        return queue.take().get();
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        DelayedWrapper<T> wrapper = queue.poll(timeout, timeUnit);
+        return wrapper == null ? null : wrapper.get();
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> collection, int maxElements) {
+        List<DelayedWrapper<T>> wrappers = new ArrayList<>();
+        int count = queue.drainTo(wrappers, maxElements);
+        for (DelayedWrapper<T> wrapper : wrappers) {
+            collection.add(wrapper.get());
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    static class DelayedWrapper<T> implements Delayed {
+        private long deadline;
+        private T bean;
+
+
+        public DelayedWrapper(T bean, long delayTime, TimeUnit delayTimeUnit) {
+            this.deadline = System.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(delayTime, delayTimeUnit);
+            this.bean = bean;
+        }
+
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            long delay = unit.convert(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            return delay;
+        }
+
+
+        @Override
+        public int compareTo(Delayed o) {
+            long diff;
+            if (o instanceof DelayedWrapper) {
+                diff = this.deadline - ((DelayedWrapper) o).getDeadline();
+            } else {
+                diff = this.getDelay(TimeUnit.MILLISECONDS) - o.getDelay(TimeUnit.MILLISECONDS);
+            }
+            return (diff == 0) ? 0 : ((diff < 0) ? -1 : 1);
+        }
+
+        public T get() {
+            return bean;
+        }
+
+        /**
+         * 获取 deadline
+         *
+         * @return deadline
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        @Override
+        public String toString() {
+            return "DelayedWrapper{" +
+                    "deadline=" + deadline +
+                    ", bean=" + bean +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.splendor.notes.thread.delay;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/19 14:00
+ * @Description 可持久化的延迟数据存储：数据先追加到分段日志再交给内存中的延迟数据存储调度
+ * 启动时重放日志中未确认的数据；取出的数据处理完成后调用ack确认，未确认的数据在重启后会再次投递（至少一次）
+ */
+@Slf4j
+public class PersistentDelayStore<T> implements DelayStore<T>, Closeable {
+
+    private final DelayStore<Persisted<T>> delegate;
+
+    private final SegmentedDelayLog<T> delayLog;
+
+    /**
+     * 已取出未确认的数据 -> 日志id，按对象标识区分，内容相同的两条数据互不影响
+     */
+    private final Map<T, Long> inFlight = new IdentityHashMap<>();
+
+    private final ScheduledExecutorService compactor;
+
+    /**
+     * @param delegate 内存中的延迟数据存储
+     * @param delayLog 分段日志
+     * @param compactIntervalSeconds 压缩间隔
+     * @throws IOException 重放日志失败
+     */
+    public PersistentDelayStore(DelayStore<Persisted<T>> delegate, SegmentedDelayLog<T> delayLog,
+                                long compactIntervalSeconds) throws IOException {
+        this.delegate = delegate;
+        this.delayLog = delayLog;
+        long now = System.currentTimeMillis();
+        for (SegmentedDelayLog.DelayRecord<T> record : delayLog.replay()) {
+            delegate.add(new Persisted<>(record.getValue(), record.getId()),
+                    Math.max(0, record.getDeadlineMillis() - now), TimeUnit.MILLISECONDS);
+        }
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "PersistentDelayStoreCompactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, compactIntervalSeconds, compactIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public DelayTimeout add(T data, long delay, TimeUnit timeUnit) {
+        long id = delayLog.append(data, System.currentTimeMillis() + timeUnit.toMillis(delay));
+        DelayTimeout timeout = delegate.add(new Persisted<>(data, id), delay, timeUnit);
+        return () -> {
+            if (!timeout.cancel()) {
+                return false;
+            }
+            delayLog.ack(Collections.singletonList(id));
+            return true;
+        };
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        return track(delegate.take());
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        Persisted<T> persisted = delegate.poll(timeout, timeUnit);
+        return persisted == null ? null : track(persisted);
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> collection, int maxElements) {
+        List<Persisted<T>> drained = new ArrayList<>();
+        int count = delegate.drainTo(drained, maxElements);
+        for (Persisted<T> persisted : drained) {
+            collection.add(track(persisted));
+        }
+        return count;
+    }
+
+    @Override
+    public void ack(Collection<? extends T> items) {
+        List<Long> ids = new ArrayList<>(items.size());
+        synchronized (inFlight) {
+            for (T item : items) {
+                Long id = inFlight.remove(item);
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+        }
+        delayLog.ack(ids);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        delayLog.close();
+    }
+
+    private T track(Persisted<T> persisted) {
+        synchronized (inFlight) {
+            inFlight.put(persisted.value, persisted.id);
+        }
+        return persisted.value;
+    }
+
+    private void compact() {
+        try {
+            int removed = delayLog.compact();
+            if (removed > 0) {
+                log.info("PersistentDelayStore compact, removed segments:{}, pending:{}", removed, delayLog.pendingCount());
+            }
+        } catch (Throwable e) {
+            log.error("PersistentDelayStore compact error", e);
+        }
+    }
+
+    /**
+     * 带日志id的数据
+     */
+    public static class Persisted<T> {
+        private final T value;
+        private final long id;
+
+        Persisted(T value, long id) {
+            this.value = value;
+            this.id = id;
+        }
+    }
+}
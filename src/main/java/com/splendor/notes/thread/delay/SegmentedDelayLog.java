@@ -0,0 +1,430 @@
+package com.splendor.notes.thread.delay;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/19 10:30
+ * @Description 延迟数据持久化日志：内存映射的分段文件，只追加写入
+ * 帧格式：[int 帧体长度][int CRC32][byte 类型][long id]，ADD类型再追加[long 到期时间戳][数据编码]；帧体长度为0表示文件结束
+ * 确认(ACK)也以帧的形式追加；只从最老的分段开始删除或压缩（存活数据搬到当前分段），保证任何ACK都不会早于它确认的ADD被删除
+ * 关闭后释放所有内存映射，不再接受写入，未确认的数据在下次重放时再次投递
+ * 已有分段按文件自身长度映射，分段大小配置只作用于新滚动的分段，调小配置不会截断已有数据
+ */
+@Slf4j
+public class SegmentedDelayLog<T> implements Closeable {
+
+    private static final byte TYPE_ADD = 1;
+    private static final byte TYPE_ACK = 2;
+
+    /**
+     * 帧头：帧体长度 + CRC32
+     */
+    private static final int FRAME_HEADER = 8;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final File directory;
+
+    private final int segmentBytes;
+
+    private final DelayRecordCodec<T> codec;
+
+    /**
+     * 压缩阈值：最老分段中存活数据占比不高于该值时，搬迁存活数据后删除该分段
+     */
+    private final double compactRatio;
+
+    /**
+     * 分段序号 -> 分段
+     */
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+
+    /**
+     * 未确认数据的id -> 所在分段
+     */
+    private final Map<Long, Segment> locations = new HashMap<>();
+
+    private final CRC32 crc32 = new CRC32();
+
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+
+    private Segment active;
+
+    private long nextId;
+
+    private boolean closed;
+
+    public SegmentedDelayLog(File directory, int segmentBytes, double compactRatio, DelayRecordCodec<T> codec) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.compactRatio = compactRatio;
+        this.codec = codec;
+    }
+
+    /**
+     * 打开已有分段，重放出所有未确认的数据，之后的写入追加在最后一个分段末尾
+     *
+     * @return 未确认的数据，按写入顺序
+     * @throws IOException
+     */
+    public synchronized List<DelayRecord<T>> replay() throws IOException {
+        checkOpen();
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("cannot create delay log directory " + directory);
+        }
+        Map<Long, DelayRecord<T>> pending = new LinkedHashMap<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                long sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(sequence, openSegment(sequence, file));
+            }
+        }
+        for (Segment segment : segments.values()) {
+            scan(segment, pending);
+        }
+        for (DelayRecord<T> record : pending.values()) {
+            nextId = Math.max(nextId, record.id + 1);
+        }
+        active = segments.isEmpty() ? roll() : segments.lastEntry().getValue();
+        log.info("SegmentedDelayLog replay, directory:{}, segments:{}, pending:{}", directory, segments.size(), pending.size());
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * 追加一条延迟数据
+     *
+     * @param value 数据
+     * @param deadlineMillis 到期时间戳
+     * @return 数据id，用于确认
+     */
+    public synchronized long append(T value, long deadlineMillis) {
+        checkOpen();
+        long id = nextId++;
+        while (true) {
+            try {
+                scratch.clear();
+                scratch.put(TYPE_ADD).putLong(id).putLong(deadlineMillis);
+                codec.encode(value, scratch);
+                break;
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+        scratch.flip();
+        Segment segment = writeFrame(scratch);
+        segment.adds++;
+        segment.live++;
+        locations.put(id, segment);
+        return id;
+    }
+
+    /**
+     * 确认数据已处理完成，关闭后的确认直接忽略，对应数据在下次重放时再次投递
+     *
+     * @param ids 数据id
+     */
+    public synchronized void ack(Collection<Long> ids) {
+        if (closed) {
+            return;
+        }
+        for (Long id : ids) {
+            Segment segment = locations.remove(id);
+            if (segment == null) {
+                continue;
+            }
+            segment.live--;
+            scratch.clear();
+            scratch.put(TYPE_ACK).putLong(id);
+            scratch.flip();
+            writeFrame(scratch);
+        }
+    }
+
+    /**
+     * 从最老的分段开始：全部确认的直接删除，存活占比低的搬迁存活数据后删除，遇到不满足条件的分段即停止
+     *
+     * @return 删除的分段数
+     */
+    public synchronized int compact() {
+        if (closed) {
+            return 0;
+        }
+        int removed = 0;
+        while (segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == active) {
+                break;
+            }
+            if (oldest.live > 0) {
+                if (oldest.live > oldest.adds * compactRatio) {
+                    break;
+                }
+                relocate(oldest);
+            }
+            segments.remove(oldest.sequence);
+            if (!oldest.file.delete()) {
+                log.warn("SegmentedDelayLog delete segment failed, file:{}", oldest.file);
+            }
+            removed++;
+        }
+        return removed;
+    }
+
+    public synchronized int pendingCount() {
+        return locations.size();
+    }
+
+    /**
+     * 刷盘并释放所有分段的内存映射；关闭后不能再追加或滚动分段，避免重新打开并覆盖已有的分段文件
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            unmap(segment.buffer);
+        }
+        segments.clear();
+        locations.clear();
+        active = null;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("delay log closed: " + directory);
+        }
+    }
+
+    /**
+     * 将分段中仍未确认的ADD帧原样追加到当前分段
+     */
+    private void relocate(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position + FRAME_HEADER <= segment.writePosition) {
+            int length = buffer.getInt(position);
+            ByteBuffer body = frameBody(buffer, position, length);
+            if (body.get(0) == TYPE_ADD) {
+                long id = body.getLong(1);
+                if (locations.get(id) == segment) {
+                    Segment target = writeFrame(body);
+                    target.adds++;
+                    target.live++;
+                    locations.put(id, target);
+                }
+            }
+            position += FRAME_HEADER + length;
+        }
+    }
+
+    /**
+     * 写入一帧，当前分段空间不足时滚动新分段；先写帧体和结束标记，最后写长度
+     */
+    private Segment writeFrame(ByteBuffer body) {
+        int length = body.remaining();
+        int frameBytes = FRAME_HEADER + length;
+        if (active.writePosition + frameBytes + 4 > active.capacity) {
+            if (frameBytes + 4 > segmentBytes) {
+                throw new IllegalArgumentException("delay record too large: " + length);
+            }
+            active = roll();
+        }
+        crc32.reset();
+        crc32.update(body.duplicate());
+        int position = active.writePosition;
+        MappedByteBuffer buffer = active.buffer;
+        buffer.position(position + FRAME_HEADER);
+        buffer.put(body);
+        buffer.putInt(position + frameBytes, 0);
+        buffer.putInt(position + 4, (int) crc32.getValue());
+        buffer.putInt(position, length);
+        active.writePosition = position + frameBytes;
+        return active;
+    }
+
+    private Segment roll() {
+        long sequence = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        File file = new File(directory, String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+        try {
+            if (active != null) {
+                active.buffer.force();
+            }
+            Segment segment = openSegment(sequence, file);
+            segments.put(sequence, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("roll delay log segment failed: " + file, e);
+        }
+    }
+
+    /**
+     * 已有分段按文件长度映射，新分段（含创建后未来得及设置长度的空文件）按配置大小创建
+     * 映射建立后即可关闭文件，映射在缓冲区被回收前一直有效
+     */
+    private Segment openSegment(long sequence, File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("delay log segment too large: " + file + ", length:" + length);
+            }
+            int capacity = length > 0 ? (int) length : segmentBytes;
+            if (length == 0) {
+                raf.setLength(capacity);
+            }
+            FileChannel channel = raf.getChannel();
+            return new Segment(sequence, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+    }
+
+    /**
+     * 释放内存映射，不等GC回收：Java 9+通过Unsafe.invokeCleaner，Java 8通过DirectBuffer.cleaner()，都不可用时仍由GC回收
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                invokeCleaner = null;
+            }
+            if (invokeCleaner != null) {
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Throwable e) {
+            log.warn("SegmentedDelayLog unmap segment failed, fall back to GC: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 扫描分段重建未确认数据，遇到长度为0、越界或CRC不一致的帧视为写入结束
+     */
+    private void scan(Segment segment, Map<Long, DelayRecord<T>> pending) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position + FRAME_HEADER <= segment.capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + FRAME_HEADER + length + 4 > segment.capacity) {
+                break;
+            }
+            ByteBuffer body = frameBody(buffer, position, length);
+            crc32.reset();
+            crc32.update(body.duplicate());
+            if ((int) crc32.getValue() != buffer.getInt(position + 4)) {
+                log.warn("SegmentedDelayLog torn frame, file:{}, position:{}", segment.file, position);
+                break;
+            }
+            long id = body.getLong(1);
+            if (body.get(0) == TYPE_ADD) {
+                long deadlineMillis = body.getLong(9);
+                body.position(17);
+                //搬迁过的数据会出现多次，以最后一次为准
+                Segment previous = locations.put(id, segment);
+                if (previous != null) {
+                    previous.live--;
+                }
+                segment.adds++;
+                segment.live++;
+                pending.put(id, new DelayRecord<>(id, deadlineMillis, codec.decode(body)));
+            } else {
+                Segment previous = locations.remove(id);
+                if (previous != null) {
+                    previous.live--;
+                }
+                pending.remove(id);
+            }
+            nextId = Math.max(nextId, id + 1);
+            position += FRAME_HEADER + length;
+        }
+        segment.writePosition = position;
+    }
+
+    private static ByteBuffer frameBody(ByteBuffer buffer, int position, int length) {
+        ByteBuffer body = buffer.duplicate();
+        body.limit(position + FRAME_HEADER + length);
+        body.position(position + FRAME_HEADER);
+        return body.slice();
+    }
+
+    /**
+     * 日志中的一条延迟数据
+     */
+    public static class DelayRecord<T> {
+        private final long id;
+        private final long deadlineMillis;
+        private final T value;
+
+        DelayRecord(long id, long deadlineMillis, T value) {
+            this.id = id;
+            this.deadlineMillis = deadlineMillis;
+            this.value = value;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+    private static class Segment {
+        private final long sequence;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        /**
+         * 分段文件大小，已有分段可能与当前配置的segmentBytes不同
+         */
+        private final int capacity;
+        private int writePosition;
+        private int adds;
+        private int live;
+
+        private Segment(long sequence, File file, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package com.splendor.notes.thread.delay;
 
+import com.splendor.notes.thread.reactor.HasResourceInfo;
 import com.splendor.notes.thread.reactor.TaskProcessor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @Author splendor.s
@@ -19,31 +28,220 @@ public class SyncDelayQueue extends DelayQueue<HasResourceDto> {
     @Resource
     private TaskProcessor taskProcessor;
 
+    /**
+     * 延迟数据存储类型：heap-DelayQueue实现，wheel-分层时间轮实现
+     */
+    @Value("${delay.queue.type:wheel}")
+    private String delayQueueType;
+
+    /**
+     * 时间轮时间格精度
+     */
+    @Value("${delay.wheel.tick.millis:10}")
+    private Long wheelTickMillis;
+
+    /**
+     * 时间轮每层时间格数量
+     */
+    @Value("${delay.wheel.size:512}")
+    private Integer wheelSize;
+
+    /**
+     * 消费线程数
+     */
+    @Value("${delay.consumer.parallelism:2}")
+    private Integer parallelism;
+
+    /**
+     * 单次批量重试的最大条数
+     */
+    @Value("${delay.retry.batch.size:200}")
+    private Integer retryBatchSize;
+
+    /**
+     * 最大重试次数，超过后丢弃
+     */
+    @Value("${delay.retry.max.attempts:8}")
+    private Integer maxAttempts;
+
+    /**
+     * 重试退避基数，第n次重试等待 base * 2^n
+     */
+    @Value("${delay.retry.base.backoff.millis:1000}")
+    private Long baseBackoffMillis;
+
+    /**
+     * 重试退避上限
+     */
+    @Value("${delay.retry.max.backoff.millis:300000}")
+    private Long maxBackoffMillis;
+
+    /**
+     * 是否持久化待重试数据，开启后重启不丢失
+     */
+    @Value("${delay.persist.enabled:false}")
+    private Boolean persistEnabled;
+
+    /**
+     * 持久化日志目录
+     */
+    @Value("${delay.persist.dir:data/delay}")
+    private String persistDir;
+
+    /**
+     * 持久化日志单个分段大小
+     */
+    @Value("${delay.persist.segment.mb:64}")
+    private Integer persistSegmentMb;
+
+    /**
+     * 持久化日志压缩间隔
+     */
+    @Value("${delay.persist.compact.interval.seconds:60}")
+    private Long persistCompactIntervalSeconds;
+
+    /**
+     * 最老分段存活数据占比不高于该值时搬迁后删除
+     */
+    @Value("${delay.persist.compact.ratio:0.25}")
+    private Double persistCompactRatio;
+
+    /**
+     * 关闭时等待消费线程处理完当前批次的最长时间，之后再关闭存储
+     */
+    @Value("${delay.shutdown.await.millis:5000}")
+    private Long shutdownAwaitMillis;
+
     @Override
     @PostConstruct
     public void init() {
         String threadName = "医生有号提醒数据同步重试";
-        super.init(threadName);
-        super.executorService.submit(this);
+        super.init(threadName, createDelayStore(), parallelism);
     }
 
+    private DelayStore<HasResourceDto> createDelayStore() {
+        if (!persistEnabled) {
+            return DelayStore.of(delayQueueType, wheelTickMillis, wheelSize);
+        }
+        SegmentedDelayLog<HasResourceDto> delayLog = new SegmentedDelayLog<>(new File(persistDir),
+                persistSegmentMb << 20, persistCompactRatio, HasResourceDtoCodec.INSTANCE);
+        try {
+            return new PersistentDelayStore<>(DelayStore.of(delayQueueType, wheelTickMillis, wheelSize),
+                    delayLog, persistCompactIntervalSeconds);
+        } catch (IOException e) {
+            throw new IllegalStateException("重放延迟队列持久化日志失败，目录：" + persistDir, e);
+        }
+    }
+
+    /**
+     * 消费线程持续运行：阻塞等到第一条到期数据后，将其余已到期数据一次取出批量重试
+     */
     @Override
     public void run() {
-        if(!super.isClose.get()){
-            HasResourceDto hasReource = null;
+        List<HasResourceDto> batch = new ArrayList<>(retryBatchSize);
+        while (!super.isClose.get()) {
             try {
-                DelayedWrapper<HasResourceDto> delayedWrapper = super.queue.take();
-                hasReource = delayedWrapper.get();
-                taskProcessor.process(hasReource.getHasResourceInfo());
+                HasResourceDto first = super.queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                super.queue.drainTo(batch, retryBatchSize - 1);
+                retry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             } catch (Exception e) {
-                log.error("监控数据同步失败，错误信息为：{}" , e.getMessage() );
+                log.error("监控数据同步失败，条数：{}", batch.size(), e);
+            } finally {
+                batch.clear();
             }
         }
     }
 
+    private void retry(List<HasResourceDto> batch) {
+        List<HasResourceInfo> infos = new ArrayList<>(batch.size());
+        for (HasResourceDto dto : batch) {
+            infos.add(dto.getHasResourceInfo());
+        }
+        TaskProcessor.ProcessingResult result;
+        try {
+            result = taskProcessor.process(infos);
+        } catch (Exception e) {
+            log.error("监控数据批量同步异常，条数：{}", batch.size(), e);
+            result = TaskProcessor.ProcessingResult.TransientError;
+        }
+        switch (result) {
+            case Success:
+                super.queue.ack(batch);
+                break;
+            case Congestion:
+            case TransientError:
+                reenqueue(batch);
+                break;
+            default:
+                log.warn("监控数据同步永久失败，丢弃{}条数据", batch.size());
+                super.queue.ack(batch);
+                break;
+        }
+    }
+
+    /**
+     * 逐条重新放入延迟队列，只确认已重新放入（或超过重试次数丢弃）的原数据
+     * 单条放入失败不影响其余数据；放入失败的原数据不确认，开启持久化时重启后再次投递
+     */
+    private void reenqueue(List<HasResourceDto> batch) {
+        List<HasResourceDto> reenqueued = new ArrayList<>(batch.size());
+        for (HasResourceDto dto : batch) {
+            try {
+                reenqueue(dto);
+                reenqueued.add(dto);
+            } catch (RuntimeException e) {
+                log.error("监控数据重新放入延迟队列失败：{}", dto.getHasResourceInfo(), e);
+            }
+        }
+        super.queue.ack(reenqueued);
+    }
+
+    /**
+     * 按指数退避重新放入延迟队列，超过最大重试次数丢弃
+     */
+    private void reenqueue(HasResourceDto dto) {
+        int attempts = dto.getAttempts() + 1;
+        if (attempts >= maxAttempts) {
+            log.error("监控数据同步重试{}次仍失败，丢弃：{}", attempts, dto.getHasResourceInfo());
+            return;
+        }
+        HasResourceDto next = HasResourceDto.builder()
+                .hasResourceInfo(dto.getHasResourceInfo())
+                .attempts(attempts)
+                .build();
+        long backoff = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempts, 30));
+        //一半固定一半随机，避免故障恢复时大量重试同时到期
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        super.queue.add(next, delay, TimeUnit.MILLISECONDS);
+    }
+
     @PreDestroy
     @Override
     public void shutdown() {
         super.shutdown();
+        //消费线程最多1秒后发现关闭标记退出，等其处理完当前批次并确认后再关闭存储，避免关闭后再写入日志
+        if (super.executorService != null) {
+            try {
+                if (!super.executorService.awaitTermination(shutdownAwaitMillis, TimeUnit.MILLISECONDS)) {
+                    log.warn("延迟队列消费线程{}毫秒内未退出，未确认的数据将在重启后重新投递", shutdownAwaitMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (super.queue instanceof Closeable) {
+            try {
+                ((Closeable) super.queue).close();
+            } catch (IOException e) {
+                log.warn("关闭延迟队列存储失败", e);
+            }
+        }
     }
 }
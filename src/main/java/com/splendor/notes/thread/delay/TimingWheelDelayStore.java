@@ -0,0 +1,392 @@
+package com.splendor.notes.thread.delay;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/18 10:30
+ * @Description 分层时间轮延迟数据存储
+ * 数据按到期时间挂到对应时间格的双向链表上，插入和取消均为O(1)；超出本层范围的数据放入上一层时间轮，
+ * 上层时间格到期后降级重新插入下层。只有非空时间格进入DelayQueue，堆的规模与时间格数量相关而与数据量无关
+ */
+public class TimingWheelDelayStore<T> implements DelayStore<T> {
+
+    /**
+     * 取数据时单次等待时间格到期的最长时间
+     */
+    private static final long MAX_WAIT_MILLIS = 200;
+
+    /**
+     * 时钟起点，保证基于nanoTime换算的毫秒时间为正数
+     */
+    private static final long CLOCK_ORIGIN_NANOS = System.nanoTime();
+
+    private final TimingWheel<T> timingWheel;
+
+    private final java.util.concurrent.DelayQueue<Bucket<T>> bucketQueue = new java.util.concurrent.DelayQueue<>();
+
+    /**
+     * 已到期待取出的数据
+     */
+    private final ConcurrentLinkedQueue<Entry<T>> readyQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 有数据直接进入readyQueue时放入bucketQueue的唤醒信号，让等待中的取数据线程立即返回
+     */
+    private final Bucket<T> readySignal = new Bucket<>(-1);
+    private final AtomicBoolean readySignalQueued = new AtomicBoolean(false);
+
+    /**
+     * 插入时读锁，推进时钟时写锁，避免推进过程中插入到已过期的时间格
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 同一时刻只允许一个取数据线程推进时钟，避免时间格被取出后、清空前被其他线程推进时钟复用
+     */
+    private final ReentrantLock advanceLock = new ReentrantLock();
+
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    /**
+     * @param tickMillis 时间格精度（毫秒）
+     * @param wheelSize 每层时间格数量
+     */
+    public TimingWheelDelayStore(long tickMillis, int wheelSize) {
+        this.timingWheel = new TimingWheel<>(Math.max(1, tickMillis), Math.max(2, wheelSize), clockMillis(), 0, bucketQueue);
+    }
+
+    @Override
+    public DelayTimeout add(T data, long delay, TimeUnit timeUnit) {
+        Entry<T> entry = new Entry<>(data, clockMillis() + timeUnit.toMillis(delay), size);
+        size.incrementAndGet();
+        if (delay <= 0) {
+            //无需延迟，直接放入readyQueue
+            offerReady(entry);
+            return entry;
+        }
+        lock.readLock().lock();
+        try {
+            addEntry(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return entry;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        T data;
+        while ((data = pollReady()) == null) {
+            advanceClock(MAX_WAIT_MILLIS);
+        }
+        return data;
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        long deadline = clockMillis() + timeUnit.toMillis(timeout);
+        T data;
+        while ((data = pollReady()) == null) {
+            long remaining = deadline - clockMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            advanceClock(Math.min(remaining, MAX_WAIT_MILLIS));
+        }
+        return data;
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> collection, int maxElements) {
+        int count = 0;
+        //readyQueue取空后再推进时钟，直到取满或没有新的到期数据
+        while (count < maxElements) {
+            int drained = 0;
+            T data;
+            while (count < maxElements && (data = pollReady()) != null) {
+                collection.add(data);
+                count++;
+                drained++;
+            }
+            if (count >= maxElements) {
+                break;
+            }
+            try {
+                advanceClock(0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (drained == 0 && readyQueue.isEmpty()) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 插入时间轮，已到期的数据直接放入readyQueue
+     */
+    private void addEntry(Entry<T> entry) {
+        if (!timingWheel.add(entry) && !entry.isDone()) {
+            offerReady(entry);
+        }
+    }
+
+    private void offerReady(Entry<T> entry) {
+        readyQueue.offer(entry);
+        if (readySignalQueued.compareAndSet(false, true)) {
+            readySignal.setExpiration(clockMillis());
+            bucketQueue.offer(readySignal);
+        }
+    }
+
+    private T pollReady() {
+        Entry<T> entry;
+        while ((entry = readyQueue.poll()) != null) {
+            if (entry.complete()) {
+                return entry.data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 等待最近的时间格到期，推进时钟并将到期时间格中的数据降级重新插入或放入readyQueue
+     */
+    private void advanceClock(long timeoutMillis) throws InterruptedException {
+        if (!advanceLock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return;
+        }
+        try {
+            //等锁期间其他线程可能已推进时钟
+            if (!readyQueue.isEmpty()) {
+                return;
+            }
+            Bucket<T> bucket = timeoutMillis > 0
+                    ? bucketQueue.poll(timeoutMillis, TimeUnit.MILLISECONDS) : bucketQueue.poll();
+            if (bucket == null) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                while (bucket != null) {
+                    if (bucket == readySignal) {
+                        readySignalQueued.set(false);
+                    } else {
+                        timingWheel.advanceClock(bucket.getExpiration());
+                        bucket.flush(this::addEntry);
+                    }
+                    bucket = bucketQueue.poll();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            advanceLock.unlock();
+        }
+    }
+
+    private static long clockMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - CLOCK_ORIGIN_NANOS);
+    }
+
+    /**
+     * 单层时间轮，overflowWheel为上一层，精度为本层的总跨度
+     * 最底层时间格在格子结束时到期，保证数据不会提前取出；上层时间格在格子开始时到期，以便及时降级到下层
+     */
+    private static class TimingWheel<T> {
+        private final long tickMillis;
+        private final int wheelSize;
+        private final long interval;
+        private final Bucket<T>[] buckets;
+        private final int level;
+        private final java.util.concurrent.DelayQueue<Bucket<T>> bucketQueue;
+        private long currentTime;
+        private volatile TimingWheel<T> overflowWheel;
+
+        @SuppressWarnings("unchecked")
+        private TimingWheel(long tickMillis, int wheelSize, long startMillis, int level,
+                            java.util.concurrent.DelayQueue<Bucket<T>> bucketQueue) {
+            this.tickMillis = tickMillis;
+            this.level = level;
+            this.wheelSize = wheelSize;
+            this.interval = tickMillis * wheelSize;
+            this.bucketQueue = bucketQueue;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket<>(level);
+            }
+            this.currentTime = startMillis - (startMillis % tickMillis);
+        }
+
+        /**
+         * @return false表示数据已到期或已取消，未插入
+         */
+        private boolean add(Entry<T> entry) {
+            long expiration = entry.expirationMillis;
+            if (entry.isDone()) {
+                return false;
+            } else if (expiration < currentTime + tickMillis && expiration <= clockMillis()) {
+                return false;
+            } else if (expiration < currentTime + interval) {
+                long virtualId = expiration / tickMillis;
+                Bucket<T> bucket = buckets[(int) (virtualId % wheelSize)];
+                bucket.add(entry);
+                //时间格被复用为新的到期时间时才需要重新入队
+                if (bucket.setExpiration((level == 0 ? virtualId + 1 : virtualId) * tickMillis)) {
+                    bucketQueue.offer(bucket);
+                }
+                return true;
+            } else {
+                if (overflowWheel == null) {
+                    addOverflowWheel();
+                }
+                return overflowWheel.add(entry);
+            }
+        }
+
+        private synchronized void addOverflowWheel() {
+            if (overflowWheel == null) {
+                overflowWheel = new TimingWheel<>(interval, wheelSize, currentTime, level + 1, bucketQueue);
+            }
+        }
+
+        private void advanceClock(long timeMillis) {
+            if (timeMillis >= currentTime + tickMillis) {
+                currentTime = timeMillis - (timeMillis % tickMillis);
+                if (overflowWheel != null) {
+                    overflowWheel.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * 时间格：带哨兵的双向链表
+     */
+    private static class Bucket<T> implements Delayed {
+        private final AtomicLong expiration = new AtomicLong(-1);
+        private final Entry<T> root = new Entry<>(null, -1, null);
+        private final int level;
+
+        private Bucket(int level) {
+            this.level = level;
+            root.next = root;
+            root.prev = root;
+        }
+
+        private boolean setExpiration(long expirationMillis) {
+            return expiration.getAndSet(expirationMillis) != expirationMillis;
+        }
+
+        private long getExpiration() {
+            return expiration.get();
+        }
+
+        private synchronized void add(Entry<T> entry) {
+            Entry<T> tail = root.prev;
+            entry.next = root;
+            entry.prev = tail;
+            entry.bucket = this;
+            tail.next = entry;
+            root.prev = entry;
+        }
+
+        private synchronized void remove(Entry<T> entry) {
+            if (entry.bucket == this) {
+                entry.next.prev = entry.prev;
+                entry.prev.next = entry.next;
+                entry.next = null;
+                entry.prev = null;
+                entry.bucket = null;
+            }
+        }
+
+        /**
+         * 取出全部数据交给reinsert重新插入，并重置到期时间以便时间格复用
+         */
+        private synchronized void flush(java.util.function.Consumer<Entry<T>> reinsert) {
+            Entry<T> head = root.next;
+            while (head != root) {
+                remove(head);
+                reinsert.accept(head);
+                head = root.next;
+            }
+            expiration.set(-1);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(getExpiration() - clockMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 到期时间相同时下层优先，保证下层同一位置的旧时间格先于上层降级的数据被清空
+         */
+        @Override
+        public int compareTo(Delayed o) {
+            Bucket other = (Bucket) o;
+            int result = Long.compare(getExpiration(), other.getExpiration());
+            return result != 0 ? result : Integer.compare(level, other.level);
+        }
+    }
+
+    /**
+     * 时间格中的数据节点，同时作为取消句柄；取消与到期取出通过done竞争，保证只会发生其一
+     */
+    private static class Entry<T> implements DelayTimeout {
+        private final T data;
+        private final long expirationMillis;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private final AtomicInteger size;
+        private volatile Bucket<T> bucket;
+        private Entry<T> next;
+        private Entry<T> prev;
+
+        private Entry(T data, long expirationMillis, AtomicInteger size) {
+            this.data = data;
+            this.expirationMillis = expirationMillis;
+            this.size = size;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!complete()) {
+                return false;
+            }
+            //节点可能正在时间格之间迁移，此时摘不下来，重新插入时会因已完成被丢弃
+            Bucket<T> current = bucket;
+            if (current != null) {
+                current.remove(this);
+            }
+            return true;
+        }
+
+        private boolean complete() {
+            if (done.compareAndSet(false, true)) {
+                size.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isDone() {
+            return done.get();
+        }
+    }
+}
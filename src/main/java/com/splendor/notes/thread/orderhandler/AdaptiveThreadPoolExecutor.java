@@ -0,0 +1,259 @@
+package com.splendor.notes.thread.orderhandler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/20 上午10:15
+ * 自适应线程池：线程池满时任务进入有界溢出队列，任一任务执行完即把溢出队列中的任务补入线程池，不再按固定频率逐条补入；
+ * 定时根据排队等待时间和线程利用率调整核心线程数，并按名称导出排队等待、执行耗时直方图及线程池状态
+ */
+@Slf4j
+public class AdaptiveThreadPoolExecutor extends ThreadPoolExecutor {
+
+    /**
+     * 线程利用率高于该值且有积压时扩容
+     */
+    private static final double BUSY_UTILIZATION = 0.9;
+
+    /**
+     * 线程利用率低于该值且无积压时缩容
+     */
+    private static final double IDLE_UTILIZATION = 0.5;
+
+    private final String name;
+
+    private final int minPoolSize;
+
+    private final int maxPoolSize;
+
+    private final long targetWaitNanos;
+
+    /**
+     * 线程池满时的有界溢出队列
+     */
+    private final BlockingDeque<Runnable> overflowQueue;
+
+    /**
+     * 溢出队列也满时的回调，参数为原始任务
+     */
+    private final Consumer<Runnable> rejectedListener;
+
+    private final Timer queueWaitTimer;
+
+    private final Timer runTimer;
+
+    private final Counter rejectedCounter;
+
+    /**
+     * 上一个调整周期内的排队等待总时长与任务数
+     */
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder waitCount = new LongAdder();
+
+    private final ScheduledExecutorService tuner;
+
+    /**
+     * @param name 线程池名称，用作线程名前缀和指标标签
+     * @param minPoolSize 最小核心线程数
+     * @param maxPoolSize 最大线程数
+     * @param workQueueSize 线程池工作队列大小
+     * @param overflowQueueSize 溢出队列大小
+     * @param targetWaitMillis 目标排队等待时间，超过则扩容
+     * @param tuneIntervalMillis 调整周期
+     * @param meterRegistry 指标注册
+     * @param rejectedListener 溢出队列也满时的回调
+     */
+    public AdaptiveThreadPoolExecutor(String name, int minPoolSize, int maxPoolSize, int workQueueSize,
+                                      int overflowQueueSize, long targetWaitMillis, long tuneIntervalMillis,
+                                      MeterRegistry meterRegistry, Consumer<Runnable> rejectedListener) {
+        this(name, minPoolSize, maxPoolSize, workQueueSize, overflowQueueSize, targetWaitMillis, tuneIntervalMillis,
+                meterRegistry, rejectedListener, threadFactory(name));
+    }
+
+    /**
+     * @param threadFactory 工作线程创建方式，可传入虚拟线程工厂
+     */
+    public AdaptiveThreadPoolExecutor(String name, int minPoolSize, int maxPoolSize, int workQueueSize,
+                                      int overflowQueueSize, long targetWaitMillis, long tuneIntervalMillis,
+                                      MeterRegistry meterRegistry, Consumer<Runnable> rejectedListener,
+                                      ThreadFactory threadFactory) {
+        super(minPoolSize, Math.max(minPoolSize, maxPoolSize), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(workQueueSize), threadFactory, new AbortPolicy());
+        this.name = name;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = Math.max(minPoolSize, maxPoolSize);
+        this.targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(targetWaitMillis);
+        this.overflowQueue = new LinkedBlockingDeque<>(overflowQueueSize);
+        this.rejectedListener = rejectedListener;
+        setRejectedExecutionHandler((r, executor) -> overflow(r));
+        prestartAllCoreThreads();
+
+        this.queueWaitTimer = Timer.builder("order.executor.queue.wait")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("order.executor.run")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("order.executor.rejected").tag("name", name).register(meterRegistry);
+        Gauge.builder("order.executor.pool.size", this, ThreadPoolExecutor::getPoolSize).tag("name", name).register(meterRegistry);
+        Gauge.builder("order.executor.core.size", this, ThreadPoolExecutor::getCorePoolSize).tag("name", name).register(meterRegistry);
+        Gauge.builder("order.executor.active", this, ThreadPoolExecutor::getActiveCount).tag("name", name).register(meterRegistry);
+        Gauge.builder("order.executor.queue.size", this, e -> e.getQueue().size()).tag("name", name).register(meterRegistry);
+        Gauge.builder("order.executor.overflow.size", overflowQueue, Collection::size).tag("name", name).register(meterRegistry);
+
+        this.tuner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tuner.scheduleWithFixedDelay(this::tune, tuneIntervalMillis, tuneIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command instanceof TimedTask ? command : new TimedTask(command));
+    }
+
+    /**
+     * 任务执行完说明线程池空出了容量，立即从溢出队列补入
+     */
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        drainOverflow();
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+        tuner.shutdownNow();
+    }
+
+    /**
+     * 溢出队列，关闭线程池后可据此查看未处理的任务数
+     *
+     * @return
+     */
+    public BlockingDeque<Runnable> getOverflowQueue() {
+        return overflowQueue;
+    }
+
+    private void overflow(Runnable task) {
+        if (isShutdown() || !overflowQueue.offer(task)) {
+            reject(task);
+            return;
+        }
+        //放入溢出队列的同时线程池可能已空出容量
+        drainOverflow();
+    }
+
+    /**
+     * 线程池工作队列有空位时，把溢出队列中的任务按先后顺序移入
+     */
+    private void drainOverflow() {
+        if (isShutdown()) {
+            return;
+        }
+        Runnable task;
+        while (getQueue().remainingCapacity() > 0 && (task = overflowQueue.poll()) != null) {
+            if (!getQueue().offer(task)) {
+                //并发提交抢占了空位，放回队首等待下次补入
+                if (!overflowQueue.offerFirst(task)) {
+                    reject(task);
+                }
+                return;
+            }
+        }
+    }
+
+    private void reject(Runnable task) {
+        rejectedCounter.increment();
+        Runnable original = task instanceof TimedTask ? ((TimedTask) task).task : task;
+        log.warn("{}线程池与溢出队列均已满，拒绝任务：{}", name, original);
+        rejectedListener.accept(original);
+    }
+
+    /**
+     * 排队等待超过目标值，或有积压且线程基本全忙时扩容；等待远低于目标、无积压且线程较空闲时逐个缩容
+     */
+    private void tune() {
+        try {
+            drainOverflow();
+            long count = waitCount.sumThenReset();
+            long total = waitNanos.sumThenReset();
+            long avgWaitNanos = count == 0 ? 0 : total / count;
+            int coreSize = getCorePoolSize();
+            double utilization = (double) getActiveCount() / Math.max(1, getPoolSize());
+            boolean backlog = !getQueue().isEmpty() || !overflowQueue.isEmpty();
+            int newCoreSize = coreSize;
+            if ((avgWaitNanos > targetWaitNanos || (backlog && utilization >= BUSY_UTILIZATION)) && coreSize < maxPoolSize) {
+                newCoreSize = Math.min(maxPoolSize, coreSize + Math.max(1, coreSize / 2));
+            } else if (avgWaitNanos < targetWaitNanos / 4 && !backlog && utilization < IDLE_UTILIZATION && coreSize > minPoolSize) {
+                newCoreSize = coreSize - 1;
+            }
+            if (newCoreSize != coreSize) {
+                setCorePoolSize(newCoreSize);
+                log.info("{}线程池核心线程数调整：{} -> {}，平均排队等待{}ms，利用率{}", name, coreSize, newCoreSize,
+                        TimeUnit.NANOSECONDS.toMillis(avgWaitNanos), String.format("%.2f", utilization));
+            }
+        } catch (Throwable e) {
+            log.error("{}线程池调整失败", name, e);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger index = new AtomicInteger(0);
+        return r -> new Thread(r, name + "-" + index.getAndIncrement());
+    }
+
+    /**
+     * 记录提交时间，执行时统计排队等待（包括在溢出队列中的时间）和执行耗时
+     */
+    private class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long submitNanos = System.nanoTime();
+
+        private TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            long wait = start - submitNanos;
+            queueWaitTimer.record(wait, TimeUnit.NANOSECONDS);
+            waitNanos.add(wait);
+            waitCount.increment();
+            try {
+                task.run();
+            } finally {
+                runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.splendor.notes.thread.orderhandler;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.splendor.notes.thread.reactor.WorkerThreadFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import java.util.Queue;
-import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author splendor.s
@@ -19,13 +25,39 @@ public class TestThreadPoolManager implements BeanFactoryAware {
     private BeanFactory factory; //如果实现Runnable的类是通过spring的application.xml文件进行注入,可通过 factory.getBean()获取，这里只是提一下
 
     // 线程池维护线程的最少数量
-    private final static int CORE_POOL_SIZE = 2;
+    @Value("${order.pool.min.size:2}")
+    private int minPoolSize;
     // 线程池维护线程的最大数量
-    private final static int MAX_POOL_SIZE = 10;
-    // 线程池维护线程所允许的空闲时间
-    private final static int KEEP_ALIVE_TIME = 0;
+    @Value("${order.pool.max.size:10}")
+    private int maxPoolSize;
     // 线程池所使用的缓冲队列大小
-    private final static int WORK_QUEUE_SIZE = 50;
+    @Value("${order.pool.queue.size:50}")
+    private int workQueueSize;
+    // 线程池满时订单溢出队列大小，溢出队列也满时拒绝订单
+    @Value("${order.overflow.size:10000}")
+    private int overflowQueueSize;
+    // 目标排队等待时间，超过则扩容
+    @Value("${order.pool.target.wait.millis:100}")
+    private long targetWaitMillis;
+    // 线程数调整周期
+    @Value("${order.pool.tune.interval.millis:1000}")
+    private long tuneIntervalMillis;
+    // 订单去重的保留时间
+    @Value("${order.dedup.expire.seconds:600}")
+    private long dedupExpireSeconds;
+    // 订单去重最多保留的订单数
+    @Value("${order.dedup.maximum.size:100000}")
+    private long dedupMaximumSize;
+
+    // 工作线程类型：platform-平台线程，virtual-虚拟线程（需Java 21+，否则回退为平台线程）
+    @Value("${order.pool.thread.type:platform}")
+    private String threadType;
+    // 虚拟线程模式下的最大线程数，订单处理大部分时间阻塞在下游IO上，可远大于平台线程数
+    @Value("${order.virtual.max.size:1000}")
+    private int virtualMaxPoolSize;
+
+    @Resource
+    private MeterRegistry meterRegistry;
 
     @Override
     public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
@@ -33,80 +65,56 @@ public class TestThreadPoolManager implements BeanFactoryAware {
     }
 
     /**
-     * 用于储存在队列中的订单,防止重复提交,在真实场景中，可用redis代替 验证重复
+     * 最近提交过的订单,防止重复提交,按时间和数量淘汰,在真实场景中，可用redis代替 验证重复
      */
-    Map<String, Object> cacheMap = new ConcurrentHashMap<>();
-
-
-    /**
-     * 订单的缓冲队列,当线程池满了，则将订单存入到此缓冲队列
-     */
-    Queue<Object> msgQueue = new LinkedBlockingQueue<Object>();
-
+    Cache<String, Boolean> recentOrders;
 
     /**
-     * 当线程池的容量满了，执行下面代码，将订单存入到缓冲队列
+     * 订单线程池，线程池满了则将订单存入到有界溢出队列，线程池空出容量时立即补入
      */
-    final RejectedExecutionHandler handler = new RejectedExecutionHandler() {
-        @Override
-        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-            //订单加入到缓冲队列
-            msgQueue.offer(((BusinessThread) r).getAcceptStr());
-            System.out.println("系统任务太忙了,把此订单交给(调度线程池)逐一处理，订单号：" + ((BusinessThread) r).getAcceptStr());
-        }
-    };
-
-    /**创建线程池*/
-    final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(CORE_POOL_SIZE, MAX_POOL_SIZE, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new ArrayBlockingQueue(WORK_QUEUE_SIZE), this.handler);
-
+    AdaptiveThreadPoolExecutor threadPool;
+
+    @PostConstruct
+    public void init() {
+        recentOrders = Caffeine.newBuilder()
+                .maximumSize(dedupMaximumSize)
+                .expireAfterWrite(dedupExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        WorkerThreadFactory threadFactory = WorkerThreadFactory.of(threadType, "order-handler");
+        threadPool = new AdaptiveThreadPoolExecutor("order-handler", minPoolSize,
+                threadFactory.isVirtual() ? virtualMaxPoolSize : maxPoolSize, workQueueSize, overflowQueueSize,
+                targetWaitMillis, tuneIntervalMillis, meterRegistry, this::rejected, threadFactory.named("order-handler"));
+    }
 
     /**将任务加入订单线程池*/
-    public void addOrders(String orderId){
+    public boolean addOrders(String orderId){
         System.out.println("此订单准备添加到线程池，订单号：" + orderId);
-        //验证当前进入的订单是否已经存在，公众号：Java精选
-        if (cacheMap.get(orderId) == null) {
-            cacheMap.put(orderId, new Object());
-            BusinessThread businessThread = new BusinessThread(orderId);
-            threadPool.execute(businessThread);
+        //验证当前进入的订单是否已经存在
+        if (recentOrders.asMap().putIfAbsent(orderId, Boolean.TRUE) != null) {
+            return false;
         }
+        BusinessThread businessThread = new BusinessThread(orderId);
+        threadPool.execute(businessThread);
+        return true;
     }
 
     /**
-     * 线程池的定时任务----> 称为(调度线程池)。此线程池支持 定时以及周期性执行任务的需求。
-     */
-    final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(5);
-
-    /**
-     * 检查(调度线程池)，每秒执行一次，查看订单的缓冲队列是否有 订单记录，则重新加入到线程池
+     * 线程池与溢出队列都满了，放弃该订单并移出去重记录，允许稍后重新提交
      */
-    final ScheduledFuture scheduledFuture = scheduler.scheduleAtFixedRate(new Runnable() {
-        @Override
-        public void run() {
-            //判断缓冲队列是否存在记录
-            if(!msgQueue.isEmpty()){
-                //当线程池的队列容量少于WORK_QUEUE_SIZE，则开始把缓冲队列的订单 加入到 线程池
-                if (threadPool.getQueue().size() < WORK_QUEUE_SIZE) {
-                    String orderId = (String) msgQueue.poll();
-                    BusinessThread businessThread = new BusinessThread(orderId);
-                    threadPool.execute(businessThread);
-                    System.out.println("(调度线程池)缓冲队列出现订单业务，重新添加到线程池，订单号："+orderId);
-                }
-            }
-        }
-    }, 0, 1, TimeUnit.SECONDS);
-
+    private void rejected(Runnable r) {
+        String orderId = ((BusinessThread) r).getAcceptStr();
+        recentOrders.invalidate(orderId);
+        System.out.println("系统任务太忙了,订单被拒绝，订单号：" + orderId);
+    }
 
     /**获取消息缓冲队列*/
-    public Queue<Object> getMsgQueue() {
-        return msgQueue;
+    public Queue<Runnable> getMsgQueue() {
+        return threadPool.getOverflowQueue();
     }
 
-    /**终止订单线程池+调度线程池*/
+    /**终止订单线程池*/
     public void shutdown() {
-        //true表示如果定时任务在执行，立即中止，false则等待任务结束后再停止
-        System.out.println("终止订单线程池+调度线程池："+scheduledFuture.cancel(false));
-        scheduler.shutdown();
+        System.out.println("终止订单线程池，溢出队列剩余订单数：" + threadPool.getOverflowQueue().size());
         threadPool.shutdown();
-
     }
 }
@@ -1,18 +1,20 @@
 package com.splendor.notes.thread.reactor;
 
 import com.splendor.notes.infrastructure.util.constant.assembly.ConsumerAssembly;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * @Author splendor.s
  * @create 2022/9/27 21:29
  */
 @Slf4j
-public class AcceptorExecutor<ID, T> {
+public class AcceptorExecutor<ID, T> implements TaskDispatcher<ID, T> {
 
     private AtomicBoolean isShutdown = new AtomicBoolean(false);
     private final BlockingDeque<TaskHolder<ID, T>> acceptorQueue = new LinkedBlockingDeque<>();
@@ -52,9 +54,69 @@ public class AcceptorExecutor<ID, T> {
 
     private final TrafficShaper trafficShaper;
 
+    private final AdaptiveBatchSizer batchSizer;
+
+    private final DispatcherBackpressure backpressure;
+
+    private final ReactorMetrics metrics;
+
+    /**
+     * 按ID串行处理时跟踪已交付未完成的ID
+     */
+    private final InFlightTracker<ID> inFlight;
+
+    /**
+     * 任务离开分发器时的回调，默认空操作
+     */
+    private volatile Consumer<ID> releaseListener = id -> { };
+
+    /**
+     * 待办任务数量，由分发线程更新，供生产者判断积压
+     */
+    private volatile int pendingCount;
+
     private Integer index;
 
     public AcceptorExecutor(Integer index, String name, Integer flushMsgSize, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime) {
+        this(index, name, flushMsgSize, flushMsgSize, 0L, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                new DispatcherBackpressure(index, OverflowPolicy.EVICT_OLDEST, 0));
+    }
+
+    public AcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                            DispatcherBackpressure backpressure) {
+        this(index, name, flushMinSize, flushMsgSize, flushTargetLatency, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                backpressure, new TrafficShaper(serverCongestionTime, retrySleepTime));
+    }
+
+    /**
+     * @param trafficShaper 下游限流器，同一下游的所有队列共享
+     */
+    public AcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                            DispatcherBackpressure backpressure, TrafficShaper trafficShaper) {
+        this(index, name, flushMinSize, flushMsgSize, flushTargetLatency, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                backpressure, trafficShaper, ReactorMetrics.noop(index, backpressure), false);
+    }
+
+    /**
+     * @param meterRegistry 指标注册，队列深度、分发耗时等指标按队列编号导出
+     */
+    public AcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                            DispatcherBackpressure backpressure, TrafficShaper trafficShaper, MeterRegistry meterRegistry) {
+        this(index, name, flushMinSize, flushMsgSize, flushTargetLatency, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                backpressure, trafficShaper, meterRegistry, false);
+    }
+
+    /**
+     * @param orderedPerId 是否按ID串行处理：同一ID同时最多一个任务在处理，处理期间的更新合并为最新版本，完成后再分发
+     */
+    public AcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                            DispatcherBackpressure backpressure, TrafficShaper trafficShaper, MeterRegistry meterRegistry, boolean orderedPerId) {
+        this(index, name, flushMinSize, flushMsgSize, flushTargetLatency, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                backpressure, trafficShaper, new ReactorMetrics(meterRegistry, index, backpressure), orderedPerId);
+    }
+
+    private AcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                             DispatcherBackpressure backpressure, TrafficShaper trafficShaper, ReactorMetrics metrics, boolean orderedPerId) {
         this.index = index;
         this.name = name;
         this.flushMsgSize = flushMsgSize;
@@ -62,7 +124,18 @@ public class AcceptorExecutor<ID, T> {
         this.maxBufferSize = maxBufferSize;
         this.retrySleepTime = retrySleepTime;
         this.serverCongestionTime = serverCongestionTime;
-        this.trafficShaper = new TrafficShaper(serverCongestionTime, retrySleepTime);
+        this.trafficShaper = trafficShaper;
+        this.batchSizer = new AdaptiveBatchSizer(flushMinSize, flushMsgSize, flushTargetLatency);
+        this.backpressure = backpressure;
+        this.metrics = metrics;
+        this.inFlight = new InFlightTracker<>(orderedPerId);
+        metrics.queueDepth("acceptor", acceptorQueue::size);
+        metrics.queueDepth("reprocess", reprocessQueue::size);
+        metrics.queueDepth("pending", () -> pendingCount);
+        metrics.queueDepth("work", () -> singleItemWorkQueue.size() + batchWorkQueue.size());
+        if (orderedPerId) {
+            metrics.queueDepth("inflight", inFlight::size);
+        }
         ThreadGroup threadGroup = new ThreadGroup(ConsumerAssembly.ACCEPTOR_THREAD_GROUP);
         this.acceptorThread = new Thread(threadGroup, new AcceptorExecutor.AcceptorRunner(), "TaskAcceptor-" + index);
         this.acceptorThread.setDaemon(true);
@@ -76,8 +149,18 @@ public class AcceptorExecutor<ID, T> {
      * @param expiryTime
      * @param submitTimestamp
      */
-    void process(ID id, T task, long expiryTime, long submitTimestamp){
-        acceptorQueue.add(new TaskHolder<>(id, task, expiryTime, submitTimestamp));
+    @Override
+    public Processor.AcceptResult process(ID id, T task, long expiryTime, long submitTimestamp){
+        //关闭后分发线程不再消费，任务入队后既不会处理也不会回调释放
+        if (isShutdown.get()) {
+            backpressure.recordRejected();
+            return Processor.AcceptResult.Rejected;
+        }
+        Processor.AcceptResult result = backpressure.admit(maxBufferSize, () -> acceptorQueue.size() + pendingCount, isShutdown);
+        if (result != Processor.AcceptResult.Rejected) {
+            acceptorQueue.add(new TaskHolder<>(id, task, expiryTime, submitTimestamp));
+        }
+        return result;
     }
 
     /**
@@ -85,8 +168,10 @@ public class AcceptorExecutor<ID, T> {
      * @param holders
      * @param processingResult
      */
-    void reprocess(List<TaskHolder<ID, T>> holders,TaskProcessor.ProcessingResult processingResult) {
+    @Override
+    public void reprocess(List<TaskHolder<ID, T>> holders,TaskProcessor.ProcessingResult processingResult) {
         reprocessQueue.addAll(holders);
+        backpressure.recordRetried(holders.size());
         trafficShaper.registerFailure(processingResult);
     }
 
@@ -96,8 +181,10 @@ public class AcceptorExecutor<ID, T> {
      * @param taskHolder
      * @param processingResult
      */
-    void reprocess(TaskHolder<ID, T> taskHolder, TaskProcessor.ProcessingResult processingResult) {
+    @Override
+    public void reprocess(TaskHolder<ID, T> taskHolder, TaskProcessor.ProcessingResult processingResult) {
         reprocessQueue.add(taskHolder);
+        backpressure.recordRetried(1);
         trafficShaper.registerFailure(processingResult);
     }
 
@@ -105,7 +192,8 @@ public class AcceptorExecutor<ID, T> {
      *
      * @return
      */
-    BlockingQueue<TaskHolder<ID, T>> requestWorkItem() {
+    @Override
+    public BlockingQueue<TaskHolder<ID, T>> requestWorkItem() {
         //释放信号量
         singleItemWorkRequests.release();
         return singleItemWorkQueue;
@@ -115,7 +203,8 @@ public class AcceptorExecutor<ID, T> {
      * 获取批量数据
      * @return
      */
-    BlockingQueue<List<TaskHolder<ID, T>>> requestWorkItems() {
+    @Override
+    public BlockingQueue<List<TaskHolder<ID, T>>> requestWorkItems() {
         //释放信号量
         batchWorkRequests.release();
         return batchWorkQueue;
@@ -129,9 +218,50 @@ public class AcceptorExecutor<ID, T> {
         return reprocessQueue;
     }
 
-    void shutdown() {
+    @Override
+    public void batchCompleted(List<TaskHolder<ID, T>> holders, long costMillis, TaskProcessor.ProcessingResult processingResult) {
+        metrics.completed(holders, processingResult);
+        inFlight.completed(holders);
+        //失败重试的任务已放回重试队列，仍未离开分发器
+        if (processingResult != TaskProcessor.ProcessingResult.Congestion
+                && processingResult != TaskProcessor.ProcessingResult.TransientError) {
+            for (TaskHolder<ID, T> holder : holders) {
+                released(holder.getId());
+            }
+        }
+        trafficShaper.completed(holders.size(), costMillis, processingResult);
+        batchSizer.onBatchCompleted(holders.size(), costMillis, processingResult, trafficShaper.congestionTime());
+    }
+
+    @Override
+    public void onReleased(Consumer<ID> listener) {
+        this.releaseListener = listener;
+    }
+
+    private void released(ID id) {
+        try {
+            releaseListener.accept(id);
+        } catch (Throwable e) {
+            log.error("Release listener error, id={}", id, e);
+        }
+    }
+
+    @Override
+    public DispatcherBackpressure getBackpressure() {
+        return backpressure;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return acceptorQueue.size() + reprocessQueue.size() + pendingCount
+                + singleItemWorkQueue.size() + batchWorkQueue.size();
+    }
+
+    @Override
+    public void shutdown() {
         if (isShutdown.compareAndSet(false, true)) {
             acceptorThread.interrupt();
+            metrics.close();
         }
     }
 
@@ -147,12 +277,17 @@ public class AcceptorExecutor<ID, T> {
 
                     long now = System.currentTimeMillis();
                     if (scheduleTime < now) {
-                        scheduleTime = now + trafficShaper.transmissionDelay();
+                        long delay = trafficShaper.transmissionDelay();
+                        if (delay > 0) {
+                            metrics.shaperDelayed(delay);
+                        }
+                        scheduleTime = now + delay;
                     }
                     if (scheduleTime <= now) {
                         assignBatchWork();
                         assignSingleItemWork();
                     }
+                    pendingCount = pendingTasks.size();
                     if (totalItems == processingOrder.size()) {
                         Thread.sleep(10);
                     }
@@ -163,6 +298,8 @@ public class AcceptorExecutor<ID, T> {
         }
 
         private void drainInputQueues(){
+            //先释放已完成的ID再读取重试队列，保证失败重试的旧任务不会排在同ID更新的任务之后
+            inFlight.release(pendingTasks, processingOrder);
 
             drainReprocessQueue();
 
@@ -176,33 +313,56 @@ public class AcceptorExecutor<ID, T> {
                 TaskHolder<ID, T> taskHolder = reprocessQueue.pollLast();
                 ID id = taskHolder.getId();
                 if (taskHolder.getExpiryTime() <= now) {
-                    //TODO
+                    //已过期，不再重试
+                    backpressure.recordExpired();
+                    released(id);
                 } else if (pendingTasks.containsKey(id)) {
-                    //TODO
+                    //已有同ID的更新任务待处理，丢弃旧任务
+                    backpressure.recordDiscarded();
+                    released(id);
                 } else {
                     pendingTasks.put(id, taskHolder);
-                    processingOrder.addFirst(id);
+                    if (!inFlight.isInFlight(id)) {
+                        processingOrder.addFirst(id);
+                    }
                 }
             }
             if (isFull()) {
-                reprocessQueue.clear();
+                int evicted = 0;
+                TaskHolder<ID, T> taskHolder;
+                while ((taskHolder = reprocessQueue.pollLast()) != null) {
+                    released(taskHolder.getId());
+                    evicted++;
+                }
+                backpressure.recordEvicted(evicted);
             }
         }
 
         private void drainAcceptorQueue(){
             while (!acceptorQueue.isEmpty()){
-                appendDoctorTaskHolder(acceptorQueue.poll());
+                //先计入待办再出队，保证生产者看到的积压数量不会瞬间变小
+                appendDoctorTaskHolder(acceptorQueue.peek());
+                pendingCount = pendingTasks.size();
+                acceptorQueue.poll();
             }
         }
 
         private void appendDoctorTaskHolder(TaskHolder<ID, T> taskHolder){
-            if(isFull()){
-                pendingTasks.remove(processingOrder.poll());
+            //处理中ID的待办不在分发顺序里，不参与淘汰
+            if(isFull() && !processingOrder.isEmpty()){
+                released(pendingTasks.remove(processingOrder.poll()).getId());
+                backpressure.recordEvicted(1);
             }
             TaskHolder<ID, T> previousTask =  pendingTasks.put(taskHolder.getId() , taskHolder);
             if (previousTask == null) {
-                //记录放入队列失败的任务ID
-                processingOrder.add(taskHolder.getId());
+                //记录放入队列失败的任务ID，同ID正在处理时只合并到待办，处理完成后再进入分发顺序
+                if (!inFlight.isInFlight(taskHolder.getId())) {
+                    processingOrder.add(taskHolder.getId());
+                }
+            } else {
+                backpressure.recordDiscarded();
+                metrics.overwritten();
+                released(previousTask.getId());
             }
         }
         private boolean isFull() {
@@ -213,9 +373,16 @@ public class AcceptorExecutor<ID, T> {
     private void assignSingleItemWork() {
         if(!processingOrder.isEmpty()){
             if(singleItemWorkRequests.tryAcquire(1)){
+               //令牌不足时归还工作线程的申请，等待令牌补充
+               if (trafficShaper.tryAcquire(1) == 0) {
+                   singleItemWorkRequests.release();
+                   return;
+               }
                while (!processingOrder.isEmpty()) {
                    ID id =  processingOrder.poll();
                    TaskHolder<ID, T> holder = pendingTasks.remove(id);
+                   metrics.dispatched(holder, System.currentTimeMillis());
+                   inFlight.dispatched(id);
                    //放入队列
                    singleItemWorkQueue.add(holder);
                    return;
@@ -230,19 +397,23 @@ public class AcceptorExecutor<ID, T> {
         if (hasEnoughTasksForNextBatch()){
             //只允许一个线程进入
            if(batchWorkRequests.tryAcquire(1)){
-               //取两者最小值
-               int len = Math.min(flushMsgSize, processingOrder.size());
+               //取两者最小值，并受限于可用令牌
+               int len = trafficShaper.tryAcquire(Math.min(batchSizer.currentSize(), processingOrder.size()));
                List<TaskHolder<ID, T>> holders = new ArrayList<>(len);
                //获取一批待处理的任务
+               long now = System.currentTimeMillis();
                while (holders.size() < len && !processingOrder.isEmpty()) {
                    ID id = processingOrder.poll();
                    TaskHolder<ID, T> holder = pendingTasks.remove(id);
+                   metrics.dispatched(holder, now);
+                   inFlight.dispatched(id);
                    holders.add(holder);
                }
                if (holders.isEmpty()) {
                    //释放信号量
                    batchWorkRequests.release();
                } else {
+                   metrics.batchDispatched(holders.size());
                    //放入队列中
                    batchWorkQueue.add(holders);
                }
@@ -254,7 +425,7 @@ public class AcceptorExecutor<ID, T> {
         if (processingOrder.isEmpty()) {
             return false;
         }
-        if (pendingTasks.size() >= maxBufferSize) {
+        if (pendingTasks.size() >= maxBufferSize || processingOrder.size() >= batchSizer.currentSize()) {
             return true;
         }
         TaskHolder<ID, T> nextHolder = pendingTasks.get(processingOrder.peek());
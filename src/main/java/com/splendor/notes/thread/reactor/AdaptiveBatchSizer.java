@@ -0,0 +1,62 @@
+package com.splendor.notes.thread.reactor;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/16 11:05
+ * @Description 自适应批量大小：下游处理耗时低于目标且批次被填满时逐步放大，耗时超标或出现拥塞/失败时按比例收缩
+ */
+public class AdaptiveBatchSizer {
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final long targetLatencyMs;
+
+    private volatile int currentSize;
+
+    /**
+     * 已经收缩过的拥塞时间，同一次拥塞的退避窗口内后续完成的批次不再重复减半
+     */
+    private long handledCongestionTime = -1;
+
+    AdaptiveBatchSizer(int minSize, int maxSize, long targetLatencyMs) {
+        this.minSize = Math.max(1, Math.min(minSize, maxSize));
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.targetLatencyMs = targetLatencyMs;
+        this.currentSize = this.maxSize;
+    }
+
+    int currentSize() {
+        return currentSize;
+    }
+
+    /**
+     * 根据一次批量处理的结果调整下一批的大小
+     * @param batchSize 本批数量
+     * @param costMillis 本批下游处理耗时
+     * @param result 处理结果
+     * @param congestionTime 流量整形器当前退避窗口对应的拥塞时间，不在拥塞退避中时为-1
+     */
+    synchronized void onBatchCompleted(int batchSize, long costMillis, TaskProcessor.ProcessingResult result, long congestionTime) {
+        int size = currentSize;
+        boolean newCongestion = congestionTime != -1 && congestionTime != handledCongestionTime;
+        if (newCongestion || result == TaskProcessor.ProcessingResult.TransientError
+                || (result == TaskProcessor.ProcessingResult.Congestion && congestionTime == -1)) {
+            //新的拥塞或本批失败：乘性减小，同一次拥塞只减半一次
+            if (newCongestion) {
+                handledCongestionTime = congestionTime;
+            }
+            size = size / 2;
+        } else if (congestionTime != -1) {
+            //已响应过的拥塞仍在退避窗口内：保持当前大小，不增大
+        } else if (targetLatencyMs > 0 && costMillis > targetLatencyMs) {
+            //耗时超标：按目标耗时比例收缩
+            size = (int) Math.min(size - 1, size * targetLatencyMs / costMillis);
+        } else if (batchSize >= size) {
+            //批次被填满且耗时达标：按当前大小的1/4乘性增大（至少加1），尽快回升到能填满的批量
+            size = size + Math.max(1, size / 4);
+        }
+        currentSize = Math.max(minSize, Math.min(maxSize, size));
+    }
+}
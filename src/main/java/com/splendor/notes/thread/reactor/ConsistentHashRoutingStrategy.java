@@ -0,0 +1,70 @@
+package com.splendor.notes.thread.reactor;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/17 10:30
+ * @Description 带虚拟节点的一致性哈希路由：增减队列时只有相邻区间的ID迁移
+ */
+public class ConsistentHashRoutingStrategy implements RoutingStrategy {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final int virtualNodes;
+
+    /**
+     * 按队列列表实例缓存的哈希环，拓扑变化后首次路由时重建
+     */
+    private volatile HashRing hashRing;
+
+    public ConsistentHashRoutingStrategy(int virtualNodes) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+    }
+
+    @Override
+    public Processor route(String key, List<Processor> processors) {
+        return owner(ring(processors), hash(key));
+    }
+
+    NavigableMap<Long, Processor> ring(List<Processor> processors) {
+        HashRing current = hashRing;
+        if (current == null || current.processors != processors) {
+            NavigableMap<Long, Processor> ring = new TreeMap<>();
+            for (Processor processor : processors) {
+                for (int i = 0; i < virtualNodes; i++) {
+                    ring.put(hash("queue-" + processor.getIndex() + "#" + i), processor);
+                }
+            }
+            current = new HashRing(processors, ring);
+            hashRing = current;
+        }
+        return current.ring;
+    }
+
+    static Processor owner(NavigableMap<Long, Processor> ring, long hash) {
+        Map.Entry<Long, Processor> entry = ring.ceilingEntry(hash);
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    static long hash(String key) {
+        return HASH_FUNCTION.hashString(key == null ? "" : key, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static class HashRing {
+        private final List<Processor> processors;
+        private final NavigableMap<Long, Processor> ring;
+
+        private HashRing(List<Processor> processors, NavigableMap<Long, Processor> ring) {
+            this.processors = processors;
+            this.ring = ring;
+        }
+    }
+}
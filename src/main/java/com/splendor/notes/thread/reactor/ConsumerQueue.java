@@ -1,18 +1,53 @@
 package com.splendor.notes.thread.reactor;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * @Author splendor.s
  * @create 2022/4/27 18:03
  * @Description 消费内存队列
+ * 队列列表写时复制，支持运行时增删队列；同一ID还有未完成的任务时固定路由到同一队列，保证增删队列时同一ID的任务不会分散到多个队列，
+ * 未完成任务数归零后才允许重新路由，不按时间过期
  */
+@Slf4j
 public class ConsumerQueue {
 
-    private final List<Processor> queues = Lists.newArrayList();
+    /**
+     * 参与路由的队列，每次变更替换为新的不可变列表
+     */
+    private volatile List<Processor> queues = ImmutableList.of();
+
+    /**
+     * 已移除但仍在消费存量任务的队列 -> 连续观察到队列为空的次数
+     */
+    private final Map<Processor, Integer> drainingQueues = new ConcurrentHashMap<>();
+
+    private volatile RoutingStrategy routingStrategy = new ModuloRoutingStrategy();
+
+    /**
+     * 是否按未完成任务数固定路由
+     */
+    private volatile boolean sticky;
+
+    /**
+     * 任务ID -> 路由到的队列及该ID未完成的任务数，任务数归零时移除
+     */
+    private final Map<String, StickyRoute> stickyRoutes = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService drainReaper;
 
     private ConsumerQueue(){}
 
@@ -37,6 +72,17 @@ public class ConsumerQueue {
         return Singleton.getInstance();
     }
 
+    /**
+     * 设置路由策略
+     * @param routingStrategy 路由策略
+     * @param sticky 同一ID还有未完成的任务时是否固定路由到同一队列，开启后每次路由须在任务离开队列时调用{@link #release(String)}
+     */
+    public synchronized void configureRouting(RoutingStrategy routingStrategy, boolean sticky) {
+        this.routingStrategy = routingStrategy;
+        this.sticky = sticky;
+        this.stickyRoutes.clear();
+    }
+
     /**
      * 获取内存队列的数量
      *
@@ -46,12 +92,39 @@ public class ConsumerQueue {
         return queues.size();
     }
 
-    public void addProcess(Processor queue) {
-        this.queues.add(queue);
+    public synchronized void addProcess(Processor queue) {
+        this.queues = ImmutableList.<Processor>builder().addAll(queues).add(queue).build();
+    }
+
+    /**
+     * 将队列移出路由，存量任务消费完且连续两次检查为空后再关闭
+     *
+     * @param index 队列编号
+     * @return 被移除的队列，不存在时返回null
+     */
+    public synchronized Processor removeProcess(int index) {
+        List<Processor> remaining = Lists.newArrayList(queues);
+        for (Iterator<Processor> iterator = remaining.iterator(); iterator.hasNext(); ) {
+            Processor processor = iterator.next();
+            if (processor.getIndex() == index) {
+                if (remaining.size() == 1) {
+                    throw new IllegalStateException("at least one queue is required");
+                }
+                iterator.remove();
+                this.queues = ImmutableList.copyOf(remaining);
+                drainingQueues.put(processor, 0);
+                startDrainReaper();
+                log.info("========>内存队列移出路由，队列编号={}，剩余积压={}", index, processor.getQueueDepth());
+                return processor;
+            }
+        }
+        return null;
     }
 
-    public void clearQueue() {
-        this.queues.clear();
+    public synchronized void clearQueue() {
+        this.queues = ImmutableList.of();
+        this.drainingQueues.clear();
+        this.stickyRoutes.clear();
     }
 
     /**
@@ -63,4 +136,106 @@ public class ConsumerQueue {
     public Processor getProcess(int index) {
         return queues.get(index);
     }
+
+    /**
+     * 为任务ID选择内存队列并计入一个未完成任务：该ID还有未完成的任务时沿用原队列（包括正在排空的队列），否则按路由策略选择
+     *
+     * @param key 任务唯一ID
+     * @return 目标队列
+     */
+    public Processor route(String key) {
+        List<Processor> current = queues;
+        if (!sticky) {
+            return routingStrategy.route(key, current);
+        }
+        StickyRoute route = stickyRoutes.compute(key, (id, existing) -> {
+            if (Objects.nonNull(existing)
+                    && (current.contains(existing.processor) || drainingQueues.containsKey(existing.processor))) {
+                return new StickyRoute(existing.processor, existing.outstanding + 1);
+            }
+            //原队列已关闭时其中的任务已无法再处理，按路由策略重新选择
+            return new StickyRoute(routingStrategy.route(id, current), Objects.isNull(existing) ? 1 : existing.outstanding + 1);
+        });
+        return route.processor;
+    }
+
+    /**
+     * 任务离开队列（处理完成、永久失败、过期、被合并、被淘汰或未被接收）时释放一个未完成任务，归零后该ID可以重新路由
+     *
+     * @param key 任务唯一ID
+     */
+    public void release(String key) {
+        stickyRoutes.computeIfPresent(key,
+                (id, route) -> route.outstanding > 1 ? new StickyRoute(route.processor, route.outstanding - 1) : null);
+    }
+
+    /**
+     * 每个队列（包括正在排空的队列）的积压深度，用于观察热点分区
+     *
+     * @return 队列编号 -> 积压深度
+     */
+    public Map<Integer, Integer> queueDepths() {
+        Map<Integer, Integer> depths = new LinkedHashMap<>();
+        for (Processor processor : allProcesses()) {
+            depths.put(processor.getIndex(), processor.getQueueDepth());
+        }
+        return depths;
+    }
+
+    /**
+     * 所有队列，包括已移出路由但尚未关闭的队列
+     *
+     * @return
+     */
+    public List<Processor> allProcesses() {
+        List<Processor> processors = Lists.newArrayList(queues);
+        processors.addAll(drainingQueues.keySet());
+        return processors;
+    }
+
+    private void startDrainReaper() {
+        if (Objects.nonNull(drainReaper)) {
+            return;
+        }
+        drainReaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ConsumerQueueDrainReaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainReaper.scheduleWithFixedDelay(this::reapDrainedQueues, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 连续两次检查积压为0才关闭，避免关闭前刚路由过来的任务丢失
+     */
+    private void reapDrainedQueues() {
+        try {
+            for (Map.Entry<Processor, Integer> entry : drainingQueues.entrySet()) {
+                Processor processor = entry.getKey();
+                if (processor.getQueueDepth() > 0) {
+                    entry.setValue(0);
+                } else if (entry.getValue() == 0) {
+                    entry.setValue(1);
+                } else {
+                    drainingQueues.remove(processor);
+                    processor.shutdown();
+                    log.info("========>内存队列排空后关闭，队列编号={}", processor.getIndex());
+                }
+            }
+        } catch (Throwable e) {
+            log.error("ConsumerQueue reap drained queues error", e);
+        }
+    }
+
+    private static class StickyRoute {
+
+        private final Processor processor;
+
+        private final int outstanding;
+
+        private StickyRoute(Processor processor, int outstanding) {
+            this.processor = processor;
+            this.outstanding = outstanding;
+        }
+    }
 }
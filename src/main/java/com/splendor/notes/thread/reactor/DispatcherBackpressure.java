@@ -0,0 +1,129 @@
+package com.splendor.notes.thread.reactor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/16 15:30
+ * @Description 任务分发器背压控制：按溢出策略决定新任务接收、拒绝或阻塞等待，并统计每个分发器的淘汰、去重丢弃、过期、重试、拒绝数量
+ */
+public class DispatcherBackpressure {
+
+    /**
+     * 阻塞策略下等待缓冲区腾出空间的退避时间
+     */
+    private static final long BLOCK_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final int index;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long blockTimeoutMillis;
+
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+
+    public DispatcherBackpressure(int index, OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+        this.index = index;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    /**
+     * 判断新任务能否进入分发器
+     * @param maxBufferSize 缓冲区上限
+     * @param backlog 当前积压数量（未消费的输入 + 待办任务）
+     * @param isShutdown 分发器是否已关闭
+     * @return 接收结果
+     */
+    Processor.AcceptResult admit(int maxBufferSize, IntSupplier backlog, AtomicBoolean isShutdown) {
+        if (backlog.getAsInt() < maxBufferSize) {
+            return Processor.AcceptResult.Accepted;
+        }
+        switch (overflowPolicy) {
+            case REJECT:
+                rejected.increment();
+                return Processor.AcceptResult.Rejected;
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+                while (backlog.getAsInt() >= maxBufferSize) {
+                    if (isShutdown.get() || System.nanoTime() >= deadline) {
+                        rejected.increment();
+                        return Processor.AcceptResult.Rejected;
+                    }
+                    LockSupport.parkNanos(this, BLOCK_BACKOFF_NANOS);
+                }
+                deferred.increment();
+                return Processor.AcceptResult.Deferred;
+            default:
+                deferred.increment();
+                return Processor.AcceptResult.Deferred;
+        }
+    }
+
+    void recordEvicted(int count) {
+        evicted.add(count);
+    }
+
+    /**
+     * 同ID的新任务覆盖了尚未分发的旧任务，旧任务被丢弃
+     */
+    void recordDiscarded() {
+        discarded.increment();
+    }
+
+    void recordExpired() {
+        expired.increment();
+    }
+
+    void recordRetried(int count) {
+        retried.add(count);
+    }
+
+    /**
+     * 分发器已关闭，任务未能写入
+     */
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    public long getRetriedCount() {
+        return retried.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getDeferredCount() {
+        return deferred.sum();
+    }
+}
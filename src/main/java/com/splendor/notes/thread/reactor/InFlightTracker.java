@@ -0,0 +1,99 @@
+package com.splendor.notes.thread.reactor;
+
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/24 14:20
+ * @Description 按ID串行处理：同一ID同时最多只有一个任务交付给工作线程，处理期间到达的更新在待办中合并为最新版本，处理完成后再分发
+ * 不同ID之间仍并行，吞吐随不同ID的数量而不是工作线程数增长；关闭时所有方法为空操作，保持原有的按ID去重行为
+ */
+class InFlightTracker<ID> {
+
+    private final boolean enabled;
+
+    /**
+     * 已交付未完成的ID，仅分发线程访问
+     */
+    private final Set<ID> inFlight = new HashSet<>();
+
+    /**
+     * 工作线程处理完成的ID，由分发线程取出后释放
+     */
+    private final Queue<ID> completed = new ConcurrentLinkedQueue<>();
+
+    private volatile int inFlightCount;
+
+    InFlightTracker(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 分发线程调用：该ID是否有任务正在处理，是则新任务只放入待办、不进入分发顺序
+     */
+    boolean isInFlight(ID id) {
+        return enabled && inFlight.contains(id);
+    }
+
+    /**
+     * 分发线程调用：任务交付工作线程
+     */
+    void dispatched(ID id) {
+        if (enabled) {
+            inFlight.add(id);
+            inFlightCount = inFlight.size();
+        }
+    }
+
+    /**
+     * 工作线程调用：单条或一批任务处理完成，失败的任务须在此之前放回重试队列，保证重试不会排在更新的任务之后
+     */
+    <T> void completed(List<TaskHolder<ID, T>> holders) {
+        if (enabled) {
+            for (TaskHolder<ID, T> holder : holders) {
+                completed.add(holder.getId());
+            }
+        }
+    }
+
+    boolean hasCompleted() {
+        return enabled && !completed.isEmpty();
+    }
+
+    /**
+     * 分发线程调用：释放已完成的ID，在读取重试队列之前调用
+     *
+     * @param pendingTasks 待办任务，处理期间有新任务合并进来的ID重新进入分发顺序
+     * @param processingOrder 分发顺序，等待过的ID排在队首
+     * @return 是否释放了ID
+     */
+    boolean release(Map<ID, ?> pendingTasks, Deque<ID> processingOrder) {
+        if (!enabled) {
+            return false;
+        }
+        boolean drained = false;
+        ID id;
+        while ((id = completed.poll()) != null) {
+            drained = true;
+            if (inFlight.remove(id) && pendingTasks.containsKey(id)) {
+                processingOrder.addFirst(id);
+            }
+        }
+        inFlightCount = inFlight.size();
+        return drained;
+    }
+
+    int size() {
+        return inFlightCount;
+    }
+}
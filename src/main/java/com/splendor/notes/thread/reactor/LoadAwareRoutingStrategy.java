@@ -0,0 +1,54 @@
+package com.splendor.notes.thread.reactor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/17 10:50
+ * @Description 有界负载一致性哈希：哈希环上的归属队列积压超过平均深度的loadFactor倍时，顺着环找下一个未过载的队列
+ */
+public class LoadAwareRoutingStrategy extends ConsistentHashRoutingStrategy {
+
+    private final double loadFactor;
+
+    public LoadAwareRoutingStrategy(int virtualNodes, double loadFactor) {
+        super(virtualNodes);
+        this.loadFactor = Math.max(1.0, loadFactor);
+    }
+
+    @Override
+    public Processor route(String key, List<Processor> processors) {
+        NavigableMap<Long, Processor> ring = ring(processors);
+        long hash = hash(key);
+        Processor owner = owner(ring, hash);
+        if (processors.size() == 1) {
+            return owner;
+        }
+        long totalDepth = 0;
+        for (Processor processor : processors) {
+            totalDepth += processor.getQueueDepth();
+        }
+        double limit = loadFactor * totalDepth / processors.size() + 1;
+        if (owner.getQueueDepth() <= limit) {
+            return owner;
+        }
+        //顺时针查找下一个未过载的队列，全部过载时仍回到归属队列
+        Set<Processor> visited = new HashSet<>();
+        visited.add(owner);
+        for (Map.Entry<Long, Processor> entry : ring.tailMap(hash, false).entrySet()) {
+            if (visited.add(entry.getValue()) && entry.getValue().getQueueDepth() <= limit) {
+                return entry.getValue();
+            }
+        }
+        for (Map.Entry<Long, Processor> entry : ring.headMap(hash, true).entrySet()) {
+            if (visited.add(entry.getValue()) && entry.getValue().getQueueDepth() <= limit) {
+                return entry.getValue();
+            }
+        }
+        return owner;
+    }
+}
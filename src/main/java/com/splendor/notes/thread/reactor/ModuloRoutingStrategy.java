@@ -0,0 +1,18 @@
+package com.splendor.notes.thread.reactor;
+
+import java.util.List;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/17 10:20
+ * @Description 取模路由：队列数不是2的幂时同样均匀
+ */
+public class ModuloRoutingStrategy implements RoutingStrategy {
+
+    @Override
+    public Processor route(String key, List<Processor> processors) {
+        int h;
+        int hash = (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
+        return processors.get(Math.floorMod(hash, processors.size()));
+    }
+}
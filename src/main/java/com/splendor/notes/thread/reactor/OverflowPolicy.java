@@ -0,0 +1,33 @@
+package com.splendor.notes.thread.reactor;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/16 15:20
+ * @Description 任务分发器缓冲区满时的处理策略
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 接收新任务并淘汰最早的待办任务，返回Deferred提示调用方放慢
+     */
+    EVICT_OLDEST,
+
+    /**
+     * 直接拒绝新任务
+     */
+    REJECT,
+
+    /**
+     * 阻塞等待缓冲区腾出空间，超时后拒绝
+     */
+    BLOCK;
+
+    public static OverflowPolicy of(String name) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        return EVICT_OLDEST;
+    }
+}
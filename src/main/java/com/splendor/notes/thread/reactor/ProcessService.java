@@ -7,5 +7,10 @@ package com.splendor.notes.thread.reactor;
  */
 public interface ProcessService<T>{
 
-    void proccess(T t);
+    /**
+     * 将消费数据放入内存队列
+     * @param t
+     * @return 接收结果，Deferred/Rejected时调用方应放慢或暂停消费
+     */
+    Processor.AcceptResult proccess(T t);
 }
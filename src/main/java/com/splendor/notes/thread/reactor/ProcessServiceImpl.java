@@ -14,27 +14,35 @@ import org.springframework.stereotype.Service;
 public class ProcessServiceImpl implements ProcessService<HasResourceInfo> {
 
     @Override
-    public void proccess(HasResourceInfo hasResource) {
+    public Processor.AcceptResult proccess(HasResourceInfo hasResource) {
         Integer doctorIdKey = hasResource.getDoctorId().intValue();
+        String key = String.valueOf(hasResource.getDoctorId());
+        Processor processor = null;
         try {
             //获取内存队列对象
-            Processor processor = getRoutingQueue(doctorIdKey);
+            processor = getRoutingQueue(key);
             //将任务报文加入到队列中
-            processor.process(String.valueOf(hasResource.getDoctorId()) , hasResource , ConsumerAssembly.MSG_DELAY_INTERVAL , System.currentTimeMillis());
+            Processor.AcceptResult result = processor.process(key , hasResource , ConsumerAssembly.MSG_DELAY_INTERVAL , System.currentTimeMillis());
+            if (result == Processor.AcceptResult.Rejected) {
+                log.warn("========有号医生同步数据内存队列已满，任务被拒绝，唯一id={}", doctorIdKey);
+                //未被接收的任务不会再离开队列，在此释放固定路由
+                ConsumerQueue.getInstance().release(key);
+            }
+            return result;
         } catch (Exception e) {
             log.error("========有号医生同步数据kafka消费放入内存队列出错", e);
+            if (processor != null) {
+                ConsumerQueue.getInstance().release(key);
+            }
+            return Processor.AcceptResult.Rejected;
         }
     }
 
-    private Processor getRoutingQueue(Integer key) {
-        ConsumerQueue consumerQueue = ConsumerQueue.getInstance();
-        int h;
-        int hash = (key == null) ? 0 : (h= key.hashCode()) ^ (h >>> 16);
+    private Processor getRoutingQueue(String key) {
+        Processor processor = ConsumerQueue.getInstance().route(key);
 
-        int index = (consumerQueue.queueSize() - 1) & hash;
+        log.info("========>kafka异步消费路由内存队列，唯一id={},队列索引={}", key, processor.getIndex());
 
-        log.info("========>kafka异步消费路由内存队列，唯一id={},队列索引={}", key, index);
-
-        return consumerQueue.getProcess(index);
+        return processor;
     }
 }
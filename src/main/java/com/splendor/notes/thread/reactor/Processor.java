@@ -7,7 +7,32 @@ package com.splendor.notes.thread.reactor;
  */
 public interface Processor<ID , T> {
 
-    void process(ID id, T task, long expiryTime, long submitTimestamp);
+    /**
+     * 任务接收结果：Accepted-已接收，Deferred-已接收但缓冲区已满需放慢，Rejected-未接收
+     */
+    enum AcceptResult {
+        Accepted, Deferred, Rejected
+    }
+
+    AcceptResult process(ID id, T task, long expiryTime, long submitTimestamp);
+
+    /**
+     * 获取分发器背压统计
+     * @return
+     */
+    DispatcherBackpressure getBackpressure();
+
+    /**
+     * 队列编号
+     * @return
+     */
+    int getIndex();
+
+    /**
+     * 队列积压深度
+     * @return
+     */
+    int getQueueDepth();
 
     void shutdown();
 
@@ -7,19 +7,34 @@ package com.splendor.notes.thread.reactor;
  */
 public class ProcessorImpl implements Processor<String , HasResourceInfo> {
 
-    private AcceptorExecutor acceptorExecutor;
+    private TaskDispatcher acceptorExecutor;
 
     private TaskExecutors taskExecutor;
 
 
-    public ProcessorImpl(AcceptorExecutor acceptorExecutor, TaskExecutors taskExecutor) {
+    public ProcessorImpl(TaskDispatcher acceptorExecutor, TaskExecutors taskExecutor) {
         this.acceptorExecutor = acceptorExecutor;
         this.taskExecutor = taskExecutor;
     }
 
     @Override
-    public void process(String id, HasResourceInfo task, long expiryTime, long submitTimestamp) {
-        acceptorExecutor.process(id, task, expiryTime, submitTimestamp);
+    public AcceptResult process(String id, HasResourceInfo task, long expiryTime, long submitTimestamp) {
+        return acceptorExecutor.process(id, task, expiryTime, submitTimestamp);
+    }
+
+    @Override
+    public DispatcherBackpressure getBackpressure() {
+        return acceptorExecutor.getBackpressure();
+    }
+
+    @Override
+    public int getIndex() {
+        return acceptorExecutor.getBackpressure().getIndex();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return acceptorExecutor.getQueueDepth();
     }
 
     @Override
@@ -1,13 +1,19 @@
 package com.splendor.notes.thread.reactor;
 
+import com.splendor.notes.infrastructure.util.constant.assembly.ConsumerAssembly;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @Author splendor.s
@@ -18,18 +24,28 @@ import java.net.UnknownHostException;
 @Component
 public class ProcessorThreadPool {
 
+    private static final String ACCEPTOR_TYPE_RING = "ring";
+
+    private static final String WORKER_MODE_BATCH = "batch";
+
     /**
-     *缓存最大值
+     *缓存最大值，兼容旧配置log.flush.size
      */
-    @Value("${log.flush.size:20}")
+    @Value("${log.flush.max.size:${log.flush.size:20}}")
     private Integer flushMaxSize;
 
     /**
      * 缓存最小值
      */
-    @Value("${log.flush.size:1}")
+    @Value("${log.flush.min.size:1}")
     private Integer flushMinSize;
 
+    /**
+     * 批量处理目标耗时，超过后收缩批量大小，0表示只按拥塞信号调整
+     */
+    @Value("${log.flush.target.latency:200}")
+    private Long flushTargetLatency;
+
     /**
      * 刷盘时间
      */
@@ -66,12 +82,135 @@ public class ProcessorThreadPool {
     @Value("${log.max.processSize:2}")
     private Integer processSize;
 
+    /**
+     * 任务分发器类型：queue-阻塞队列实现，ring-环形缓冲区实现
+     */
+    @Value("${log.acceptor.type:queue}")
+    private String acceptorType;
+
+    /**
+     * 工作线程模式：single-逐条处理，batch-批量处理
+     */
+    @Value("${log.worker.mode:single}")
+    private String workerMode;
+
+    /**
+     * 缓冲区满时的处理策略：evict_oldest-淘汰最早任务，reject-拒绝，block-阻塞等待
+     */
+    @Value("${log.overflow.policy:evict_oldest}")
+    private String overflowPolicy;
+
+    /**
+     * block策略下的最长等待时间
+     */
+    @Value("${log.overflow.block.timeout:100}")
+    private Long overflowBlockTimeout;
+
+    /**
+     * 路由策略：modulo-取模，consistent-一致性哈希，load-负载感知的一致性哈希
+     */
+    @Value("${log.route.strategy:consistent}")
+    private String routeStrategy;
+
+    /**
+     * 一致性哈希每个队列的虚拟节点数
+     */
+    @Value("${log.route.virtual.nodes:160}")
+    private Integer routeVirtualNodes;
+
+    /**
+     * 负载感知路由允许的队列深度相对平均值的倍数
+     */
+    @Value("${log.route.load.factor:1.25}")
+    private Double routeLoadFactor;
+
+    /**
+     * 同一ID还有未完成的任务时固定路由到同一队列，未完成任务数归零后才允许重新路由，增删队列时保证同一ID的任务顺序
+     */
+    @Value("${log.route.sticky:true}")
+    private Boolean routeSticky;
+
+    /**
+     * 工作线程类型：platform-平台线程，virtual-虚拟线程（需Java 21+，否则回退为平台线程）
+     */
+    @Value("${log.worker.thread.type:platform}")
+    private String workerThreadType;
+
+    /**
+     * 虚拟线程模式下每个队列的工作线程数，工作线程大部分时间阻塞在下游IO上，可远大于平台线程数
+     */
+    @Value("${log.virtual.workerCount:256}")
+    private Integer virtualWorkerCount;
+
+    /**
+     * 下游限流初始速率（任务数/秒），所有队列共享
+     */
+    @Value("${log.rate.initial:2000}")
+    private Double rateInitial;
+
+    /**
+     * 下游限流最低速率
+     */
+    @Value("${log.rate.min:10}")
+    private Double rateMin;
+
+    /**
+     * 下游限流最高速率
+     */
+    @Value("${log.rate.max:50000}")
+    private Double rateMax;
+
+    /**
+     * 满速运行时每秒提升的速率
+     */
+    @Value("${log.rate.additive.increase:200}")
+    private Double rateAdditiveIncrease;
+
+    /**
+     * 拥塞、网络异常时的降速比例
+     */
+    @Value("${log.rate.decrease.factor:0.7}")
+    private Double rateDecreaseFactor;
+
+    /**
+     * 令牌桶容量对应的时长，即允许的突发量为速率 * 该时长
+     */
+    @Value("${log.rate.burst.millis:100}")
+    private Long rateBurstMillis;
+
+    /**
+     * 单次处理目标耗时，超过则降速，0表示不按耗时调整
+     */
+    @Value("${log.rate.target.latency:0}")
+    private Long rateTargetLatency;
+
+    /**
+     * 是否按ID串行处理：同一ID同时最多一个任务在处理，处理期间的更新合并为最新版本，完成后再分发
+     */
+    @Value("${log.ordered.per.id:false}")
+    private Boolean orderedPerId;
+
+    /**
+     * 各队列的指标注册到此处，通过/actuator/metrics查看
+     */
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private TrafficShaper trafficShaper;
+
+    private final AtomicInteger nextIndex = new AtomicInteger(0);
+
+    private String name;
+
+    private TaskProcessor taskProcessor;
+
     /**
      * 初始化的便捷方法
      */
     @PostConstruct
     public void init(){
         ConsumerQueue requestQueue = ConsumerQueue.getInstance();
+        requestQueue.configureRouting(RoutingStrategy.of(routeStrategy, routeVirtualNodes, routeLoadFactor), routeSticky);
 
         initProcessor(requestQueue , processSize);
 
@@ -84,23 +223,82 @@ public class ProcessorThreadPool {
         } catch (UnknownHostException e) {
             e.printStackTrace();
         }
-        String name = address.getHostName();
-        TaskProcessor taskProcessor = new TaskProcessorImpl();
+        name = address.getHostName();
+        taskProcessor = new TaskProcessorImpl();
+        trafficShaper = new TrafficShaper(serverCongestionTime, retrySleepTime, rateInitial, rateMin, rateMax,
+                rateAdditiveIncrease, rateDecreaseFactor, rateBurstMillis, rateTargetLatency);
+        Gauge.builder("reactor.shaper.rate", trafficShaper, TrafficShaper::currentRate)
+                .description("下游限流当前速率（任务数/秒）")
+                .register(meterRegistry);
 
         //开启线程池大小
         for (int i = 0; i < processSize; i++) {
-            final AcceptorExecutor acceptorExecutor = new AcceptorExecutor( i, name,
-                    flushMaxSize, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime);
-            final TaskExecutors taskExecutor = TaskExecutors.singleItemExecutors(name, maxWorkerCount, taskProcessor, acceptorExecutor);
-            requestQueue.addProcess(new ProcessorImpl(acceptorExecutor, taskExecutor));
+            requestQueue.addProcess(createProcessor(nextIndex.getAndIncrement()));
+        }
+    }
+
+    /**
+     * 运行时新增内存队列，一致性哈希下只有相邻区间的新ID迁移到新队列，还有未完成任务的ID仍留在原队列
+     * @return 新队列编号
+     */
+    public int addProcessor() {
+        int index = nextIndex.getAndIncrement();
+        ConsumerQueue.getInstance().addProcess(createProcessor(index));
+        log.info("========>新增内存队列，队列编号={}", index);
+        return index;
+    }
+
+    /**
+     * 运行时移除内存队列，存量任务消费完后关闭
+     * @param index 队列编号
+     * @return 是否存在该队列
+     */
+    public boolean removeProcessor(int index) {
+        return ConsumerQueue.getInstance().removeProcess(index) != null;
+    }
+
+    /**
+     * 每个队列的积压深度
+     * @return 队列编号 -> 积压深度
+     */
+    public Map<Integer, Integer> queueDepths() {
+        return ConsumerQueue.getInstance().queueDepths();
+    }
+
+    /**
+     * 当前下游限流速率（任务数/秒）
+     * @return
+     */
+    public double currentRate() {
+        return trafficShaper.currentRate();
+    }
+
+    private Processor createProcessor(int index) {
+        final TaskDispatcher acceptorExecutor = createTaskDispatcher(index, name);
+        //任务离开队列时释放固定路由
+        acceptorExecutor.onReleased(id -> ConsumerQueue.getInstance().release(String.valueOf(id)));
+        final WorkerThreadFactory threadFactory = WorkerThreadFactory.of(workerThreadType, ConsumerAssembly.ACCEPTOR_THREAD_GROUP);
+        final int workerCount = threadFactory.isVirtual() ? virtualWorkerCount : maxWorkerCount;
+        final TaskExecutors taskExecutor = WORKER_MODE_BATCH.equalsIgnoreCase(workerMode)
+                ? TaskExecutors.batchExecutors(name, workerCount, taskProcessor, acceptorExecutor, threadFactory)
+                : TaskExecutors.singleItemExecutors(name, workerCount, taskProcessor, acceptorExecutor, threadFactory);
+        return new ProcessorImpl(acceptorExecutor, taskExecutor);
+    }
+
+    private TaskDispatcher createTaskDispatcher(int index, String name) {
+        DispatcherBackpressure backpressure = new DispatcherBackpressure(index, OverflowPolicy.of(overflowPolicy), overflowBlockTimeout);
+        if (ACCEPTOR_TYPE_RING.equalsIgnoreCase(acceptorType)) {
+            return new RingBufferAcceptorExecutor(index, name, flushMinSize, flushMaxSize, flushTargetLatency,
+                    flushTime, maxBufferSize, retrySleepTime, serverCongestionTime, backpressure, trafficShaper, meterRegistry, orderedPerId);
         }
+        return new AcceptorExecutor(index, name, flushMinSize, flushMaxSize, flushTargetLatency,
+                flushTime, maxBufferSize, retrySleepTime, serverCongestionTime, backpressure, trafficShaper, meterRegistry, orderedPerId);
     }
 
     @PreDestroy
     public void destroyed(){
         ConsumerQueue requestQueue = ConsumerQueue.getInstance();
-        for (int i = 0,size = requestQueue.queueSize(); i < size; i++) {
-            Processor process = requestQueue.getProcess(i);
+        for (Processor process : requestQueue.allProcesses()) {
             process.shutdown();
         }
     }
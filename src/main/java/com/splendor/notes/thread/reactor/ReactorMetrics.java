@@ -0,0 +1,166 @@
+package com.splendor.notes.thread.reactor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/23 10:10
+ * @Description 单个内存队列的指标：队列深度、提交到分发与分发到完成的耗时直方图、批量大小分布、去重覆盖次数、限流等待时间
+ * 指标以reactor.为前缀、按队列编号打index标签，注册到Spring的MeterRegistry后可通过/actuator/metrics查看；队列关闭时移除
+ */
+public class ReactorMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Tags tags;
+
+    /**
+     * 本队列注册的全部指标，关闭时逐个移除，避免动态增删队列后残留
+     */
+    private final List<Meter> meters = new ArrayList<>();
+
+    private final Timer submitToDispatch;
+
+    private final Map<TaskProcessor.ProcessingResult, Timer> dispatchToComplete =
+            new EnumMap<>(TaskProcessor.ProcessingResult.class);
+
+    private final DistributionSummary batchSize;
+
+    private final Counter overwritten;
+
+    private final Timer shaperDelay;
+
+    /**
+     * @param registry 指标注册
+     * @param index 队列编号
+     * @param backpressure 本队列的背压统计，按计数器导出
+     */
+    public ReactorMetrics(MeterRegistry registry, int index, DispatcherBackpressure backpressure) {
+        this.registry = registry;
+        this.tags = Tags.of("index", String.valueOf(index));
+        //重试的任务沿用首次提交时间，因此包含前几次处理和重试等待的时间
+        this.submitToDispatch = add(Timer.builder("reactor.dispatch.latency")
+                .description("任务提交到交付工作线程的耗时")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry));
+        for (TaskProcessor.ProcessingResult result : TaskProcessor.ProcessingResult.values()) {
+            dispatchToComplete.put(result, add(Timer.builder("reactor.process.latency")
+                    .description("任务交付工作线程到处理完成的耗时，包含在交付队列中等待领取的时间")
+                    .tags(tags)
+                    .tag("result", result.name())
+                    .publishPercentileHistogram()
+                    .register(registry)));
+        }
+        this.batchSize = add(DistributionSummary.builder("reactor.batch.size")
+                .description("批量模式下每批交付的任务数")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry));
+        this.overwritten = add(Counter.builder("reactor.dedup.overwritten")
+                .description("同ID新任务覆盖待办旧任务的次数")
+                .tags(tags)
+                .register(registry));
+        this.shaperDelay = add(Timer.builder("reactor.shaper.delay")
+                .description("令牌不足时推迟分发的时间")
+                .tags(tags)
+                .register(registry));
+        counter("reactor.dispatcher.evicted", backpressure, DispatcherBackpressure::getEvictedCount);
+        counter("reactor.dispatcher.discarded", backpressure, DispatcherBackpressure::getDiscardedCount);
+        counter("reactor.dispatcher.expired", backpressure, DispatcherBackpressure::getExpiredCount);
+        counter("reactor.dispatcher.retried", backpressure, DispatcherBackpressure::getRetriedCount);
+        counter("reactor.dispatcher.rejected", backpressure, DispatcherBackpressure::getRejectedCount);
+        counter("reactor.dispatcher.deferred", backpressure, DispatcherBackpressure::getDeferredCount);
+    }
+
+    /**
+     * 不导出的指标，供未接入Spring的场景使用：没有子注册的CompositeMeterRegistry创建的都是空实现
+     *
+     * @param index 队列编号
+     * @param backpressure 背压统计
+     * @return
+     */
+    static ReactorMetrics noop(int index, DispatcherBackpressure backpressure) {
+        return new ReactorMetrics(new CompositeMeterRegistry(), index, backpressure);
+    }
+
+    /**
+     * 注册队列深度，由分发器在构造时登记各内部队列
+     *
+     * @param queue 队列名称：acceptor-输入队列，reprocess-重试队列，pending-待办，work-已交付未领取
+     * @param depth 深度
+     */
+    void queueDepth(String queue, IntSupplier depth) {
+        add(Gauge.builder("reactor.queue.depth", depth, IntSupplier::getAsInt)
+                .tags(tags)
+                .tag("queue", queue)
+                .strongReference(true)
+                .register(registry));
+    }
+
+    /**
+     * 任务交付工作线程，记录交付时间和提交到交付的耗时
+     */
+    void dispatched(TaskHolder<?, ?> holder, long now) {
+        holder.setDispatchTimestamp(now);
+        submitToDispatch.record(Math.max(0, now - holder.getSubmitTimestamp()), TimeUnit.MILLISECONDS);
+    }
+
+    void batchDispatched(int size) {
+        batchSize.record(size);
+    }
+
+    /**
+     * 单条或一批任务处理完成
+     */
+    void completed(List<? extends TaskHolder<?, ?>> holders, TaskProcessor.ProcessingResult result) {
+        Timer timer = dispatchToComplete.get(result);
+        long now = System.currentTimeMillis();
+        for (TaskHolder<?, ?> holder : holders) {
+            timer.record(Math.max(0, now - holder.getDispatchTimestamp()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void overwritten() {
+        overwritten.increment();
+    }
+
+    void shaperDelayed(long delayMillis) {
+        shaperDelay.record(delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 移除本队列注册的全部指标
+     */
+    void close() {
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+        meters.clear();
+    }
+
+    private <S> void counter(String name, S source, ToDoubleFunction<S> count) {
+        add(FunctionCounter.builder(name, source, count).tags(tags).register(registry));
+    }
+
+    private <M extends Meter> M add(M meter) {
+        meters.add(meter);
+        return meter;
+    }
+}
@@ -0,0 +1,516 @@
+package com.splendor.notes.thread.reactor;
+
+import com.splendor.notes.infrastructure.util.constant.assembly.ConsumerAssembly;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/15 10:40
+ * @Description 基于预分配多生产者单消费者环形缓冲区的任务分发器
+ * 生产者CAS占位写入环形缓冲区，分发线程单线程消费并按ID去重；无任务时park等待，生产者和工作线程按需unpark唤醒
+ */
+@Slf4j
+public class RingBufferAcceptorExecutor<ID, T> implements TaskDispatcher<ID, T> {
+
+    /**
+     * 环形缓冲区满时生产者退避时间
+     */
+    private static final long PRODUCER_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * 分发线程空闲时的最长等待时间，兜底防止丢失唤醒
+     */
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicBoolean isShutdown = new AtomicBoolean(false);
+
+    /**
+     * 环形缓冲区及每个槽位已发布的序号
+     */
+    private final TaskHolder<ID, T>[] ring;
+    private final AtomicLongArray published;
+    private final int mask;
+
+    /**
+     * 生产者下一个可占用的序号，分发线程下一个待读取的序号
+     */
+    private final AtomicLong producerSequence = new AtomicLong(0);
+    private volatile long consumerSequence = 0;
+
+    private final BlockingDeque<TaskHolder<ID, T>> reprocessQueue = new LinkedBlockingDeque<>();
+
+    /**
+     * 待办任务Map 和 ID任务存储队列，仅分发线程访问
+     */
+    private final Map<ID, TaskHolder<ID, T>> pendingTasks = new HashMap<>();
+    private final ArrayDeque<ID> processingOrder = new ArrayDeque<>();
+
+    /**
+     * 工作线程的待领取请求数 和 任务交付队列
+     */
+    private final AtomicInteger singleItemWorkRequests = new AtomicInteger(0);
+    private final BlockingQueue<TaskHolder<ID, T>> singleItemWorkQueue;
+    private final AtomicInteger batchWorkRequests = new AtomicInteger(0);
+    private final BlockingQueue<List<TaskHolder<ID, T>>> batchWorkQueue;
+
+    /**
+     * 分发线程最近一次分配任务前的工作线程请求数，仅分发线程访问
+     * 请求数超过该值说明有新请求到达；等于该值的请求在等令牌或凑批，不应反复唤醒
+     */
+    private int seenSingleItemWorkRequests;
+    private int seenBatchWorkRequests;
+
+    private final Long flushTime;
+
+    private final Integer maxBufferSize;
+
+    private final TrafficShaper trafficShaper;
+
+    private final AdaptiveBatchSizer batchSizer;
+
+    private final DispatcherBackpressure backpressure;
+
+    private final ReactorMetrics metrics;
+
+    /**
+     * 按ID串行处理时跟踪已交付未完成的ID
+     */
+    private final InFlightTracker<ID> inFlight;
+
+    /**
+     * 任务离开分发器时的回调，默认空操作
+     */
+    private volatile Consumer<ID> releaseListener = id -> { };
+
+    /**
+     * 待办任务数量，由分发线程更新，供生产者判断积压
+     */
+    private volatile int pendingCount;
+
+    private final Thread acceptorThread;
+
+    private volatile boolean sleeping;
+
+    public RingBufferAcceptorExecutor(Integer index, String name, Integer flushMsgSize, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime) {
+        this(index, name, flushMsgSize, flushMsgSize, 0L, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                new DispatcherBackpressure(index, OverflowPolicy.EVICT_OLDEST, 0));
+    }
+
+    public RingBufferAcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                                      DispatcherBackpressure backpressure) {
+        this(index, name, flushMinSize, flushMsgSize, flushTargetLatency, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                backpressure, new TrafficShaper(serverCongestionTime, retrySleepTime));
+    }
+
+    /**
+     * @param trafficShaper 下游限流器，同一下游的所有队列共享
+     */
+    public RingBufferAcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                                      DispatcherBackpressure backpressure, TrafficShaper trafficShaper) {
+        this(index, name, flushMinSize, flushMsgSize, flushTargetLatency, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                backpressure, trafficShaper, ReactorMetrics.noop(index, backpressure), false);
+    }
+
+    /**
+     * @param meterRegistry 指标注册，队列深度、分发耗时等指标按队列编号导出
+     */
+    public RingBufferAcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                                      DispatcherBackpressure backpressure, TrafficShaper trafficShaper, MeterRegistry meterRegistry) {
+        this(index, name, flushMinSize, flushMsgSize, flushTargetLatency, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                backpressure, trafficShaper, meterRegistry, false);
+    }
+
+    /**
+     * @param orderedPerId 是否按ID串行处理：同一ID同时最多一个任务在处理，处理期间的更新合并为最新版本，完成后再分发
+     */
+    public RingBufferAcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                                      DispatcherBackpressure backpressure, TrafficShaper trafficShaper, MeterRegistry meterRegistry, boolean orderedPerId) {
+        this(index, name, flushMinSize, flushMsgSize, flushTargetLatency, flushTime, maxBufferSize, retrySleepTime, serverCongestionTime,
+                backpressure, trafficShaper, new ReactorMetrics(meterRegistry, index, backpressure), orderedPerId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RingBufferAcceptorExecutor(Integer index, String name, Integer flushMinSize, Integer flushMsgSize, Long flushTargetLatency, Long flushTime, Integer maxBufferSize, Long retrySleepTime, Long serverCongestionTime,
+                                       DispatcherBackpressure backpressure, TrafficShaper trafficShaper, ReactorMetrics metrics, boolean orderedPerId) {
+        this.flushTime = flushTime;
+        this.maxBufferSize = maxBufferSize;
+        int capacity = Integer.highestOneBit(Math.max(2, maxBufferSize - 1)) << 1;
+        this.ring = new TaskHolder[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.mask = capacity - 1;
+        this.singleItemWorkQueue = new ArrayBlockingQueue<>(capacity);
+        this.batchWorkQueue = new ArrayBlockingQueue<>(capacity);
+        this.trafficShaper = trafficShaper;
+        this.batchSizer = new AdaptiveBatchSizer(flushMinSize, flushMsgSize, flushTargetLatency);
+        this.backpressure = backpressure;
+        this.metrics = metrics;
+        this.inFlight = new InFlightTracker<>(orderedPerId);
+        metrics.queueDepth("acceptor", () -> (int) (producerSequence.get() - consumerSequence));
+        metrics.queueDepth("reprocess", reprocessQueue::size);
+        metrics.queueDepth("pending", () -> pendingCount);
+        metrics.queueDepth("work", () -> singleItemWorkQueue.size() + batchWorkQueue.size());
+        if (orderedPerId) {
+            metrics.queueDepth("inflight", inFlight::size);
+        }
+        ThreadGroup threadGroup = new ThreadGroup(ConsumerAssembly.ACCEPTOR_THREAD_GROUP);
+        this.acceptorThread = new Thread(threadGroup, new AcceptorRunner(), "TaskRingAcceptor-" + index);
+        this.acceptorThread.setDaemon(true);
+        this.acceptorThread.start();
+    }
+
+    @Override
+    public Processor.AcceptResult process(ID id, T task, long expiryTime, long submitTimestamp) {
+        //关闭后分发线程不再消费，任务写入后既不会处理也不会回调释放
+        if (isShutdown.get()) {
+            backpressure.recordRejected();
+            return Processor.AcceptResult.Rejected;
+        }
+        Processor.AcceptResult result = backpressure.admit(maxBufferSize,
+                () -> (int) (producerSequence.get() - consumerSequence) + pendingCount, isShutdown);
+        if (result != Processor.AcceptResult.Rejected && !publish(new TaskHolder<>(id, task, expiryTime, submitTimestamp))) {
+            backpressure.recordRejected();
+            return Processor.AcceptResult.Rejected;
+        }
+        return result;
+    }
+
+    @Override
+    public void reprocess(List<TaskHolder<ID, T>> holders, TaskProcessor.ProcessingResult processingResult) {
+        reprocessQueue.addAll(holders);
+        backpressure.recordRetried(holders.size());
+        trafficShaper.registerFailure(processingResult);
+        wakeUp();
+    }
+
+    @Override
+    public void reprocess(TaskHolder<ID, T> taskHolder, TaskProcessor.ProcessingResult processingResult) {
+        reprocessQueue.add(taskHolder);
+        backpressure.recordRetried(1);
+        trafficShaper.registerFailure(processingResult);
+        wakeUp();
+    }
+
+    @Override
+    public BlockingQueue<TaskHolder<ID, T>> requestWorkItem() {
+        singleItemWorkRequests.incrementAndGet();
+        wakeUp();
+        return singleItemWorkQueue;
+    }
+
+    @Override
+    public BlockingQueue<List<TaskHolder<ID, T>>> requestWorkItems() {
+        batchWorkRequests.incrementAndGet();
+        wakeUp();
+        return batchWorkQueue;
+    }
+
+    @Override
+    public void batchCompleted(List<TaskHolder<ID, T>> holders, long costMillis, TaskProcessor.ProcessingResult processingResult) {
+        metrics.completed(holders, processingResult);
+        inFlight.completed(holders);
+        //失败重试的任务已放回重试队列，仍未离开分发器
+        if (processingResult != TaskProcessor.ProcessingResult.Congestion
+                && processingResult != TaskProcessor.ProcessingResult.TransientError) {
+            for (TaskHolder<ID, T> holder : holders) {
+                released(holder.getId());
+            }
+        }
+        trafficShaper.completed(holders.size(), costMillis, processingResult);
+        batchSizer.onBatchCompleted(holders.size(), costMillis, processingResult, trafficShaper.congestionTime());
+        wakeUp();
+    }
+
+    @Override
+    public void onReleased(Consumer<ID> listener) {
+        this.releaseListener = listener;
+    }
+
+    private void released(ID id) {
+        try {
+            releaseListener.accept(id);
+        } catch (Throwable e) {
+            log.error("Release listener error, id={}", id, e);
+        }
+    }
+
+    @Override
+    public DispatcherBackpressure getBackpressure() {
+        return backpressure;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return (int) (producerSequence.get() - consumerSequence) + reprocessQueue.size() + pendingCount
+                + singleItemWorkQueue.size() + batchWorkQueue.size();
+    }
+
+    @Override
+    public void shutdown() {
+        if (isShutdown.compareAndSet(false, true)) {
+            acceptorThread.interrupt();
+            metrics.close();
+        }
+    }
+
+    /**
+     * 占用一个序号写入任务，缓冲区满时唤醒分发线程并短暂退避
+     * @return 是否写入成功，等待期间分发器关闭时返回false
+     */
+    private boolean publish(TaskHolder<ID, T> taskHolder) {
+        long sequence;
+        while (true) {
+            sequence = producerSequence.get();
+            if (sequence - consumerSequence > mask) {
+                if (isShutdown.get()) {
+                    return false;
+                }
+                wakeUp();
+                LockSupport.parkNanos(this, PRODUCER_BACKOFF_NANOS);
+                continue;
+            }
+            if (producerSequence.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int slot = (int) (sequence & mask);
+        ring[slot] = taskHolder;
+        //必须是volatile写：与分发线程"写sleeping再读published"配对，lazySet缺少StoreLoad屏障，读到的sleeping可能已过期而丢失唤醒
+        published.set(slot, sequence);
+        wakeUp();
+        return true;
+    }
+
+    private void wakeUp() {
+        if (sleeping) {
+            LockSupport.unpark(acceptorThread);
+        }
+    }
+
+    /**
+     * 工作线程在分配任务之后、sleeping置位之前申请任务时，wakeUp看不到sleeping，需要在park前重新检查
+     */
+    private boolean hasInput() {
+        return published.get((int) (consumerSequence & mask)) == consumerSequence || !reprocessQueue.isEmpty()
+                || inFlight.hasCompleted()
+                || (!processingOrder.isEmpty() && (singleItemWorkRequests.get() > seenSingleItemWorkRequests
+                || batchWorkRequests.get() > seenBatchWorkRequests));
+    }
+
+    class AcceptorRunner implements Runnable {
+        @Override
+        public void run() {
+            long scheduleTime = 0;
+            while (!isShutdown.get()) {
+                try {
+                    boolean drained = drainInputQueues();
+
+                    int totalItems = processingOrder.size();
+
+                    long now = System.currentTimeMillis();
+                    if (scheduleTime < now) {
+                        long delay = trafficShaper.transmissionDelay();
+                        if (delay > 0) {
+                            metrics.shaperDelayed(delay);
+                        }
+                        scheduleTime = now + delay;
+                    }
+                    //分配前记录请求数：进入idle说明本轮没有分配出任务，此后请求数变大只能是新请求
+                    seenBatchWorkRequests = batchWorkRequests.get();
+                    seenSingleItemWorkRequests = singleItemWorkRequests.get();
+                    if (scheduleTime <= now) {
+                        assignBatchWork();
+                        assignSingleItemWork();
+                    }
+                    pendingCount = pendingTasks.size();
+                    if (!drained && totalItems == processingOrder.size()) {
+                        idle(scheduleTime, now);
+                    }
+                } catch (Throwable e) {
+                    log.warn("Discovery RingAcceptorThread error", e);
+                }
+            }
+        }
+
+        /**
+         * 没有进展时park，直到有新任务、工作线程申请任务、令牌补充或批量凑批超时
+         */
+        private void idle(long scheduleTime, long now) {
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(MAX_IDLE_NANOS);
+            if (scheduleTime > now) {
+                waitMillis = Math.min(waitMillis, scheduleTime - now);
+            } else if (!processingOrder.isEmpty() && trafficShaper.transmissionDelay() > 0) {
+                //令牌补充不会唤醒分发线程，按令牌可用时间等待
+                waitMillis = Math.min(waitMillis, trafficShaper.transmissionDelay());
+            } else if (!processingOrder.isEmpty() && batchWorkRequests.get() > 0) {
+                long batchDue = pendingTasks.get(processingOrder.peek()).getSubmitTimestamp() + flushTime - now;
+                waitMillis = Math.min(waitMillis, Math.max(1, batchDue));
+            }
+            sleeping = true;
+            try {
+                if (!hasInput()) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(waitMillis));
+                }
+            } finally {
+                sleeping = false;
+            }
+        }
+
+        private boolean drainInputQueues() {
+            //先释放已完成的ID再读取重试队列，保证失败重试的旧任务不会排在同ID更新的任务之后
+            boolean released = inFlight.release(pendingTasks, processingOrder);
+            boolean drained = drainReprocessQueue();
+            return drainRing() || drained || released;
+        }
+
+        private boolean drainReprocessQueue() {
+            boolean drained = false;
+            long now = System.currentTimeMillis();
+            TaskHolder<ID, T> taskHolder;
+            while (!isFull() && (taskHolder = reprocessQueue.pollLast()) != null) {
+                drained = true;
+                ID id = taskHolder.getId();
+                if (taskHolder.getExpiryTime() <= now) {
+                    backpressure.recordExpired();
+                    released(id);
+                } else if (pendingTasks.containsKey(id)) {
+                    //已有同ID的更新任务待处理，丢弃旧任务
+                    backpressure.recordDiscarded();
+                    released(id);
+                } else {
+                    pendingTasks.put(id, taskHolder);
+                    if (!inFlight.isInFlight(id)) {
+                        processingOrder.addFirst(id);
+                    }
+                }
+            }
+            if (isFull()) {
+                int evicted = 0;
+                while ((taskHolder = reprocessQueue.pollLast()) != null) {
+                    released(taskHolder.getId());
+                    evicted++;
+                }
+                backpressure.recordEvicted(evicted);
+            }
+            return drained;
+        }
+
+        private boolean drainRing() {
+            boolean drained = false;
+            long sequence = consumerSequence;
+            while (true) {
+                int slot = (int) (sequence & mask);
+                if (published.get(slot) != sequence) {
+                    break;
+                }
+                TaskHolder<ID, T> taskHolder = ring[slot];
+                ring[slot] = null;
+                //先计入待办再推进消费序号，保证生产者看到的积压数量不会瞬间变小
+                appendTaskHolder(taskHolder);
+                pendingCount = pendingTasks.size();
+                consumerSequence = ++sequence;
+                drained = true;
+            }
+            return drained;
+        }
+
+        private void appendTaskHolder(TaskHolder<ID, T> taskHolder) {
+            //处理中ID的待办不在分发顺序里，不参与淘汰
+            if (isFull() && !processingOrder.isEmpty()) {
+                released(pendingTasks.remove(processingOrder.poll()).getId());
+                backpressure.recordEvicted(1);
+            }
+            TaskHolder<ID, T> previousTask = pendingTasks.put(taskHolder.getId(), taskHolder);
+            if (previousTask == null) {
+                if (!inFlight.isInFlight(taskHolder.getId())) {
+                    processingOrder.add(taskHolder.getId());
+                }
+            } else {
+                backpressure.recordDiscarded();
+                metrics.overwritten();
+                released(previousTask.getId());
+            }
+        }
+
+        private boolean isFull() {
+            return pendingTasks.size() >= maxBufferSize;
+        }
+    }
+
+    private void assignSingleItemWork() {
+        while (!processingOrder.isEmpty() && tryTakeRequest(singleItemWorkRequests)) {
+            //令牌不足时归还工作线程的申请，等待令牌补充
+            if (trafficShaper.tryAcquire(1) == 0) {
+                singleItemWorkRequests.incrementAndGet();
+                return;
+            }
+            TaskHolder<ID, T> holder = pendingTasks.remove(processingOrder.poll());
+            metrics.dispatched(holder, System.currentTimeMillis());
+            inFlight.dispatched(holder.getId());
+            singleItemWorkQueue.add(holder);
+        }
+    }
+
+    private void assignBatchWork() {
+        while (hasEnoughTasksForNextBatch() && tryTakeRequest(batchWorkRequests)) {
+            int len = trafficShaper.tryAcquire(Math.min(batchSizer.currentSize(), processingOrder.size()));
+            if (len == 0) {
+                batchWorkRequests.incrementAndGet();
+                return;
+            }
+            List<TaskHolder<ID, T>> holders = new ArrayList<>(len);
+            long now = System.currentTimeMillis();
+            while (holders.size() < len && !processingOrder.isEmpty()) {
+                TaskHolder<ID, T> holder = pendingTasks.remove(processingOrder.poll());
+                metrics.dispatched(holder, now);
+                inFlight.dispatched(holder.getId());
+                holders.add(holder);
+            }
+            metrics.batchDispatched(holders.size());
+            batchWorkQueue.add(holders);
+        }
+    }
+
+    private static boolean tryTakeRequest(AtomicInteger requests) {
+        int current;
+        do {
+            current = requests.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!requests.compareAndSet(current, current - 1));
+        return true;
+    }
+
+    private boolean hasEnoughTasksForNextBatch() {
+        if (processingOrder.isEmpty()) {
+            return false;
+        }
+        if (pendingTasks.size() >= maxBufferSize || processingOrder.size() >= batchSizer.currentSize()) {
+            return true;
+        }
+        TaskHolder<ID, T> nextHolder = pendingTasks.get(processingOrder.peek());
+        long delay = System.currentTimeMillis() - nextHolder.getSubmitTimestamp();
+        return delay >= flushTime;
+    }
+}
@@ -0,0 +1,36 @@
+package com.splendor.notes.thread.reactor;
+
+import java.util.List;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/17 10:10
+ * @Description 内存队列路由策略
+ */
+public interface RoutingStrategy {
+
+    /**
+     * 为任务ID选择内存队列
+     * @param key 任务唯一ID
+     * @param processors 当前参与路由的队列快照，拓扑变化时会替换为新的列表实例
+     * @return 目标队列
+     */
+    Processor route(String key, List<Processor> processors);
+
+    /**
+     * 根据名称创建路由策略：modulo-取模，consistent-一致性哈希，load-负载感知的一致性哈希
+     * @param name 策略名称
+     * @param virtualNodes 每个队列的虚拟节点数
+     * @param loadFactor 负载感知策略允许的队列深度相对平均值的倍数
+     * @return 路由策略
+     */
+    static RoutingStrategy of(String name, int virtualNodes, double loadFactor) {
+        if ("consistent".equalsIgnoreCase(name)) {
+            return new ConsistentHashRoutingStrategy(virtualNodes);
+        }
+        if ("load".equalsIgnoreCase(name)) {
+            return new LoadAwareRoutingStrategy(virtualNodes, loadFactor);
+        }
+        return new ModuloRoutingStrategy();
+    }
+}
@@ -0,0 +1,78 @@
+package com.splendor.notes.thread.reactor;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/15 10:12
+ * @Description 任务分发器：接收任务、按ID去重合并，并向工作线程分发单条或批量任务
+ */
+public interface TaskDispatcher<ID, T> {
+
+    /**
+     * 接收新任务，缓冲区满时按溢出策略处理
+     * @param id
+     * @param task
+     * @param expiryTime
+     * @param submitTimestamp
+     * @return 接收结果
+     */
+    Processor.AcceptResult process(ID id, T task, long expiryTime, long submitTimestamp);
+
+    /**
+     * 批量处理失败的任务重新放回
+     * @param holders
+     * @param processingResult
+     */
+    void reprocess(List<TaskHolder<ID, T>> holders, TaskProcessor.ProcessingResult processingResult);
+
+    /**
+     * 单条处理失败的任务重新放回
+     * @param taskHolder
+     * @param processingResult
+     */
+    void reprocess(TaskHolder<ID, T> taskHolder, TaskProcessor.ProcessingResult processingResult);
+
+    /**
+     * 工作线程申请单条任务
+     * @return 单条任务交付队列
+     */
+    BlockingQueue<TaskHolder<ID, T>> requestWorkItem();
+
+    /**
+     * 工作线程申请批量任务
+     * @return 批量任务交付队列
+     */
+    BlockingQueue<List<TaskHolder<ID, T>>> requestWorkItems();
+
+    /**
+     * 单条或批量任务处理完成后反馈结果与耗时，用于调整后续批量大小和分发速率，并统计分发到完成的耗时
+     * @param holders
+     * @param costMillis
+     * @param processingResult
+     */
+    void batchCompleted(List<TaskHolder<ID, T>> holders, long costMillis, TaskProcessor.ProcessingResult processingResult);
+
+    /**
+     * 注册任务离开分发器时的回调：处理成功、永久失败、过期、被同ID的更新任务合并或被淘汰时，每个任务按ID回调一次；
+     * 失败后放回重试队列的任务不回调，未被接收的任务由调用方自行处理
+     * @param listener
+     */
+    void onReleased(Consumer<ID> listener);
+
+    /**
+     * 获取背压统计
+     * @return
+     */
+    DispatcherBackpressure getBackpressure();
+
+    /**
+     * 积压深度：未消费的输入、待重试、待办以及已交付但未被工作线程领取的任务数
+     * @return
+     */
+    int getQueueDepth();
+
+    void shutdown();
+}
@@ -5,6 +5,7 @@ import com.splendor.notes.infrastructure.util.constant.assembly.ConsumerAssembly
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -21,14 +22,17 @@ public class TaskExecutors<ID,T> {
     private final List<Thread> workerThreads;
 
     TaskExecutors(WorkerRunnableFactory<ID, T> workerRunnableFactory, int workerCount, AtomicBoolean isShutdown){
+        this(workerRunnableFactory, workerCount, isShutdown, WorkerThreadFactory.platform(ConsumerAssembly.ACCEPTOR_THREAD_GROUP));
+    }
+
+    TaskExecutors(WorkerRunnableFactory<ID, T> workerRunnableFactory, int workerCount, AtomicBoolean isShutdown,
+                  WorkerThreadFactory threadFactory){
         this.isShutdown = isShutdown;
         this.workerThreads = Lists.newArrayList();
-        ThreadGroup threadGroup = new ThreadGroup(ConsumerAssembly.ACCEPTOR_THREAD_GROUP);
         for (int i = 0; i < workerCount; i++) {
             TaskExecutors.WorkerRunnable<ID, T> runnable = workerRunnableFactory.create(i);
-            Thread workerThread = new Thread(threadGroup, runnable, runnable.getWorkerName());
+            Thread workerThread = threadFactory.newThread(runnable, runnable.getWorkerName());
             workerThreads.add(workerThread);
-            workerThread.setDaemon(true);
             workerThread.start();
         }
     }
@@ -45,12 +49,12 @@ public class TaskExecutors<ID,T> {
 
         final TaskProcessor<T> processor;
 
-        final AcceptorExecutor<ID,T> taskDispatcher;
+        final TaskDispatcher<ID,T> taskDispatcher;
 
         WorkerRunnable(String workerName,
                        AtomicBoolean isShutdown,
                        TaskProcessor<T> processor,
-                       AcceptorExecutor<ID , T> taskDispatcher){
+                       TaskDispatcher<ID , T> taskDispatcher){
             this.isShutdown = isShutdown;
             this.workerName = workerName;
             this.processor = processor;
@@ -66,9 +70,18 @@ public class TaskExecutors<ID,T> {
     static <ID, T> TaskExecutors<ID, T> singleItemExecutors(final String name,
                                                             final Integer workerCount,
                                                             final TaskProcessor<T> processor,
-                                                            final AcceptorExecutor<ID, T> acceptorExecutor) {
+                                                            final TaskDispatcher<ID, T> acceptorExecutor) {
+        return singleItemExecutors(name, workerCount, processor, acceptorExecutor,
+                WorkerThreadFactory.platform(ConsumerAssembly.ACCEPTOR_THREAD_GROUP));
+    }
+
+    static <ID, T> TaskExecutors<ID, T> singleItemExecutors(final String name,
+                                                            final Integer workerCount,
+                                                            final TaskProcessor<T> processor,
+                                                            final TaskDispatcher<ID, T> acceptorExecutor,
+                                                            final WorkerThreadFactory threadFactory) {
         final AtomicBoolean isShutdown = new AtomicBoolean();
-        return new TaskExecutors<>(idx -> new SingleWorkerRunnable<>("TaskNonBatchingWorker-" + name + '-' + idx, isShutdown, processor, acceptorExecutor), workerCount, isShutdown);
+        return new TaskExecutors<>(idx -> new SingleWorkerRunnable<>("TaskNonBatchingWorker-" + name + '-' + idx, isShutdown, processor, acceptorExecutor), workerCount, isShutdown, threadFactory);
     }
 
     static class SingleWorkerRunnable<ID, T> extends WorkerRunnable<ID, T> {
@@ -76,7 +89,7 @@ public class TaskExecutors<ID,T> {
         SingleWorkerRunnable(String workerName,
                                  AtomicBoolean isShutdown,
                                  TaskProcessor<T> processor,
-                                 AcceptorExecutor<ID, T> acceptorExecutor) {
+                                 TaskDispatcher<ID, T> acceptorExecutor) {
             super(workerName, isShutdown, processor, acceptorExecutor);
         }
 
@@ -103,37 +116,54 @@ public class TaskExecutors<ID,T> {
                     return;
                 }
             }
-            TaskProcessor.ProcessingResult result = processor.process(taskHolder.getTask());
-            switch (result) {
-                case Success:
-                    break;
-                case Congestion:
-                case TransientError:
-                    taskDispatcher.reprocess(taskHolder, result);
-                    break;
-                case PermanentError:
-                    log.warn("Discarding a task of {} due to permanent error", workerName);
-                    break;
-                default:
-                    return;
+            long start = System.currentTimeMillis();
+            //处理抛出异常时按永久失败反馈，任务不再重试
+            TaskProcessor.ProcessingResult result = TaskProcessor.ProcessingResult.PermanentError;
+            try {
+                result = processor.process(taskHolder.getTask());
+                switch (result) {
+                    case Success:
+                        break;
+                    case Congestion:
+                    case TransientError:
+                        taskDispatcher.reprocess(taskHolder, result);
+                        break;
+                    case PermanentError:
+                        log.warn("Discarding a task of {} due to permanent error", workerName);
+                        break;
+                    default:
+                        break;
+                }
+            } finally {
+                //失败的任务先放回重试队列再反馈完成，按ID串行处理时重试不会排在同ID更新的任务之后；
+                //无论处理是否正常返回都反馈完成，否则按ID串行处理时该ID不会再被分发
+                taskDispatcher.batchCompleted(Collections.singletonList(taskHolder), System.currentTimeMillis() - start, result);
             }
-
         }
     }
 
     static <ID, T> TaskExecutors<ID, T> batchExecutors(final String name,
                                                                                                             final Integer workerCount,
                                                                                                             final TaskProcessor<T> processor,
-                                                                                                            final AcceptorExecutor<ID, T> acceptorExecutor) {
+                                                                                                            final TaskDispatcher<ID, T> acceptorExecutor) {
+        return batchExecutors(name, workerCount, processor, acceptorExecutor,
+                WorkerThreadFactory.platform(ConsumerAssembly.ACCEPTOR_THREAD_GROUP));
+    }
+
+    static <ID, T> TaskExecutors<ID, T> batchExecutors(final String name,
+                                                       final Integer workerCount,
+                                                       final TaskProcessor<T> processor,
+                                                       final TaskDispatcher<ID, T> acceptorExecutor,
+                                                       final WorkerThreadFactory threadFactory) {
         final AtomicBoolean isShutdown = new AtomicBoolean();
-        return new TaskExecutors<>(idx -> new BatchWorkerRunnable<>("TaskBatchingWorker-" + name + '-' + idx, isShutdown, processor, acceptorExecutor), workerCount, isShutdown);
+        return new TaskExecutors<>(idx -> new BatchWorkerRunnable<>("TaskBatchingWorker-" + name + '-' + idx, isShutdown, processor, acceptorExecutor), workerCount, isShutdown, threadFactory);
     }
 
     static class BatchWorkerRunnable<ID,T> extends WorkerRunnable<ID,T> {
         BatchWorkerRunnable(String workerName,
                             AtomicBoolean isShutdown,
                             TaskProcessor<T> processor,
-                            AcceptorExecutor<ID, T> acceptorExecutor) {
+                            TaskDispatcher<ID, T> acceptorExecutor) {
             super(workerName, isShutdown, processor, acceptorExecutor);
         }
 
@@ -143,20 +173,31 @@ public class TaskExecutors<ID,T> {
                 while (!isShutdown.get()) {
                     List<TaskHolder<ID, T>> holders = getWork();
 
+                    if (holders.isEmpty()) {
+                        continue;
+                    }
                     List<T> tasks = getTasksOf(holders);
-                    TaskProcessor.ProcessingResult result = processor.process(tasks);
-                    switch (result) {
-                        case Success:
-                            break;
-                        case Congestion:
-                        case TransientError:
-                            taskDispatcher.reprocess(holders, result);
-                            break;
-                        case PermanentError:
-                            log.warn("Discarding {} tasks of {} due to permanent error", holders.size(), workerName);
-                            break;
-                        default:
-                            return;
+                    long start = System.currentTimeMillis();
+                    //处理抛出异常时按永久失败反馈，任务不再重试
+                    TaskProcessor.ProcessingResult result = TaskProcessor.ProcessingResult.PermanentError;
+                    try {
+                        result = processor.process(tasks);
+                        switch (result) {
+                            case Success:
+                                break;
+                            case Congestion:
+                            case TransientError:
+                                taskDispatcher.reprocess(holders, result);
+                                break;
+                            case PermanentError:
+                                log.warn("Discarding {} tasks of {} due to permanent error", holders.size(), workerName);
+                                break;
+                            default:
+                                break;
+                        }
+                    } finally {
+                        //无论处理是否正常返回都反馈完成，否则按ID串行处理时这批ID不会再被分发
+                        taskDispatcher.batchCompleted(holders, System.currentTimeMillis() - start, result);
                     }
                 }
             } catch (InterruptedException e) {
@@ -23,6 +23,10 @@ public class TaskHolder<ID , T> {
      * 任务提交时间
      */
     private final long submitTimestamp;
+    /**
+     * 最近一次交付工作线程的时间，经交付队列传递给工作线程
+     */
+    private long dispatchTimestamp;
 
     public TaskHolder(ID id, T task, long expiryTime, long submitTimestamp) {
         this.id = id;
@@ -47,4 +51,12 @@ public class TaskHolder<ID , T> {
         return submitTimestamp;
     }
 
+    public long getDispatchTimestamp() {
+        return dispatchTimestamp;
+    }
+
+    public void setDispatchTimestamp(long dispatchTimestamp) {
+        this.dispatchTimestamp = dispatchTimestamp;
+    }
+
 }
@@ -1,53 +1,210 @@
 package com.splendor.notes.thread.reactor;
 
+import lombok.extern.slf4j.Slf4j;
+
 /**
  * @Author splendor.s
  * @create 2022/9/27 17:28
+ * @Description 下游限流器：令牌桶控制向工作线程分发任务的速率，按处理结果与耗时做AIMD调整
+ * 同一下游的所有内存队列共享一个实例；成功且速率受限时线性提速，拥塞、网络异常或耗时超标时按比例降速，
+ * 降速后不再整体暂停分发，而是以降低后的速率平滑放行
  */
+@Slf4j
 public class TrafficShaper {
 
     private static final long MAX_DELAY = 30 * 1000;
 
+    /**
+     * 耗时超过目标值时的降速比例，比拥塞时温和
+     */
+    private static final double LATENCY_DECREASE_FACTOR = 0.9;
+
+    /**
+     * 最近该时长内出现过令牌不足才允许提速，避免需求不足时速率无限上涨
+     */
+    private static final long THROTTLED_WINDOW_MS = 1000;
+
+    /**
+     * 默认AIMD参数，与ProcessorThreadPool中log.rate.*的默认配置一致
+     */
+    private static final double DEFAULT_INITIAL_RATE = 2000;
+    private static final double DEFAULT_MIN_RATE = 10;
+    private static final double DEFAULT_MAX_RATE = 50000;
+    private static final double DEFAULT_ADDITIVE_INCREASE = 200;
+    private static final double DEFAULT_DECREASE_FACTOR = 0.7;
+    private static final long DEFAULT_BURST_MILLIS = 100;
+
     private final long congestionRetryDelayMs;
     private final long networkFailureRetryMs;
 
-    private volatile long lastCongestionError;
-    private volatile long lastNetworkFailure;
+    private final double minRate;
+    private final double maxRate;
+
+    /**
+     * 满速运行时每秒提升的速率（任务数/秒）
+     */
+    private final double additiveIncrease;
+
+    private final double decreaseFactor;
+
+    /**
+     * 令牌桶容量对应的时长，即允许的突发量为速率 * burstMillis
+     */
+    private final long burstMillis;
 
+    private final long targetLatencyMs;
+
+    /**
+     * 当前速率（任务数/秒）
+     */
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long lastDecreaseTime;
+    private long lastThrottledTime;
+
+    private volatile long lastCongestionError = -1;
+
+    /**
+     * 使用默认AIMD参数：初始2000任务/秒，在10~50000之间调整，拥塞、网络异常时降为0.7倍，不按耗时调整
+     */
     TrafficShaper(long congestionRetryDelayMs, long networkFailureRetryMs) {
+        this(congestionRetryDelayMs, networkFailureRetryMs, DEFAULT_INITIAL_RATE, DEFAULT_MIN_RATE, DEFAULT_MAX_RATE,
+                DEFAULT_ADDITIVE_INCREASE, DEFAULT_DECREASE_FACTOR, DEFAULT_BURST_MILLIS, 0);
+    }
+
+    /**
+     * @param congestionRetryDelayMs 拥塞后两次降速的最小间隔
+     * @param networkFailureRetryMs 网络异常后两次降速的最小间隔
+     * @param initialRate 初始速率（任务数/秒）
+     * @param minRate 最低速率
+     * @param maxRate 最高速率
+     * @param additiveIncrease 满速运行时每秒提升的速率
+     * @param decreaseFactor 拥塞、网络异常时的降速比例
+     * @param burstMillis 令牌桶容量对应的时长
+     * @param targetLatencyMs 单次处理的目标耗时，超过则降速，0表示不按耗时调整
+     */
+    public TrafficShaper(long congestionRetryDelayMs, long networkFailureRetryMs, double initialRate, double minRate,
+                         double maxRate, double additiveIncrease, double decreaseFactor, long burstMillis,
+                         long targetLatencyMs) {
         this.congestionRetryDelayMs = Math.min(MAX_DELAY, congestionRetryDelayMs);
         this.networkFailureRetryMs = Math.min(MAX_DELAY, networkFailureRetryMs);
+        this.minRate = Math.max(1, minRate);
+        this.maxRate = Math.max(this.minRate, maxRate);
+        this.additiveIncrease = additiveIncrease;
+        this.decreaseFactor = decreaseFactor;
+        this.burstMillis = Math.max(1, burstMillis);
+        this.targetLatencyMs = targetLatencyMs;
+        this.rate = Math.min(this.maxRate, Math.max(this.minRate, initialRate));
+        this.tokens = capacity();
+        this.lastRefillNanos = System.nanoTime();
     }
 
+    /**
+     * 重新放回的任务只记录拥塞时间，速率调整统一由completed根据处理结果完成
+     */
     void registerFailure(TaskProcessor.ProcessingResult processingResult) {
         if (processingResult == TaskProcessor.ProcessingResult.Congestion) {
             lastCongestionError = System.currentTimeMillis();
-        } else if (processingResult == TaskProcessor.ProcessingResult.TransientError) {
-            lastNetworkFailure = System.currentTimeMillis();
         }
     }
 
-    long transmissionDelay() {
-        if (lastCongestionError == -1 && lastNetworkFailure == -1) {
+    /**
+     * 最近是否出现过拥塞：同一次拥塞返回同一个时间，供批量大小只响应一次
+     * @return 最近一次拥塞的时间，不在拥塞退避窗口内时返回-1
+     */
+    long congestionTime() {
+        long lastCongestion = lastCongestionError;
+        return lastCongestion != -1 && System.currentTimeMillis() - lastCongestion < congestionRetryDelayMs ? lastCongestion : -1;
+    }
+
+    /**
+     * 距离下一个令牌可用的时间，0表示可以立即分发
+     */
+    synchronized long transmissionDelay() {
+        refill();
+        if (tokens >= 1) {
             return 0;
         }
+        return Math.min(MAX_DELAY, Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / rate)));
+    }
 
+    /**
+     * 申请令牌，令牌不足时只给出可用的部分
+     *
+     * @param permits 申请的任务数
+     * @return 实际获得的令牌数
+     */
+    synchronized int tryAcquire(int permits) {
+        refill();
+        int granted = (int) Math.min(permits, Math.floor(tokens));
+        if (granted < permits) {
+            lastThrottledTime = System.currentTimeMillis();
+        }
+        tokens -= granted;
+        return granted;
+    }
+
+    /**
+     * 一次单条或批量处理完成后反馈结果与耗时
+     *
+     * @param batchSize 任务数
+     * @param costMillis 耗时
+     * @param processingResult 处理结果
+     */
+    synchronized void completed(int batchSize, long costMillis, TaskProcessor.ProcessingResult processingResult) {
         long now = System.currentTimeMillis();
-        if (lastCongestionError != -1) {
-            long congestionDelay = now - lastCongestionError;
-            if (congestionDelay >= 0 && congestionDelay < congestionRetryDelayMs) {
-                return congestionRetryDelayMs - congestionDelay;
-            }
-            lastCongestionError = -1;
+        switch (processingResult) {
+            case Success:
+                if (targetLatencyMs > 0 && costMillis > targetLatencyMs) {
+                    decrease(LATENCY_DECREASE_FACTOR, congestionRetryDelayMs, now);
+                } else if (now - lastThrottledTime < THROTTLED_WINDOW_MS && rate < maxRate) {
+                    //满速时每秒完成约rate个任务，每个任务提升additiveIncrease/rate，合计每秒提升additiveIncrease
+                    rate = Math.min(maxRate, rate + additiveIncrease * batchSize / rate);
+                }
+                break;
+            case Congestion:
+                lastCongestionError = now;
+                decrease(decreaseFactor, congestionRetryDelayMs, now);
+                break;
+            case TransientError:
+                decrease(decreaseFactor, networkFailureRetryMs, now);
+                break;
+            default:
+                break;
         }
+    }
 
-        if (lastNetworkFailure != -1) {
-            long failureDelay = now - lastNetworkFailure;
-            if (failureDelay >= 0 && failureDelay < networkFailureRetryMs) {
-                return networkFailureRetryMs - failureDelay;
-            }
-            lastNetworkFailure = -1;
+    /**
+     * 当前速率（任务数/秒）
+     */
+    public synchronized double currentRate() {
+        return rate;
+    }
+
+    /**
+     * 同一批失败通常对应同一次下游故障，间隔内只降速一次
+     */
+    private void decrease(double factor, long interval, long now) {
+        if (now - lastDecreaseTime < interval) {
+            return;
+        }
+        lastDecreaseTime = now;
+        double previous = rate;
+        rate = Math.max(minRate, rate * factor);
+        tokens = Math.min(tokens, capacity());
+        if (log.isDebugEnabled()) {
+            log.debug("TrafficShaper decrease rate {} -> {}", previous, rate);
         }
-        return 0;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity(), tokens + (now - lastRefillNanos) * rate / 1_000_000_000d);
+        lastRefillNanos = now;
+    }
+
+    private double capacity() {
+        return Math.max(1, rate * burstMillis / 1000);
     }
 }
@@ -0,0 +1,154 @@
+package com.splendor.notes.thread.reactor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/22 10:20
+ * @Description 工作线程创建方式：platform-平台线程，virtual-虚拟线程
+ * 项目按Java 8编译，虚拟线程通过MethodHandle调用Thread.ofVirtual()，运行时低于Java 21时回退为平台线程
+ */
+@Slf4j
+public abstract class WorkerThreadFactory {
+
+    public static final String PLATFORM = "platform";
+
+    public static final String VIRTUAL = "virtual";
+
+    /**
+     * Thread.ofVirtual()返回的Thread.Builder.OfVirtual，不支持时为null
+     */
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle BUILDER_NAME;
+    private static final MethodHandle BUILDER_UNSTARTED;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle builderName = null;
+        MethodHandle builderUnstarted = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass));
+            builderName = lookup.findVirtual(builderClass, "name", MethodType.methodType(builderClass, String.class));
+            builderUnstarted = lookup.findVirtual(builderClass, "unstarted", MethodType.methodType(Thread.class, Runnable.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            //Java 21以下没有虚拟线程
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_UNSTARTED = builderUnstarted;
+    }
+
+    /**
+     * 创建未启动的线程
+     *
+     * @param runnable 线程任务
+     * @param name 线程名称
+     * @return 线程
+     */
+    public abstract Thread newThread(Runnable runnable, String name);
+
+    /**
+     * 是否为虚拟线程
+     *
+     * @return
+     */
+    public abstract boolean isVirtual();
+
+    /**
+     * 按前缀加序号命名的ThreadFactory，供线程池使用
+     *
+     * @param prefix 线程名前缀
+     * @return
+     */
+    public ThreadFactory named(String prefix) {
+        AtomicInteger index = new AtomicInteger(0);
+        return r -> newThread(r, prefix + "-" + index.getAndIncrement());
+    }
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     *
+     * @return
+     */
+    public static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 根据类型创建，请求虚拟线程但运行时不支持时回退为平台线程
+     *
+     * @param type platform或virtual
+     * @param threadGroupName 平台线程所属线程组
+     * @return
+     */
+    public static WorkerThreadFactory of(String type, String threadGroupName) {
+        if (VIRTUAL.equalsIgnoreCase(type)) {
+            if (isVirtualSupported()) {
+                return virtual();
+            }
+            log.warn("当前运行时{}不支持虚拟线程，回退为平台线程", System.getProperty("java.version"));
+        }
+        return platform(threadGroupName);
+    }
+
+    /**
+     * 平台线程，每次调用创建新的线程组，线程均为守护线程
+     *
+     * @param threadGroupName 线程组名称
+     * @return
+     */
+    public static WorkerThreadFactory platform(String threadGroupName) {
+        ThreadGroup threadGroup = new ThreadGroup(threadGroupName);
+        return new WorkerThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable, String name) {
+                Thread thread = new Thread(threadGroup, runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+
+            @Override
+            public boolean isVirtual() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 虚拟线程，虚拟线程总是守护线程且不支持自定义线程组
+     *
+     * @return
+     */
+    public static WorkerThreadFactory virtual() {
+        if (!isVirtualSupported()) {
+            throw new UnsupportedOperationException("virtual threads require Java 21+");
+        }
+        return new WorkerThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable, String name) {
+                try {
+                    Object builder = OF_VIRTUAL.invoke();
+                    builder = BUILDER_NAME.invoke(builder, name);
+                    return (Thread) BUILDER_UNSTARTED.invoke(builder, runnable);
+                } catch (Throwable e) {
+                    throw new IllegalStateException("create virtual thread failed", e);
+                }
+            }
+
+            @Override
+            public boolean isVirtual() {
+                return true;
+            }
+        };
+    }
+}
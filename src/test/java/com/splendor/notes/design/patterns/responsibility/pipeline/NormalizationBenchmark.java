@@ -0,0 +1,71 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline;
+
+import com.google.common.base.Strings;
+import com.splendor.notes.design.patterns.responsibility.pipeline.base.BCConvert;
+import com.splendor.notes.design.patterns.responsibility.pipeline.base.NormalizationTable;
+import com.splendor.notes.design.patterns.responsibility.pipeline.combination.clean.TraditionalSimplifiedConversion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/31 下午2:10
+ * 文本归一化对比：逐字符BCConvert.charConvert加三次整串繁简转换，与预先计算的归一化表一次遍历
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NormalizationBenchmark {
+
+    /**
+     * short-几十个字的商品名称，long-约两万字的商品描述
+     */
+    @Param({"short", "long"})
+    private String text;
+
+    private String content;
+
+    private NormalizationTable table;
+
+    @Setup
+    public void setup() {
+        String sample = "臺灣製造ＳＰＬＥＮＤＯＲ頭髮護理乾洗噴霧，滑鼠墊買一送一，香港門市電話１８２５２０６６６８８";
+        content = "short".equals(text) ? sample : Strings.repeat(sample, 400);
+        table = NormalizationTable.of(TraditionalSimplifiedConversion::toSimple, TraditionalSimplifiedConversion.getPhrases());
+    }
+
+    @Benchmark
+    public String chain() {
+        StringBuilder builder = new StringBuilder(content.length());
+        for (int i = 0; i < content.length(); i++) {
+            builder.append((char) BCConvert.charConvert(content.charAt(i)));
+        }
+        return TraditionalSimplifiedConversion.toSimple(builder.toString());
+    }
+
+    @Benchmark
+    public String table() {
+        return table.normalize(content);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NormalizationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,101 @@
+package com.splendor.notes.design.patterns.responsibility.pipeline;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.splendor.notes.design.patterns.responsibility.pipeline.combination.validate.SensitiveComplianceValidator;
+import com.splendor.notes.design.patterns.responsibility.pipeline.combination.validate.SensitivePrivacyValidator;
+import com.splendor.notes.design.patterns.responsibility.pipeline.combination.validate.SensitiveRegularValidator;
+import com.splendor.notes.design.patterns.responsibility.pipeline.combination.validate.SensitiveThesaurusValidator;
+import com.splendor.notes.design.patterns.responsibility.pipeline.constant.SensitiveCons;
+import com.splendor.notes.design.patterns.responsibility.pipeline.enums.BizType;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentAttr;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.ContentCleanResContext;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitiveWord;
+import com.splendor.notes.design.patterns.responsibility.pipeline.model.SensitveHitContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/26 上午11:30
+ * 敏感词校验串行与并行对比：短文本与长文本下单次请求的耗时分布，SampleTime模式输出p0.50/p0.99
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidatorFanOutBenchmark {
+
+    /**
+     * short-几十个字的商品名称，long-约两万字的商品描述
+     */
+    @Param({"short", "long"})
+    private String text;
+
+    private Map<Integer, ContextHandler> validators;
+
+    private ContentCleanResContext context;
+
+    private ParallelValidator parallelValidator;
+
+    @Setup
+    public void setup() {
+        validators = ImmutableMap.of(
+                SensitiveCons.Validate.COMPLIANCE, new SensitiveComplianceValidator(),
+                SensitiveCons.Validate.THESAURUS, new SensitiveThesaurusValidator(),
+                SensitiveCons.Validate.REGULAR, new SensitiveRegularValidator(),
+                SensitiveCons.Validate.PRIVACY, new SensitivePrivacyValidator());
+        String sample = "南京特产盐水鸭，配送时附赠酒精湿巾，肯德基同款包装，联系电话18252066688";
+        String content = "short".equals(text) ? sample : Strings.repeat(sample, 500);
+        context = ContentCleanResContext.builder()
+                .isCleanDone(true)
+                .content(content)
+                .cleanContent(content)
+                .contentAttr(ContentAttr.builder().bizType(BizType.E_COMMERCE.getType()).build())
+                .build();
+        parallelValidator = new ParallelValidator(4, 1024, 1000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        parallelValidator.shutdown();
+    }
+
+    @Benchmark
+    public List<SensitiveWord> sequential() {
+        List<SensitiveWord> hitWords = Lists.newArrayList();
+        for (ContextHandler handler : validators.values()) {
+            hitWords.addAll(((SensitveHitContext) handler.handle(context)).getHitWords());
+        }
+        return hitWords;
+    }
+
+    @Benchmark
+    public List<SensitiveWord> parallel() {
+        return parallelValidator.validate(validators, context).getHitWords();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ValidatorFanOutBenchmark.class.getSimpleName()).build()).run();
+    }
+}
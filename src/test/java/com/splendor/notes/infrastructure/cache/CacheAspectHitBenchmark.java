@@ -0,0 +1,83 @@
+package com.splendor.notes.infrastructure.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/10 上午10:20
+ * CacheAspect命中Caffeine路径耗时对比：每次解析表达式 vs 按方法缓存表达式
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheAspectHitBenchmark {
+
+    private Cache<String, Object> cache;
+
+    private Method method;
+
+    private CustomCache annotation;
+
+    private String[] paramNames;
+
+    private Object[] args;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        cache = Caffeine.newBuilder().maximumSize(1024).build();
+        method = OrderService.class.getMethod("getOrderById", Long.class);
+        annotation = method.getAnnotation(CustomCache.class);
+        paramNames = new String[]{"id"};
+        args = new Object[]{1024L};
+        cache.put(annotation.cacheName() + CacheConstant.COLON + "1024", "order-1024");
+    }
+
+    @Benchmark
+    public Object parsePerCall() {
+        TreeMap<String, Object> treeMap = new TreeMap<>();
+        for (int i = 0; i < paramNames.length; i++) {
+            treeMap.put(paramNames[i], args[i]);
+        }
+        String elResult = SpringElUtil.parse(annotation.key(), treeMap);
+        return cache.getIfPresent(annotation.cacheName() + CacheConstant.COLON + elResult);
+    }
+
+    @Benchmark
+    public Object cachedExpression() {
+        String elResult = SpringElUtil.parse(method, annotation.key(), paramNames, args);
+        return cache.getIfPresent(annotation.cacheName() + CacheConstant.COLON + elResult);
+    }
+
+    public static class OrderService {
+
+        @CustomCache(cacheName = "order", key = "#id")
+        public Object getOrderById(Long id) {
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CacheAspectHitBenchmark.class.getSimpleName()).build()).run();
+    }
+}
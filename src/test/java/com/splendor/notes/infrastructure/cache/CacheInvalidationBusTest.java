@@ -0,0 +1,190 @@
+package com.splendor.notes.infrastructure.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author splendor.s
+ * @create 2023/5/9 下午4:30
+ * 跨节点本地缓存失效集成测试：两个节点共用一个Redis，一个节点删除后另一个节点的Caffeine同步失效
+ * 指定-Dcache.it.redis.host（及cache.it.redis.port）时使用本地Redis，否则通过Testcontainers启动，两者都不可用时跳过
+ */
+public class CacheInvalidationBusTest {
+
+    private static final long WAIT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static GenericContainer<?> redis;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate stringRedisTemplate;
+
+    private static RedisTemplate<Object, Object> redisTemplate;
+
+    private static Node nodeA;
+
+    private static Node nodeB;
+
+    @BeforeClass
+    public static void setUp() {
+        String host = System.getProperty("cache.it.redis.host");
+        int port = Integer.getInteger("cache.it.redis.port", 6379);
+        if (host == null) {
+            //本地Redis与Docker都不可用时跳过
+            Assume.assumeTrue(DockerClientFactory.instance().isDockerAvailable());
+            redis = new GenericContainer<>(DockerImageName.parse("redis:6.2-alpine")).withExposedPorts(6379);
+            redis.start();
+            host = redis.getHost();
+            port = redis.getMappedPort(6379);
+        }
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        nodeA = new Node();
+        nodeB = new Node();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (nodeA != null) {
+            nodeA.close();
+        }
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redis != null) {
+            redis.stop();
+        }
+    }
+
+    @Test
+    public void deleteOnOneNodeInvalidatesOtherNodeL1() throws InterruptedException {
+        String realKey = "order" + CacheConstant.COLON + "1";
+        redisTemplate.delete(Arrays.asList(CacheValueSerializer.l2Key(realKey), realKey));
+        awaitSubscribed();
+
+        //A回源并写入Redis，B从Redis读取后写入自己的Caffeine
+        Assert.assertEquals("order-1", nodeA.service.getOrderById(1L));
+        Assert.assertEquals("order-1", nodeB.service.getOrderById(1L));
+        Assert.assertEquals(1, nodeA.target.loads.get());
+        Assert.assertEquals(0, nodeB.target.loads.get());
+        Assert.assertNotNull(nodeB.cache.getIfPresent(realKey));
+
+        //A删除后，B的本地缓存收到广播失效
+        nodeA.service.deleteOrder(1L);
+        Assert.assertTrue("l1 entry on node B was not invalidated",
+                await(() -> nodeB.cache.getIfPresent(realKey) == null));
+
+        //B再次读取时Redis与本地均已失效，回源加载
+        Assert.assertEquals("order-1", nodeB.service.getOrderById(1L));
+        Assert.assertEquals(1, nodeB.target.loads.get());
+    }
+
+    /**
+     * 订阅在容器启动后异步建立，反复广播探测key直到B收到，避免正式用例的广播丢失
+     */
+    private static void awaitSubscribed() throws InterruptedException {
+        String probe = "probe" + CacheConstant.COLON + System.nanoTime();
+        nodeB.cache.put(probe, probe);
+        boolean subscribed = await(() -> {
+            nodeA.bus.publish(probe);
+            nodeA.bus.flush();
+            return nodeB.cache.getIfPresent(probe) == null;
+        });
+        Assert.assertTrue("invalidation subscription was not established", subscribed);
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        return condition.getAsBoolean();
+    }
+
+    /**
+     * 一个应用节点：独立的Caffeine、失效总线、订阅容器与切面，共用同一个Redis
+     */
+    private static class Node {
+
+        private final Cache<String, Object> cache = Caffeine.newBuilder().maximumSize(1024).build();
+
+        private final CacheInvalidationBus bus = new CacheInvalidationBus(cache, stringRedisTemplate);
+
+        private final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+
+        private final OrderService target = new OrderService();
+
+        private final OrderService service;
+
+        private Node() {
+            ReflectionTestUtils.setField(bus, "flushMillis", 10L);
+            ReflectionTestUtils.setField(bus, "batchSize", 500);
+            bus.init();
+            container.setConnectionFactory(connectionFactory);
+            container.addMessageListener(bus, new ChannelTopic(CacheInvalidationBus.CHANNEL));
+            container.afterPropertiesSet();
+            container.start();
+            CacheAspect aspect = new CacheAspect(cache, redisTemplate, bus, new CacheValueSerializer(new SimpleMeterRegistry()));
+            AspectJProxyFactory factory = new AspectJProxyFactory(target);
+            factory.setProxyTargetClass(true);
+            factory.addAspect(aspect);
+            service = factory.getProxy();
+        }
+
+        private void close() {
+            try {
+                container.destroy();
+            } catch (Exception e) {
+                //测试结束时关闭失败不影响结果
+            }
+            bus.destroyed();
+        }
+    }
+
+    public static class OrderService {
+
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @CustomCache(cacheName = "order", key = "#id")
+        public String getOrderById(Long id) {
+            loads.incrementAndGet();
+            return "order-" + id;
+        }
+
+        @CustomCache(cacheName = "order", key = "#id", type = CacheType.DELETE)
+        public void deleteOrder(Long id) {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.splendor.notes.thread.delay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/18 15:10
+ * @Description DelayQueue与分层时间轮对比：已有100万条待到期数据时的插入+取消、插入+到期取出耗时
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class DelayStoreBenchmark {
+
+    private static final int PENDING = 1_000_000;
+
+    @Param({"heap", "wheel"})
+    private String delayQueueType;
+
+    private DelayStore<Long> delayStore;
+
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        delayStore = DelayStore.of(delayQueueType, 10, 512);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        //压测期间都不会到期的存量数据
+        for (int i = 0; i < PENDING; i++) {
+            delayStore.add(sequence++, 600_000 + random.nextInt(600_000), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Benchmark
+    public boolean addAndCancel() {
+        return delayStore.add(sequence++, 600_000 + ThreadLocalRandom.current().nextInt(600_000), TimeUnit.MILLISECONDS).cancel();
+    }
+
+    @Benchmark
+    public Long addAndExpire() throws InterruptedException {
+        delayStore.add(sequence++, 0, TimeUnit.MILLISECONDS);
+        return delayStore.take();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DelayStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+}
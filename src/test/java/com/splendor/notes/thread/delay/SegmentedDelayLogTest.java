@@ -0,0 +1,168 @@
+package com.splendor.notes.thread.delay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/22 16:30
+ * @Description 分段日志：追加、确认、压缩后重新打开重放，调小分段大小不截断已有分段，末尾写了一半的帧在重放时丢弃
+ */
+public class SegmentedDelayLogTest {
+
+    private static final int SEGMENT_BYTES = 256;
+
+    private static final DelayRecordCodec<String> CODEC = new DelayRecordCodec<String>() {
+        @Override
+        public void encode(String value, ByteBuffer buffer) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayAfterAckAndCompactReturnsOnlyUnacked() throws IOException {
+        File directory = folder.newFolder("compact");
+        SegmentedDelayLog<String> log = open(directory, SEGMENT_BYTES);
+        assertTrue(log.replay().isEmpty());
+        List<Long> acked = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            long id = log.append("value-" + i, 1000L + i);
+            if (i % 4 == 0) {
+                expected.add("value-" + i);
+            } else {
+                acked.add(id);
+            }
+        }
+        log.ack(acked);
+        assertTrue(log.compact() > 0);
+        int segmentsAfterCompact = segmentFiles(directory).length;
+        log.close();
+
+        log = open(directory, SEGMENT_BYTES);
+        List<SegmentedDelayLog.DelayRecord<String>> records = log.replay();
+        assertEquals(expected, values(records));
+        assertEquals(segmentsAfterCompact, segmentFiles(directory).length);
+        for (SegmentedDelayLog.DelayRecord<String> record : records) {
+            assertEquals(1000L + Integer.parseInt(record.getValue().substring("value-".length())), record.getDeadlineMillis());
+        }
+        //重放后新数据的id不与未确认数据重复
+        long id = log.append("value-new", 2000L);
+        for (SegmentedDelayLog.DelayRecord<String> record : records) {
+            assertTrue(id > record.getId());
+        }
+        log.close();
+    }
+
+    @Test
+    public void smallerSegmentBytesKeepsExistingSegments() throws IOException {
+        File directory = folder.newFolder("shrink");
+        SegmentedDelayLog<String> log = open(directory, 4096);
+        log.replay();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add("value-" + i);
+            log.append("value-" + i, i);
+        }
+        log.close();
+
+        //调小配置后重新打开：已有分段按原长度映射，数据完整重放，新分段按新配置创建
+        log = open(directory, SEGMENT_BYTES);
+        assertEquals(expected, values(log.replay()));
+        assertEquals(4096, segmentFiles(directory)[0].length());
+        for (int i = 50; i < 200; i++) {
+            expected.add("value-" + i);
+            log.append("value-" + i, i);
+        }
+        log.close();
+
+        File[] files = segmentFiles(directory);
+        assertTrue(files.length > 1);
+        assertEquals(4096, files[0].length());
+        assertEquals(SEGMENT_BYTES, files[files.length - 1].length());
+        log = open(directory, SEGMENT_BYTES);
+        assertEquals(expected, values(log.replay()));
+        log.close();
+    }
+
+    @Test
+    public void truncatedLastFrameIsDroppedOnReplay() throws IOException {
+        File directory = folder.newFolder("truncated");
+        SegmentedDelayLog<String> log = open(directory, SEGMENT_BYTES);
+        log.replay();
+        log.append("value-0", 0);
+        log.append("value-1", 1);
+        log.append("value-2", 2);
+        log.close();
+
+        //模拟写到一半时宕机：文件截断在最后一帧的帧体中间
+        File segment = segmentFiles(directory)[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            int position = 0;
+            int lastFrame = 0;
+            int length;
+            while ((length = readInt(raf, position)) > 0) {
+                lastFrame = position;
+                position += 8 + length;
+            }
+            raf.setLength(lastFrame + 8 + readInt(raf, lastFrame) / 2);
+        }
+
+        log = open(directory, SEGMENT_BYTES);
+        assertEquals(Arrays.asList("value-0", "value-1"), values(log.replay()));
+        //截断的帧被后续写入覆盖，空间不足时滚动到新分段
+        log.append("value-3", 3);
+        log.close();
+
+        log = open(directory, SEGMENT_BYTES);
+        assertEquals(Arrays.asList("value-0", "value-1", "value-3"), values(log.replay()));
+        log.close();
+    }
+
+    private static SegmentedDelayLog<String> open(File directory, int segmentBytes) {
+        return new SegmentedDelayLog<>(directory, segmentBytes, 0.5, CODEC);
+    }
+
+    private static File[] segmentFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static List<String> values(List<SegmentedDelayLog.DelayRecord<String>> records) {
+        List<String> values = new ArrayList<>();
+        for (SegmentedDelayLog.DelayRecord<String> record : records) {
+            values.add(record.getValue());
+        }
+        return values;
+    }
+
+    private static int readInt(RandomAccessFile raf, int position) throws IOException {
+        raf.seek(position);
+        return raf.readInt();
+    }
+}
@@ -0,0 +1,107 @@
+package com.splendor.notes.thread.reactor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/15 16:20
+ * @Description 阻塞队列分发器与环形缓冲区分发器对比：单任务提交到处理完成的延迟分布(含p99) 与 突发批量吞吐
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AcceptorExecutorBenchmark {
+
+    private static final int BURST = 1000;
+
+    @Param({"queue", "ring"})
+    private String acceptorType;
+
+    private TaskDispatcher<String, Long> dispatcher;
+
+    private TaskExecutors<String, Long> executors;
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dispatcher = "ring".equals(acceptorType)
+                ? new RingBufferAcceptorExecutor<>(0, "bench", 20, 500L, 1 << 20, 100L, 1000L)
+                : new AcceptorExecutor<>(0, "bench", 20, 500L, 1 << 20, 100L, 1000L);
+        executors = TaskExecutors.singleItemExecutors("bench", 4, new TaskProcessor<Long>() {
+            @Override
+            public ProcessingResult process(Long task) {
+                completed.incrementAndGet();
+                return ProcessingResult.Success;
+            }
+
+            @Override
+            public ProcessingResult process(List<Long> tasks) {
+                completed.addAndGet(tasks.size());
+                return ProcessingResult.Success;
+            }
+        }, dispatcher);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executors.shutdown();
+        dispatcher.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long submitToComplete() {
+        long target = completed.get() + 1;
+        long id = sequence++;
+        dispatcher.process(String.valueOf(id), id, 90_000, System.currentTimeMillis());
+        while (completed.get() < target) {
+            Thread.yield();
+        }
+        return target;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BURST)
+    public long burstThroughput() {
+        long target = completed.get() + BURST;
+        for (int i = 0; i < BURST; i++) {
+            long id = sequence++;
+            dispatcher.process(String.valueOf(id), id, 90_000, System.currentTimeMillis());
+        }
+        while (completed.get() < target) {
+            Thread.yield();
+        }
+        return target;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AcceptorExecutorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
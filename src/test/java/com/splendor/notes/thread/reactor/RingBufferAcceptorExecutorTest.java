@@ -0,0 +1,118 @@
+package com.splendor.notes.thread.reactor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/22 14:10
+ * @Description 环形缓冲区分发器：工作线程在分配之后、park之前申请任务不应等到空闲超时；关闭后提交的任务应被拒绝
+ */
+public class RingBufferAcceptorExecutorTest {
+
+    private static final int ROUNDS = 10;
+
+    /**
+     * 远小于分发线程100ms的空闲等待上限
+     */
+    private static final long MAX_DISPATCH_MILLIS = 50;
+
+    private WindowTrafficShaper trafficShaper;
+
+    private DispatcherBackpressure backpressure;
+
+    private RingBufferAcceptorExecutor<String, Long> executor;
+
+    @Before
+    public void setUp() {
+        trafficShaper = new WindowTrafficShaper();
+        backpressure = new DispatcherBackpressure(0, OverflowPolicy.EVICT_OLDEST, 0);
+        executor = new RingBufferAcceptorExecutor<>(0, "test", 1, 1, 0L, 500L, 1024, 100L, 1000L,
+                backpressure, trafficShaper);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void requestBeforeParkIsDispatchedWithoutIdleTimeout() throws InterruptedException {
+        for (long i = 0; i < ROUNDS; i++) {
+            //先提交任务，没有工作线程申请时分发线程进入idle
+            assertEquals(Processor.AcceptResult.Accepted, executor.process(String.valueOf(i), i, Long.MAX_VALUE, System.currentTimeMillis()));
+            AtomicReference<BlockingQueue<TaskHolder<String, Long>>> workQueue = new AtomicReference<>();
+            AtomicLong requestedNanos = new AtomicLong();
+            CountDownLatch requested = new CountDownLatch(1);
+            //下一次idle计算等待时长时(sleeping置位之前)由分发线程自己申请任务，wakeUp看不到sleeping
+            trafficShaper.arm(() -> {
+                workQueue.set(executor.requestWorkItem());
+                requestedNanos.set(System.nanoTime());
+                requested.countDown();
+            });
+            assertTrue(requested.await(1, TimeUnit.SECONDS));
+
+            TaskHolder<String, Long> holder = workQueue.get().poll(1, TimeUnit.SECONDS);
+            long costMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestedNanos.get());
+            assertNotNull(holder);
+            assertEquals(Long.valueOf(i), holder.getTask());
+            assertTrue("dispatch took " + costMillis + "ms", costMillis < MAX_DISPATCH_MILLIS);
+            executor.batchCompleted(Collections.singletonList(holder), 0, TaskProcessor.ProcessingResult.Success);
+        }
+    }
+
+    @Test
+    public void processAfterShutdownIsRejected() {
+        executor.shutdown();
+        assertEquals(Processor.AcceptResult.Rejected, executor.process("1", 1L, Long.MAX_VALUE, System.currentTimeMillis()));
+        assertEquals(1, backpressure.getRejectedCount());
+    }
+
+    /**
+     * 在分发线程idle计算等待时长时执行一次注入的动作
+     */
+    private static class WindowTrafficShaper extends TrafficShaper {
+
+        private final AtomicReference<Runnable> hook = new AtomicReference<>();
+
+        WindowTrafficShaper() {
+            super(1000L, 100L);
+        }
+
+        void arm(Runnable action) {
+            hook.set(action);
+        }
+
+        @Override
+        synchronized long transmissionDelay() {
+            if (hook.get() != null && calledFromIdle()) {
+                Runnable action = hook.getAndSet(null);
+                if (action != null) {
+                    action.run();
+                }
+            }
+            return super.transmissionDelay();
+        }
+
+        private static boolean calledFromIdle() {
+            for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
+                if ("idle".equals(element.getMethodName())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.splendor.notes.thread.reactor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author splendor.s
+ * @create 2023/5/22 15:30
+ * @Description 平台线程与虚拟线程对比：1万个工作线程同时阻塞在10ms下游IO上时的吞吐，以及工作线程启动后的堆内存与进程RSS
+ * 虚拟线程需在Java 21+上运行，低版本下virtual参数回退为平台线程
+ */
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class WorkerThreadBenchmark {
+
+    private static final int IN_FLIGHT = 10_000;
+
+    private static final long IO_MILLIS = 10;
+
+    @Param({WorkerThreadFactory.PLATFORM, WorkerThreadFactory.VIRTUAL})
+    private String workerThreadType;
+
+    private TaskDispatcher<String, Long> dispatcher;
+
+    private TaskExecutors<String, Long> executors;
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        long heapBefore = usedHeapMb();
+        long rssBefore = rssMb();
+        dispatcher = new AcceptorExecutor<>(0, "bench", 20, 500L, IN_FLIGHT * 4, 100L, 1000L);
+        executors = TaskExecutors.singleItemExecutors("bench", IN_FLIGHT, new TaskProcessor<Long>() {
+            @Override
+            public ProcessingResult process(Long task) {
+                try {
+                    //模拟下游IO
+                    Thread.sleep(IO_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                completed.incrementAndGet();
+                return ProcessingResult.Success;
+            }
+
+            @Override
+            public ProcessingResult process(List<Long> tasks) {
+                return ProcessingResult.Success;
+            }
+        }, dispatcher, WorkerThreadFactory.of(workerThreadType, "bench"));
+        System.gc();
+        System.out.printf("%n%s workers=%d, heap used +%dMB, rss +%dMB, live platform threads=%d%n", workerThreadType,
+                IN_FLIGHT, usedHeapMb() - heapBefore, rssMb() - rssBefore,
+                ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executors.shutdown();
+        dispatcher.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(IN_FLIGHT)
+    public long inFlightThroughput() {
+        long target = completed.get() + IN_FLIGHT;
+        for (int i = 0; i < IN_FLIGHT; i++) {
+            long id = sequence++;
+            dispatcher.process(String.valueOf(id), id, 90_000, System.currentTimeMillis());
+        }
+        while (completed.get() < target) {
+            Thread.yield();
+        }
+        return target;
+    }
+
+    private static long usedHeapMb() {
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+    }
+
+    /**
+     * 进程常驻内存，包含平台线程栈；非Linux返回0
+     */
+    private static long rssMb() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) >> 10;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            //非Linux
+        }
+        return 0;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(WorkerThreadBenchmark.class.getSimpleName()).build()).run();
+    }
+}